@@ -0,0 +1,17 @@
+package com.larkery.jasb.io;
+
+/**
+ * An atom reader which can read some primitive types without boxing them. When a bound property has a primitive type,
+ * and the first atom reader which can read its boxed type is one of these, the atom is read with the method for the
+ * primitive and the property set directly.
+ * 
+ * Each method must give the same value as {@link #read(String, Class)} would for the boxed type, and throw an
+ * {@link IllegalArgumentException} where that would be absent; the atom is then read the usual way, to report the
+ * problem.
+ */
+public interface IPrimitiveAtomReader extends IAtomReader {
+	public double readDouble(final String in);
+	public int readInt(final String in);
+	public long readLong(final String in);
+	public boolean readBoolean(final String in);
+}
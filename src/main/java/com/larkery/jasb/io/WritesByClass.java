@@ -0,0 +1,16 @@
+package com.larkery.jasb.io;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link IAtomWriter} whose {@link IAtomWriter#canWrite(Object)} depends only on the class of the object,
+ * so that its answer for one object can be remembered for every other object of the same class.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface WritesByClass {
+
+}
@@ -5,8 +5,11 @@ import java.util.Set;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.IPrimitiveAtomReader;
+import com.larkery.jasb.io.WritesByClass;
 
-public class BooleanAtomIO implements IAtomIO {
+@WritesByClass
+public class BooleanAtomIO implements IAtomIO, IPrimitiveAtomReader {
 
 	@Override
 	public boolean canWrite(final Object object) {
@@ -28,6 +31,26 @@ public class BooleanAtomIO implements IAtomIO {
 		return Optional.of(out.cast(Boolean.parseBoolean(in)));
 	}
 
+	@Override
+	public boolean readBoolean(final String in) {
+		return Boolean.parseBoolean(in);
+	}
+	
+	@Override
+	public double readDouble(final String in) {
+		throw new IllegalArgumentException("Booleans are not numbers");
+	}
+	
+	@Override
+	public int readInt(final String in) {
+		throw new IllegalArgumentException("Booleans are not numbers");
+	}
+	
+	@Override
+	public long readLong(final String in) {
+		throw new IllegalArgumentException("Booleans are not numbers");
+	}
+
 	@Override
 	public Set<String> getLegalValues(final Class<?> output) {
 		return ImmutableSet.of("true", "false");
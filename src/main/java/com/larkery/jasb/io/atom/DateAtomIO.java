@@ -3,13 +3,16 @@ package com.larkery.jasb.io.atom;
 import java.util.Set;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.WritesByClass;
 
+@WritesByClass
 public class DateAtomIO implements IAtomIO {
 	private final DateTimeFormatter df =  DateTimeFormat.forPattern("dd/MM/yyyy").withZoneUTC();
 	
@@ -32,12 +35,40 @@ public class DateAtomIO implements IAtomIO {
 	public <T> Optional<T> read(final String in, final Class<T> out) {
 		if (in == null || in.trim().isEmpty()) return Optional.absent(); 
 		try {
-			final T res = out.cast(df.parseDateTime(in.trim()));
+			final String trimmed = in.trim();
+			final T res = out.cast(isPlainDate(trimmed) ? parsePlainDate(trimmed) : df.parseDateTime(trimmed));
 			return Optional.of(res);
 		} catch (final IllegalArgumentException e) {
 			return Optional.absent();
 		}
 	}
+	
+	/**
+	 * @return true if the string is exactly two digits, a slash, two digits, a slash and four digits, which is how
+	 * nearly every date is written; these are read directly rather than through the formatter, which allows more
+	 */
+	private static boolean isPlainDate(final String in) {
+		if (in.length() != 10 || in.charAt(2) != '/' || in.charAt(5) != '/') return false;
+		for (int i = 0; i < 10; i++) {
+			if (i != 2 && i != 5 && (in.charAt(i) < '0' || in.charAt(i) > '9')) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the day or month is out of range, as the formatter would
+	 */
+	private static DateTime parsePlainDate(final String in) {
+		return new DateTime(digits(in, 6, 10), digits(in, 3, 5), digits(in, 0, 2), 0, 0, DateTimeZone.UTC);
+	}
+	
+	private static int digits(final String in, final int start, final int end) {
+		int result = 0;
+		for (int i = start; i < end; i++) {
+			result = result * 10 + (in.charAt(i) - '0');
+		}
+		return result;
+	}
 
 	@Override
 	public Set<String> getLegalValues(final Class<?> output) {
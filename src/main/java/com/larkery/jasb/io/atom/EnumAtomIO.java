@@ -1,6 +1,8 @@
 package com.larkery.jasb.io.atom;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -9,7 +11,9 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.WritesByClass;
 
+@WritesByClass
 public class EnumAtomIO implements IAtomIO {
 
 	@Override
@@ -27,14 +31,42 @@ public class EnumAtomIO implements IAtomIO {
 		return output.isEnum();
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * The constants of each enum, by their names folded as {@link String#equalsIgnoreCase(String)} would fold them; where
+	 * two names fold the same, the first constant wins, as it would when searching the constants in order.
+	 */
+	private static final ClassValue<Map<String, Object>> CONSTANTS = new ClassValue<Map<String, Object>>() {
+		@Override
+		protected Map<String, Object> computeValue(final Class<?> type) {
+			final Map<String, Object> constants = new HashMap<>();
+			for (final Object o : type.getEnumConstants()) {
+				final String key = fold(o.toString());
+				if (!constants.containsKey(key)) {
+					constants.put(key, o);
+				}
+			}
+			return constants;
+		}
+	};
+	
+	/**
+	 * @return the string with each character folded to the same case, so that two strings are equal when folded exactly
+	 * when {@link String#equalsIgnoreCase(String)} says they are
+	 */
+	private static String fold(final String in) {
+		final char[] chars = new char[in.length()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(in.charAt(i)));
+		}
+		return new String(chars);
+	}
+
 	@Override
 	public <T> Optional<T> read(final String in, final Class<T> out) {
 		if (out.isEnum()) {
-			for (final Object o : out.getEnumConstants()) {
-				if (o.toString().equalsIgnoreCase(in)) {
-					return Optional.<T>of((T) o);
-				}
+			final Object o = CONSTANTS.get(out).get(fold(in));
+			if (o != null) {
+				return Optional.of(out.cast(o));
 			}
 		}
 		return Optional.absent();
@@ -6,8 +6,11 @@ import java.util.Set;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.IPrimitiveAtomReader;
+import com.larkery.jasb.io.WritesByClass;
 
-public class NumberAtomIO implements IAtomIO {
+@WritesByClass
+public class NumberAtomIO implements IAtomIO, IPrimitiveAtomReader {
 	@Override
 	public boolean canWrite(final Object object) {
 		return object instanceof Number;
@@ -68,6 +71,46 @@ public class NumberAtomIO implements IAtomIO {
 		
 	}
 
+	private static boolean isPercentage(final String in) {
+		return in.endsWith("%") && in.length() > 1;
+	}
+	
+	private static String withoutPercent(final String in) {
+		return in.substring(0, in.length()-1);
+	}
+	
+	@Override
+	public double readDouble(final String in) {
+		if (isPercentage(in)) {
+			return Double.parseDouble(withoutPercent(in)) / 100d;
+		} else {
+			return Double.parseDouble(in);
+		}
+	}
+	
+	@Override
+	public int readInt(final String in) {
+		if (isPercentage(in)) {
+			return Integer.parseInt(withoutPercent(in)) / 100;
+		} else {
+			return Integer.parseInt(in);
+		}
+	}
+	
+	@Override
+	public long readLong(final String in) {
+		if (isPercentage(in)) {
+			return Long.parseLong(withoutPercent(in)) / 100;
+		} else {
+			return Long.parseLong(in);
+		}
+	}
+	
+	@Override
+	public boolean readBoolean(final String in) {
+		throw new IllegalArgumentException("Numbers are not booleans");
+	}
+
 	@Override
 	public Set<String> getLegalValues(final Class<?> out) {
 		if (out == Double.class || out == Float.class) {
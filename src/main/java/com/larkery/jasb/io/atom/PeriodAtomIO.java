@@ -4,12 +4,19 @@ import java.util.Set;
 
 import org.joda.time.Period;
 import org.joda.time.format.PeriodFormat;
+import org.joda.time.format.PeriodFormatter;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.WritesByClass;
 
+@WritesByClass
 public class PeriodAtomIO implements IAtomIO {
+	/**
+	 * Looking up the default format each time costs more than reading a short period with it
+	 */
+	private static final PeriodFormatter FORMAT = PeriodFormat.getDefault();
 
 	@Override
 	public boolean canWrite(final Object object) {
@@ -18,7 +25,7 @@ public class PeriodAtomIO implements IAtomIO {
 
 	@Override
 	public String write(final Object object) {
-		return PeriodFormat.getDefault().print((Period) object);
+		return FORMAT.print((Period) object);
 	}
 
 	@Override
@@ -29,7 +36,7 @@ public class PeriodAtomIO implements IAtomIO {
 	@Override
 	public <T> Optional<T> read(final String in, final Class<T> out) {
 		try {
-			final Period parsePeriod = PeriodFormat.getDefault().parsePeriod(in);
+			final Period parsePeriod = FORMAT.parsePeriod(in);
 			return Optional.of(out.cast(parsePeriod));
 		} catch (final IllegalArgumentException e) {
 			return Optional.absent();
@@ -5,7 +5,9 @@ import java.util.Set;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.WritesByClass;
 
+@WritesByClass
 public class StringAtomIO implements IAtomIO {
 
 	@Override
@@ -0,0 +1,97 @@
+package com.larkery.jasb.io.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.IAtomReader;
+import com.larkery.jasb.io.IAtomWriter;
+import com.larkery.jasb.io.WritesByClass;
+
+/**
+ * Works out once for each java type which of a set of atom readers and writers apply to it, so that the reader and
+ * writer need not ask every one of them about every atom.
+ *
+ * Writers can only be asked about objects, so the answer for a class is only remembered for writers marked
+ * {@link WritesByClass}; the others are still asked about every object.
+ */
+class AtomCodecs {
+	private final ImmutableList<IAtomReader> readers;
+	private final ImmutableList<IAtomWriter> writers;
+	private final ConcurrentMap<Class<?>, ImmutableSet<IAtomReader>> readersByType = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, WritersForClass> writersByType = new ConcurrentHashMap<>();
+
+	AtomCodecs(final Iterable<? extends IAtomReader> readers, final Iterable<? extends IAtomWriter> writers) {
+		this.readers = ImmutableList.copyOf(readers);
+		this.writers = ImmutableList.copyOf(writers);
+	}
+
+	/**
+	 * @return the readers which can read the given type, in the order they should be tried
+	 */
+	ImmutableSet<IAtomReader> getReaders(final Class<?> type) {
+		ImmutableSet<IAtomReader> result = readersByType.get(type);
+		if (result == null) {
+			final ImmutableSet.Builder<IAtomReader> builder = ImmutableSet.builder();
+			for (final IAtomReader reader : readers) {
+				if (reader.canReadTo(type)) {
+					builder.add(reader);
+				}
+			}
+			result = builder.build();
+			readersByType.putIfAbsent(type, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the first writer which can write the given object, or null if it is not an atom
+	 */
+	IAtomWriter getWriter(final Object object) {
+		WritersForClass forClass = writersByType.get(object.getClass());
+		if (forClass == null) {
+			forClass = new WritersForClass(writers, object);
+			writersByType.putIfAbsent(object.getClass(), forClass);
+		}
+		return forClass.getWriter(object);
+	}
+
+	/**
+	 * The writers which might write objects of one class: those which must be asked about each object, followed by
+	 * the first writer which {@link WritesByClass} and said it could write the first object of the class seen, if
+	 * there is one. Those after it are never asked, and those before it which write by class and said no are left out.
+	 */
+	private static class WritersForClass {
+		private final IAtomWriter[] unknown;
+		private final IAtomWriter known;
+
+		WritersForClass(final List<IAtomWriter> writers, final Object example) {
+			final List<IAtomWriter> unknown = new ArrayList<>();
+			IAtomWriter known = null;
+			for (final IAtomWriter writer : writers) {
+				if (writer.getClass().isAnnotationPresent(WritesByClass.class)) {
+					if (writer.canWrite(example)) {
+						known = writer;
+						break;
+					}
+				} else {
+					unknown.add(writer);
+				}
+			}
+			this.unknown = unknown.toArray(new IAtomWriter[unknown.size()]);
+			this.known = known;
+		}
+
+		IAtomWriter getWriter(final Object object) {
+			for (final IAtomWriter writer : unknown) {
+				if (writer.canWrite(object)) {
+					return writer;
+				}
+			}
+			return known;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package com.larkery.jasb.io.impl;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import com.larkery.jasb.bind.AfterReading;
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.bind.BindNamedArgument;
+import com.larkery.jasb.bind.BindPositionalArgument;
+import com.larkery.jasb.bind.BindRemainingArguments;
+
+/**
+ * An annotation processor which generates, as java source, an {@link InvocationReader} and an
+ * {@link InvocationWriter} for each class annotated with {@link Bind}. The reader prefers these to generating
+ * bytecode at runtime, which saves a good deal of time when starting up with a lot of bound classes.
+ *
+ * The processor is not registered as a service, so it only runs when asked for: with
+ * {@code -processor com.larkery.jasb.io.impl.BindingProcessor} on the javac command line, or by naming it in the
+ * {@code annotationProcessors} of the maven compiler plugin. Classes which it cannot handle, such as those without a
+ * public constructor taking no arguments, are skipped with a note, and read with runtime generated classes as before.
+ */
+@SupportedAnnotationTypes("com.larkery.jasb.bind.Bind")
+public class BindingProcessor extends AbstractProcessor {
+	static final String READER_SUFFIX = "JasbReader";
+	static final String WRITER_SUFFIX = "JasbWriter";
+
+	private static final String NODE = "com.larkery.jasb.sexp.Node";
+
+	/**
+	 * @return the binary name of the class generated for the given bound class
+	 */
+	static String generatedName(final String binaryName, final String suffix) {
+		final int dot = binaryName.lastIndexOf('.');
+		return binaryName.substring(0, dot + 1) + binaryName.substring(dot + 1).replace('$', '_') + suffix;
+	}
+
+	private static class Property {
+		final String name;
+		final String getter;
+		final String setter;
+		final String type;
+		final TypeKind kind;
+		final boolean multiple;
+
+		Property(final String name, final String getter, final String setter, final String type, final TypeKind kind, final boolean multiple) {
+			this.name = name;
+			this.getter = getter;
+			this.setter = setter;
+			this.type = type;
+			this.kind = kind;
+			this.multiple = multiple;
+		}
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (final TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Bind.class))) {
+			final String problem = getProblem(type);
+			if (problem == null) {
+				try {
+					generate(type);
+				} catch (final IOException | RuntimeException e) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+							"Could not generate a reader for " + type + ", so one will be generated at runtime: " + e.getMessage(), type);
+				}
+			} else {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+						"Not generating a reader for " + type + " as " + problem + ", so one will be generated at runtime", type);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return why generated code could not construct the given type, or null if it can
+	 */
+	private static String getProblem(final TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS) return "it is not a class";
+		final Set<Modifier> modifiers = type.getModifiers();
+		if (!modifiers.contains(Modifier.PUBLIC)) return "it is not public";
+		if (modifiers.contains(Modifier.ABSTRACT)) return "it is abstract";
+		if (!hasPublicNoArgumentConstructor(type)) return "it has no public constructor without arguments";
+		return getEnclosingProblem(type);
+	}
+
+	private static String getEnclosingProblem(final TypeElement type) {
+		if (type.getNestingKind() == NestingKind.MEMBER) {
+			if (!type.getModifiers().contains(Modifier.STATIC)) return "it is not static";
+			final TypeElement enclosing = (TypeElement) type.getEnclosingElement();
+			if (!enclosing.getModifiers().contains(Modifier.PUBLIC)) return "the class enclosing it is not public";
+			return getEnclosingProblem(enclosing);
+		} else if (type.getNestingKind() == NestingKind.TOP_LEVEL) {
+			return null;
+		} else {
+			return "it is a local or anonymous class";
+		}
+	}
+
+	private static boolean hasPublicNoArgumentConstructor(final TypeElement type) {
+		for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void generate(final TypeElement type) throws IOException {
+		final Elements elements = processingEnv.getElementUtils();
+		final String typeName = type.getQualifiedName().toString();
+		final String binaryName = elements.getBinaryName(type).toString();
+		final String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+		final String name = type.getAnnotation(Bind.class).value();
+
+		final List<ExecutableElement> methods = ElementFilter.methodsIn(elements.getAllMembers(type));
+		final List<Property> properties = getProperties(methods);
+		final ExecutableElement afterReading = getAfterReading(methods);
+
+		final String readerName = generatedName(binaryName, READER_SUFFIX);
+		try (final PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(readerName, type).openWriter())) {
+			writeHeader(out, packageName);
+			out.println("public final class " + simpleName(readerName) + " extends " + InvocationReader.class.getName() + "<" + typeName + "> {");
+			out.println("\tpublic " + simpleName(readerName) + "() {");
+			out.print("\t\tsuper(" + typeName + ".class, \"" + escape(name) + "\", new String[] {");
+			for (int i = 0; i < properties.size(); i++) {
+				out.print((i == 0 ? "\"" : ", \"") + escape(properties.get(i).name) + "\"");
+			}
+			out.println("});");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tprotected " + typeName + " create() {");
+			out.println("\t\treturn new " + typeName + "();");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tprotected void afterReading(final " + typeName + " target, final " + NODE + " node) {");
+			if (afterReading != null) {
+				out.println("\t\ttarget." + afterReading.getSimpleName() + "(node);");
+			}
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+			out.println("\tprotected void set(final int property, final " + typeName + " target, final Object value) {");
+			out.println("\t\tswitch (property) {");
+			for (int i = 0; i < properties.size(); i++) {
+				final Property p = properties.get(i);
+				out.println("\t\tcase " + i + ": {");
+				if (p.multiple) {
+					out.println("\t\t\tfinal java.util.List list = target." + p.getter + "();");
+					out.println("\t\t\tif (list == null) throw new RuntimeException(\"List for property " + p.name + " was null in newly constructed " + type.getSimpleName() + "\");");
+					out.println("\t\t\tlist.clear();");
+					out.println("\t\t\tlist.addAll((java.util.Collection) value);");
+				} else {
+					out.println("\t\t\ttarget." + p.setter + "((" + p.type + ") value);");
+				}
+				out.println("\t\t\treturn;");
+				out.println("\t\t}");
+			}
+			out.println("\t\tdefault:");
+			out.println("\t\t\tthrow new IllegalArgumentException(\"" + type.getSimpleName() + " has no property \" + property);");
+			out.println("\t\t}");
+			out.println("\t}");
+			writePrimitiveSetter(out, typeName, properties, TypeKind.DOUBLE, "double", "setDouble");
+			writePrimitiveSetter(out, typeName, properties, TypeKind.INT, "int", "setInt");
+			writePrimitiveSetter(out, typeName, properties, TypeKind.LONG, "long", "setLong");
+			writePrimitiveSetter(out, typeName, properties, TypeKind.BOOLEAN, "boolean", "setBoolean");
+			out.println("}");
+		}
+
+		final String writerName = generatedName(binaryName, WRITER_SUFFIX);
+		try (final PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(writerName, type).openWriter())) {
+			writeHeader(out, packageName);
+			out.println("public final class " + simpleName(writerName) + " extends " + InvocationWriter.class.getName() + "<" + typeName + "> {");
+			out.println("\tpublic " + simpleName(writerName) + "() {");
+			out.println("\t\tsuper(" + typeName + ".class);");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tprotected Object get(final String property, final " + typeName + " target) {");
+			out.println("\t\tswitch (property) {");
+			for (final Property p : properties) {
+				out.println("\t\tcase \"" + p.name + "\":");
+				out.println("\t\t\treturn target." + p.getter + "();");
+			}
+			out.println("\t\tdefault:");
+			out.println("\t\t\tthrow new IllegalArgumentException(\"" + type.getSimpleName() + " has no property \" + property);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println("}");
+		}
+	}
+
+	/**
+	 * Write a method like setDouble, which sets the properties of the given primitive kind without boxing, if there
+	 * are any
+	 */
+	private static void writePrimitiveSetter(final PrintWriter out, final String typeName, final List<Property> properties, final TypeKind kind, final String primitive, final String method) {
+		boolean any = false;
+		for (int i = 0; i < properties.size(); i++) {
+			final Property p = properties.get(i);
+			if (p.kind == kind && !p.multiple) {
+				if (!any) {
+					out.println();
+					out.println("\t@Override");
+					out.println("\tprotected void " + method + "(final int property, final " + typeName + " target, final " + primitive + " value) {");
+					out.println("\t\tswitch (property) {");
+					any = true;
+				}
+				out.println("\t\tcase " + i + ":");
+				out.println("\t\t\ttarget." + p.setter + "(value);");
+				out.println("\t\t\treturn;");
+			}
+		}
+		if (any) {
+			out.println("\t\tdefault:");
+			out.println("\t\t\tsuper." + method + "(property, target, value);");
+			out.println("\t\t}");
+			out.println("\t}");
+		}
+	}
+
+	private void writeHeader(final PrintWriter out, final String packageName) {
+		if (!packageName.isEmpty()) {
+			out.println("package " + packageName + ";");
+			out.println();
+		}
+		out.println("/**");
+		out.println(" * Generated by " + getClass().getName() + "; do not edit");
+		out.println(" */");
+	}
+
+	private static String simpleName(final String binaryName) {
+		return binaryName.substring(binaryName.lastIndexOf('.') + 1);
+	}
+
+	private static String escape(final String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static ExecutableElement getAfterReading(final List<ExecutableElement> methods) {
+		for (final ExecutableElement m : methods) {
+			if (m.getAnnotation(AfterReading.class) != null && m.getModifiers().contains(Modifier.PUBLIC) && m.getParameters().size() == 1) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the properties by the same rules as {@link JasbPropertyDescriptor}, which gets them from
+	 * {@link Introspector}: a property is a public getter, named getX, or isX if it returns a primitive boolean, and a
+	 * public void setter named setX taking the same type; if there are both isX and getX, isX is the getter. It is bound
+	 * if its getter bears one of the binding annotations. The properties are in order of name, as they are at runtime,
+	 * and the generated reader refers to them by their index in that order; the reader checks when it is made that
+	 * the class has the same properties, in case these rules have missed something.
+	 */
+	private List<Property> getProperties(final List<ExecutableElement> methods) {
+		final Types types = processingEnv.getTypeUtils();
+		final TypeMirror list = types.erasure(processingEnv.getElementUtils().getTypeElement("java.util.List").asType());
+
+		final SortedMap<String, ExecutableElement> getters = new TreeMap<>();
+		for (final ExecutableElement getter : methods) {
+			if (!isPublicInstanceMethod(getter) || !getter.getParameters().isEmpty()) continue;
+
+			final TypeMirror returnType = getter.getReturnType();
+			final String getterName = getter.getSimpleName().toString();
+			if (getterName.startsWith("is") && getterName.length() > 2 && returnType.getKind() == TypeKind.BOOLEAN) {
+				getters.put(Introspector.decapitalize(getterName.substring(2)), getter);
+			} else if (getterName.startsWith("get") && getterName.length() > 3 && returnType.getKind() != TypeKind.VOID) {
+				final String property = Introspector.decapitalize(getterName.substring(3));
+				final ExecutableElement existing = getters.get(property);
+				if (existing == null || !existing.getSimpleName().toString().startsWith("is")) {
+					getters.put(property, getter);
+				}
+			}
+		}
+
+		final List<Property> properties = new ArrayList<>();
+		for (final Map.Entry<String, ExecutableElement> entry : getters.entrySet()) {
+			final ExecutableElement getter = entry.getValue();
+			if (getter.getAnnotation(BindNamedArgument.class) == null &&
+					getter.getAnnotation(BindPositionalArgument.class) == null &&
+					getter.getAnnotation(BindRemainingArguments.class) == null) continue;
+
+			final String getterName = getter.getSimpleName().toString();
+			final String stem = getterName.substring(getterName.startsWith("is") ? 2 : 3);
+			final TypeMirror propertyType = getter.getReturnType();
+
+			final ExecutableElement setter = getSetter(methods, "set" + stem, propertyType);
+			if (setter == null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						getterName + " has a binding annotation, but there is no public void set" + stem + " to go with it, so it will not be bound", getter);
+				continue;
+			}
+
+			final boolean multiple = types.isAssignable(types.erasure(propertyType), list);
+			final String typeName;
+			if (propertyType.getKind().isPrimitive()) {
+				typeName = types.boxedClass((PrimitiveType) propertyType).getQualifiedName().toString();
+			} else {
+				typeName = types.erasure(propertyType).toString();
+			}
+
+			properties.add(new Property(entry.getKey(), getterName, setter.getSimpleName().toString(), typeName, propertyType.getKind(), multiple));
+		}
+		return properties;
+	}
+
+	private ExecutableElement getSetter(final List<ExecutableElement> methods, final String name, final TypeMirror type) {
+		final Types types = processingEnv.getTypeUtils();
+		for (final ExecutableElement m : methods) {
+			if (isPublicInstanceMethod(m) && m.getSimpleName().contentEquals(name) && m.getParameters().size() == 1
+					&& m.getReturnType().getKind() == TypeKind.VOID
+					&& types.isSameType(types.erasure(m.getParameters().get(0).asType()), types.erasure(type))) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isPublicInstanceMethod(final Element e) {
+		return e.getModifiers().contains(Modifier.PUBLIC) && !e.getModifiers().contains(Modifier.STATIC);
+	}
+}
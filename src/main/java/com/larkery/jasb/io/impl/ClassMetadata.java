@@ -0,0 +1,213 @@
+package com.larkery.jasb.io.impl;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.bind.AfterReading;
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.io.impl.JasbPropertyDescriptor.BoundTo;
+import com.larkery.jasb.sexp.Node;
+
+/**
+ * Everything jasb needs to know about a class which can be got by reflection, worked out once per class and shared
+ * by every {@link Reader}, {@link Writer} and {@link Model}.
+ *
+ * Each part is only worked out when it is first wanted. If working out the properties fails, the failure is not kept,
+ * so it will happen again the next time; the result of {@link #check()} is kept either way.
+ */
+class ClassMetadata {
+	private static final ClassValue<ClassMetadata> CACHE = new ClassValue<ClassMetadata>() {
+		@Override
+		protected ClassMetadata computeValue(final Class<?> type) {
+			return new ClassMetadata(type);
+		}
+	};
+
+	private final Class<?> clazz;
+	private final Optional<String> bindName;
+
+	private ImmutableSet<JasbPropertyDescriptor> descriptors;
+	private ImmutableList<JasbPropertyDescriptor> named;
+	private ImmutableList<JasbPropertyDescriptor> positional;
+	private Optional<JasbPropertyDescriptor> remainder;
+	private Optional<Method> afterReading;
+	private boolean checked = false;
+	private RuntimeException problem;
+
+	private ClassMetadata(final Class<?> clazz) {
+		this.clazz = clazz;
+		final Bind bind = clazz.getAnnotation(Bind.class);
+		this.bindName = bind == null ? Optional.<String>absent() : Optional.of(bind.value());
+	}
+
+	static ClassMetadata of(final Class<?> clazz) {
+		return CACHE.get(clazz);
+	}
+
+	/**
+	 * @return the value of the {@link Bind} annotation on the class, if it has one
+	 */
+	Optional<String> getBindName() {
+		return bindName;
+	}
+
+	synchronized Set<JasbPropertyDescriptor> getDescriptors() {
+		if (descriptors == null) {
+			final ImmutableSet<JasbPropertyDescriptor> all = JasbPropertyDescriptor.computeDescriptors(clazz);
+
+			final List<JasbPropertyDescriptor> positional = new ArrayList<>(JasbPropertyDescriptor.getPropertiesBoundTo(BoundTo.Position, all));
+			Collections.sort(positional, new Comparator<JasbPropertyDescriptor>() {
+				@Override
+				public int compare(final JasbPropertyDescriptor arg0, final JasbPropertyDescriptor arg1) {
+					return arg0.position.get().compareTo(arg1.position.get());
+				}
+			});
+			final Set<JasbPropertyDescriptor> remainder = JasbPropertyDescriptor.getPropertiesBoundTo(BoundTo.Remainder, all);
+
+			this.named = ImmutableList.copyOf(JasbPropertyDescriptor.getPropertiesBoundTo(BoundTo.Name, all));
+			this.positional = ImmutableList.copyOf(positional);
+			this.remainder = remainder.isEmpty() ? Optional.<JasbPropertyDescriptor>absent() : Optional.of(remainder.iterator().next());
+			this.descriptors = all;
+		}
+		return descriptors;
+	}
+
+	synchronized List<JasbPropertyDescriptor> getNamedDescriptors() {
+		getDescriptors();
+		return named;
+	}
+
+	/**
+	 * @return the properties bound to positional arguments, in order of position
+	 */
+	synchronized List<JasbPropertyDescriptor> getPositionalDescriptors() {
+		getDescriptors();
+		return positional;
+	}
+
+	/**
+	 * @return the first property bound to the remaining arguments, if there is one
+	 */
+	synchronized Optional<JasbPropertyDescriptor> getRemainderDescriptor() {
+		getDescriptors();
+		return remainder;
+	}
+
+	/**
+	 * @return the first public method annotated with {@link AfterReading}, if there is one
+	 */
+	synchronized Optional<Method> getAfterReading() {
+		if (afterReading == null) {
+			Method found = null;
+			for (final Method method : clazz.getMethods()) {
+				if (method.isAnnotationPresent(AfterReading.class)) {
+					found = method;
+					break;
+				}
+			}
+			afterReading = Optional.fromNullable(found);
+		}
+		return afterReading;
+	}
+
+	/**
+	 * Check those things about the class which do not depend on what else it is being read with: that it can be
+	 * constructed, that its {@link AfterReading} methods are suitable, and that its lists are set up. The class is only
+	 * checked once, and the same problem thrown thereafter.
+	 *
+	 * @throws IllegalArgumentException if there is a problem
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	synchronized void check() {
+		if (checked) {
+			if (problem != null) throw problem;
+			return;
+		}
+
+		try {
+			if (Modifier.isAbstract(clazz.getModifiers())) {
+				throw new IllegalArgumentException(clazz + " cannot be unmarshalled from s-expressions as it is abstract");
+			}
+			if (clazz.getEnclosingClass() != null) {
+				if (!Modifier.isStatic(clazz.getModifiers())) {
+					throw new IllegalArgumentException(clazz + " cannot be unmarshalled from s-expressions as it is a non-static inner class");
+				}
+			}
+			if (!bindName.isPresent()) {
+				throw new IllegalArgumentException(clazz + " has no bind annotation");
+			}
+			try {
+				final Constructor<?> constructor = clazz.getConstructor();
+
+				final Object o;
+				try {
+					o = constructor.newInstance();
+				} catch (InstantiationException | IllegalAccessException
+						| IllegalArgumentException | InvocationTargetException e) {
+					throw new IllegalArgumentException("Constructing " + clazz
+							+ " causes an error", e);
+				}
+
+				for (final Method m : clazz.getMethods()) {
+					if (m.isAnnotationPresent(AfterReading.class)) {
+						if (m.getReturnType() != Void.TYPE) {
+							throw new IllegalArgumentException("AfterReading method " + m + " is not void");
+						}
+						if (m.getParameterTypes().length != 1
+								|| !m.getParameterTypes()[0].equals(Node.class)) {
+							throw new IllegalArgumentException("AfterReading method " + m + " should take a single Node as its argument");
+						}
+						if (!Modifier.isPublic(m.getModifiers())) {
+							throw new IllegalArgumentException("AfterReading method " + m + " is not public");
+						}
+						if (Modifier.isStatic(m.getModifiers())) {
+							throw new IllegalArgumentException("AfterReading method " + m + " is static");
+						}
+						if (m.getDeclaringClass().isInterface()) {
+							throw new IllegalArgumentException("AfterReading method " + m + " is in an interface");
+						}
+					}
+				}
+
+				for (final JasbPropertyDescriptor pd : getDescriptors()) {
+					if (pd.isMultiple) {
+						Object initialValue;
+						try {
+							initialValue = pd.readMethod.invoke(o);
+						} catch (IllegalAccessException
+								| IllegalArgumentException
+								| InvocationTargetException e) {
+							throw new IllegalArgumentException("Invoking the read method for " + pd + " on clazz caused an error", e);
+						}
+						if (initialValue instanceof List) {
+							try {
+								((List) initialValue).add(null);
+							} catch (final Throwable th) {
+								throw new IllegalArgumentException("Had an error adding a null to the list produced by " + pd + " in " + clazz, th);
+							}
+						} else {
+							throw new IllegalArgumentException(pd + " in " + clazz + " does not produce a list, but " + initialValue);
+						}
+					}
+				}
+			} catch (NoSuchMethodException | SecurityException e) {
+				throw new IllegalArgumentException(clazz + " does not have an accessible no-args constructor");
+			}
+		} catch (final IllegalArgumentException e) {
+			problem = e;
+			checked = true;
+			throw e;
+		}
+		checked = true;
+	}
+}
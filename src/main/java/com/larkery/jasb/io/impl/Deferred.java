@@ -0,0 +1,111 @@
+package com.larkery.jasb.io.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * When reading synchronously, a value which cannot be known until some forward cross-references have been defined.
+ *
+ * Synchronous reading produces plain values where it can; a value is one of these only if it depends on a name which
+ * had not been defined when it was read, and {@link #FAILED} if it could not be read at all. Properties given one of
+ * these are set in a final pass, once everything has been read.
+ */
+abstract class Deferred {
+	/**
+	 * The result of reading something which could not be read; the equivalent of a failed future
+	 */
+	static final Object FAILED = new Object() {
+		@Override
+		public String toString() {
+			return "failed";
+		}
+	};
+
+	/**
+	 * @return true if the value is now known
+	 */
+	abstract boolean isResolved();
+
+	/**
+	 * @return the value, which is only meaningful if {@link #isResolved()}
+	 */
+	abstract Object get();
+
+	/**
+	 * The synchronous equivalent of {@link com.google.common.util.concurrent.Futures#allAsList(Iterable)}
+	 *
+	 * @return {@link #FAILED} if any value failed, a deferred list if any value is deferred, or else a list of the values
+	 */
+	static Object all(final List<Object> values) {
+		boolean deferred = false;
+		for (final Object o : values) {
+			if (o == FAILED) {
+				return FAILED;
+			} else if (o instanceof Deferred) {
+				deferred = true;
+			}
+		}
+		if (deferred) {
+			return new All(values);
+		} else {
+			return new ArrayList<>(values);
+		}
+	}
+
+	/**
+	 * A value which is given later, once something else has been read; it may be given a plain value, another
+	 * {@link Deferred}, or {@link #FAILED}, in which case it is never resolved.
+	 */
+	static class Later extends Deferred {
+		private boolean set = false;
+		private Object value;
+
+		void set(final Object value) {
+			this.value = value;
+			this.set = true;
+		}
+
+		@Override
+		boolean isResolved() {
+			if (!set || value == FAILED) {
+				return false;
+			} else if (value instanceof Deferred) {
+				return ((Deferred) value).isResolved();
+			} else {
+				return true;
+			}
+		}
+
+		@Override
+		Object get() {
+			return value instanceof Deferred ? ((Deferred) value).get() : value;
+		}
+	}
+
+	private static class All extends Deferred {
+		private final List<Object> values;
+
+		All(final List<Object> values) {
+			this.values = values;
+		}
+
+		@Override
+		boolean isResolved() {
+			for (final Object o : values) {
+				if (o instanceof Deferred && !((Deferred) o).isResolved()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		Object get() {
+			final List<Object> result = new ArrayList<>(values.size());
+			for (final Object o : values) {
+				result.add(o instanceof Deferred ? ((Deferred) o).get() : o);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.larkery.jasb.io.impl;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+/**
+ * Finds the readers and writers which {@link BindingProcessor} generated when a bound class was compiled, if there
+ * are any. A generated reader which finds that the class it was compiled for has changed is not used.
+ */
+class GeneratedClasses {
+	private static final Logger log = LoggerFactory.getLogger(GeneratedClasses.class);
+
+	@SuppressWarnings("unchecked")
+	static <T> Optional<InvocationReader<T>> reader(final Class<T> clazz) {
+		return (Optional<InvocationReader<T>>) (Optional<?>) find(clazz, BindingProcessor.READER_SUFFIX, InvocationReader.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> Optional<InvocationWriter<T>> writer(final Class<T> clazz) {
+		return (Optional<InvocationWriter<T>>) (Optional<?>) find(clazz, BindingProcessor.WRITER_SUFFIX, InvocationWriter.class);
+	}
+
+	private static <Q> Optional<? extends Q> find(final Class<?> clazz, final String suffix, final Class<Q> base) {
+		final Class<?> generated;
+		try {
+			generated = Class.forName(BindingProcessor.generatedName(clazz.getName(), suffix), true, clazz.getClassLoader());
+		} catch (final ClassNotFoundException | LinkageError e) {
+			return Optional.absent();
+		}
+
+		if (!base.isAssignableFrom(generated)) {
+			return Optional.absent();
+		}
+
+		try {
+			return Optional.of(base.cast(generated.getConstructor().newInstance()));
+		} catch (final InvocationTargetException e) {
+			log.warn("Not using {}, as {}", generated.getName(), e.getCause().getMessage());
+			return Optional.absent();
+		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+				| NoSuchMethodException | SecurityException e) {
+			return Optional.absent();
+		}
+	}
+}
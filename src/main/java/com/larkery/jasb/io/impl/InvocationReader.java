@@ -1,14 +1,24 @@
 package com.larkery.jasb.io.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.larkery.jasb.io.IPrimitiveAtomReader;
 import com.larkery.jasb.io.IReadContext;
+import com.larkery.jasb.io.impl.JasbPropertyDescriptor.BoundTo;
 import com.larkery.jasb.sexp.Atom;
 import com.larkery.jasb.sexp.Comment;
 import com.larkery.jasb.sexp.Delim;
@@ -22,33 +32,555 @@ import com.larkery.jasb.sexp.errors.UnusedTermError;
 /**
  * This is an abstract base class for things which can read invocations;
  * these are s-expression forms of the following sort:
- * 
+ *
  * (name [key: expr]* expr*)
- * 
- * <b>DO NOT</b> rename any of its methods, as they are used in generated subtypes
- * 
+ *
+ * The generated subtypes only construct the mapped type and set its properties; the work of reading the arguments is
+ * done here, either with futures through an {@link IReadContext}, or synchronously with cross-references which are
+ * not yet defined left to a final pass.
+ *
+ * <b>DO NOT</b> rename any of its protected methods, as they are used in generated subtypes
+ *
  * @author hinton
  *
  * @param <T>
  */
 public abstract class InvocationReader<T> {
+	private static final Logger log = LoggerFactory.getLogger(InvocationReader.class);
+
 	protected final String name;
 	protected final Set<String> expectedKeys;
 	protected final Class<T> clazz;
 
-	protected InvocationReader(final Class<T> clazz, final String name, final String[] expectedKeys) {
+	private final List<JasbPropertyDescriptor> properties;
+	private final int[] named;
+	private final int[] indexed;
+	private final int remainder;
+	private final int lastIndexed;
+
+	/**
+	 * The distinct keys of the named properties, each with its colon; an invocation's keyword arguments are gathered
+	 * into an array with a slot for each of these
+	 */
+	private final String[] keywords;
+	/**
+	 * The slot for each property in {@link #named}
+	 */
+	private final int[] slots;
+	/**
+	 * A hash table from keyword to slot, made big enough that the keywords do not collide if possible
+	 */
+	private final String[] keywordTable;
+	private final int[] slotTable;
+
+	/**
+	 * The constructor for readers generated by {@link BindingProcessor}, which are compiled to set properties by their
+	 * index in {@link #getProperties(Class)}; this checks that the class has the properties it was compiled for, in
+	 * the same order.
+	 *
+	 * @param properties the names of the properties the reader was compiled for
+	 * @throws IllegalArgumentException if the properties are not the same as those found at runtime
+	 */
+	protected InvocationReader(final Class<T> clazz, final String name, final String... properties) {
+		this(clazz, name);
+		final List<String> found = new ArrayList<>(this.properties.size());
+		for (final JasbPropertyDescriptor pd : this.properties) {
+			found.add(pd.name);
+		}
+		if (!found.equals(Arrays.asList(properties))) {
+			throw new IllegalArgumentException("A reader for " + clazz + " was compiled for the properties " + Arrays.toString(properties) + ", but it has " + found);
+		}
+	}
+
+	protected InvocationReader(final Class<T> clazz, final String name) {
 		this.clazz = clazz;
 		this.name = name;
-		this.expectedKeys = ImmutableSet.copyOf(expectedKeys);
+		this.properties = getProperties(clazz);
+
+		final Set<String> keys = new HashSet<>();
+		final List<Integer> named = new ArrayList<>();
+		final List<Integer> indexed = new ArrayList<>();
+		int remainder = -1;
+		int lastIndexed = 0;
+		for (int i = 0; i < properties.size(); i++) {
+			final JasbPropertyDescriptor pd = properties.get(i);
+			switch (pd.boundTo) {
+			case Name:
+				keys.add(pd.key.get());
+				named.add(i);
+				break;
+			case Position:
+				indexed.add(i);
+				lastIndexed = Math.max(lastIndexed, pd.position.get() + 1);
+				break;
+			case Remainder:
+				if (remainder < 0) remainder = i;
+				break;
+			}
+		}
+
+		this.expectedKeys = ImmutableSet.copyOf(keys);
+		this.named = toArray(named);
+		this.indexed = toArray(indexed);
+		this.remainder = remainder;
+		this.lastIndexed = lastIndexed;
+
+		final List<String> keywords = new ArrayList<>();
+		this.slots = new int[this.named.length];
+		for (int i = 0; i < this.named.length; i++) {
+			final String keyword = properties.get(this.named[i]).key.get() + ":";
+			if (!keywords.contains(keyword)) keywords.add(keyword);
+			slots[i] = keywords.indexOf(keyword);
+		}
+		this.keywords = keywords.toArray(new String[keywords.size()]);
+
+		int size = Integer.highestOneBit(Math.max(1, this.keywords.length)) * 2;
+		while (size < MAXIMUM_KEYWORD_TABLE && collides(this.keywords, size - 1)) {
+			size *= 2;
+		}
+		this.keywordTable = new String[size];
+		this.slotTable = new int[size];
+		for (int slot = 0; slot < this.keywords.length; slot++) {
+			int i = spread(this.keywords[slot].hashCode()) & (size - 1);
+			while (keywordTable[i] != null) {
+				i = (i + 1) & (size - 1);
+			}
+			keywordTable[i] = this.keywords[slot];
+			slotTable[i] = slot;
+		}
+	}
+
+	private static final int MAXIMUM_KEYWORD_TABLE = 1 << 12;
+
+	private static int spread(final int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean collides(final String[] keywords, final int mask) {
+		final boolean[] used = new boolean[mask + 1];
+		for (final String keyword : keywords) {
+			final int i = spread(keyword.hashCode()) & mask;
+			if (used[i]) return true;
+			used[i] = true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param keyword a keyword, with its colon
+	 * @return the slot for the keyword, or -1 if none of the properties are named by it
+	 */
+	private int slot(final String keyword) {
+		final int mask = keywordTable.length - 1;
+		int i = spread(keyword.hashCode()) & mask;
+		String candidate;
+		while ((candidate = keywordTable[i]) != null) {
+			if (candidate.equals(keyword)) return slotTable[i];
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static int[] toArray(final List<Integer> list) {
+		final int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the bound properties of the given class; the index of a property in this list is the number given to
+	 * {@link #set(int, Object, Object)} for it
+	 */
+	static List<JasbPropertyDescriptor> getProperties(final Class<?> clazz) {
+		return ImmutableList.copyOf(JasbPropertyDescriptor.getDescriptors(clazz));
+	}
+
+	/**
+	 * Overridden in subclasses to construct a new instance of the mapped type
+	 */
+	protected abstract T create();
+
+	/**
+	 * Overridden in subclasses to call the mapped type's {@link com.larkery.jasb.bind.AfterReading} method, if it
+	 * has one
+	 */
+	protected abstract void afterReading(final T target, final Node node);
+
+	/**
+	 * Overridden in subclasses to set the given property, unboxing the value if the property is primitive. Multiple
+	 * valued properties are set by replacing the contents of the list they already have.
+	 *
+	 * @param property the index of the property in {@link #getProperties(Class)}
+	 */
+	protected abstract void set(final int property, final T target, final Object value);
+
+	/**
+	 * Overridden in subclasses to set a double property without boxing the value; unless it is, the value is boxed
+	 * and given to {@link #set(int, Object, Object)}
+	 */
+	protected void setDouble(final int property, final T target, final double value) {
+		set(property, target, value);
+	}
+
+	/**
+	 * As {@link #setDouble(int, Object, double)}, for int properties
+	 */
+	protected void setInt(final int property, final T target, final int value) {
+		set(property, target, value);
+	}
+
+	/**
+	 * As {@link #setDouble(int, Object, double)}, for long properties
+	 */
+	protected void setLong(final int property, final T target, final long value) {
+		set(property, target, value);
+	}
+
+	/**
+	 * As {@link #setDouble(int, Object, double)}, for boolean properties
+	 */
+	protected void setBoolean(final int property, final T target, final boolean value) {
+		set(property, target, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	final void setUnchecked(final int property, final Object target, final Object value) {
+		try {
+			set(property, (T) target, value);
+		} catch (final RuntimeException e) {
+			setterFailed(property, target, e);
+		}
+	}
+
+	private void setterFailed(final int property, final Object target, final RuntimeException e) {
+		// when properties were set by future callbacks, anything thrown by a setter was logged and ignored
+		log.error("Setting {} on {} threw an exception", properties.get(property), target, e);
+	}
+
+	private class Setter implements FutureCallback<Object> {
+		private final int property;
+		private final T target;
+
+		Setter(final int property, final T target) {
+			this.property = property;
+			this.target = target;
+		}
+
+		@Override
+		public void onSuccess(final Object result) {
+			set(property, target, result);
+		}
+
+		@Override
+		public void onFailure(final Throwable t) {}
+	}
+
+	/**
+	 * Read the invocation, with futures; properties are set as their futures complete.
+	 */
+	@SuppressWarnings("unchecked")
+	protected T read(final IReadContext context, final Invocation invocation) {
+		final T result = create();
+		afterReading(result, invocation.node);
+
+		if (named.length > 0) {
+			for (final int i : named) {
+				final JasbPropertyDescriptor pd = properties.get(i);
+				final Node node = invocation.arguments.get(pd.key.get());
+				if (node != null) {
+					final ListenableFuture<?> future = readProperty(context, pd, node);
+					if (pd.isIdentifier) {
+						context.registerIdentity(result, node, (ListenableFuture<String>) future);
+					}
+					Futures.addCallback((ListenableFuture<Object>) future, new Setter(i, result));
+				}
+			}
+			warnOnUnusedKeys(context, invocation);
+		}
+
+		final List<Node> remainingNodes = invocation.remainder;
+		if (indexed.length > 0 || remainder >= 0) {
+			for (final int i : indexed) {
+				final JasbPropertyDescriptor pd = properties.get(i);
+				final Node node = getNodeOrNull(remainingNodes, pd.position.get());
+				if (node != null) {
+					final ListenableFuture<?> future = readProperty(context, pd, node);
+					if (pd.isIdentifier) {
+						context.registerIdentity(result, node, (ListenableFuture<String>) future);
+					}
+					Futures.addCallback((ListenableFuture<Object>) future, new Setter(i, result));
+				}
+			}
+
+			if (remainder >= 0) {
+				final JasbPropertyDescriptor varargs = properties.get(remainder);
+				final ListenableFuture<?> future;
+				if (varargs.isListOfLists) {
+					future = readListsRemainder(context, varargs.propertyType, remainingNodes, lastIndexed);
+				} else {
+					future = readRemainder(context, varargs.propertyType, remainingNodes, lastIndexed);
+				}
+				Futures.addCallback((ListenableFuture<Object>) future, new Setter(remainder, result));
+			} else {
+				warnOnUnusedPositions(context, remainingNodes, lastIndexed);
+			}
+		} else {
+			warnOnUnusedPositions(context, remainingNodes, 0);
+		}
+
+		return result;
+	}
+
+	private ListenableFuture<?> readProperty(final IReadContext context, final JasbPropertyDescriptor pd, final Node node) {
+		if (pd.isMultiple) {
+			return readOneOrMany(context, pd.propertyType, node);
+		} else {
+			return context.read(pd.boxedPropertyType, node);
+		}
 	}
 
 	/**
-	 * This is overridden in subclasses to do the actual work
-	 * @param context
-	 * @param invocation
-	 * @return
+	 * Read the invocation synchronously. Properties whose values depend on names not yet defined are recorded in the
+	 * context to be set later.
 	 */
-	protected abstract T read(final IReadContext context, final Invocation invocation);
+	final T bind(final Reader.Context context, final Invocation invocation) {
+		final Node[] arguments = new Node[keywords.length];
+		List<Map.Entry<String, Node>> unknown = null;
+		for (final Map.Entry<String, Node> argument : invocation.arguments.entrySet()) {
+			final int slot = slot(argument.getKey() + ":");
+			if (slot >= 0) {
+				arguments[slot] = argument.getValue();
+			} else {
+				if (unknown == null) unknown = new ArrayList<>();
+				unknown.add(argument);
+			}
+		}
+		return bind(context, invocation.node, arguments, unknown, invocation.remainder);
+	}
+
+	/**
+	 * Read an invocation synchronously, straight from its node. This is equivalent to reading the {@link Invocation}
+	 * for the node, but the arguments are only looked at once and put straight into their slots, rather than into a
+	 * map. The node must be a parenthesised list which starts with the name of this reader.
+	 *
+	 * @return the value, or {@link Deferred#FAILED} if a keyword is repeated
+	 */
+	final Object bind(final Reader.Context context, final Seq node) {
+		final Node[] arguments = new Node[keywords.length];
+		List<Map.Entry<String, Node>> unknown = null;
+		final List<Node> remainder = new ArrayList<>(node.size());
+
+		final int size = node.size();
+		String keyword = null;
+		for (int i = 1; i < size; i++) {
+			final Node argument = node.get(i);
+			if (argument instanceof Comment) continue;
+
+			if (keyword != null) {
+				final int slot = slot(keyword);
+				if (slot >= 0) {
+					if (arguments[slot] != null) {
+						return repeated(context, argument, keywords[slot].substring(0, keywords[slot].length() - 1));
+					}
+					arguments[slot] = argument;
+				} else {
+					final String key = keyword.substring(0, keyword.length() - 1);
+					if (unknown == null) {
+						unknown = new ArrayList<>();
+					} else {
+						for (final Map.Entry<String, Node> e : unknown) {
+							if (e.getKey().equals(key)) return repeated(context, argument, key);
+						}
+					}
+					unknown.add(Maps.immutableEntry(key, argument));
+				}
+				keyword = null;
+			} else if (argument instanceof Atom && ((Atom) argument).getValue().endsWith(":")) {
+				keyword = ((Atom) argument).getValue();
+			} else {
+				remainder.add(argument);
+			}
+		}
+		if (keyword != null) {
+			context.handle(BasicError.at(node, "unused keyword " + keyword.substring(0, keyword.length() - 1) + " at end of " + name));
+		}
+
+		return bind(context, node, arguments, unknown, remainder);
+	}
+
+	private Object repeated(final Reader.Context context, final Node argument, final String key) {
+		context.handle(BasicError.at(argument, "repeated keyword " + key + " in " + name));
+		return Deferred.FAILED;
+	}
+
+	/**
+	 * @param arguments the keyword arguments, in the slots for their keywords
+	 * @param unknown the keyword arguments which are not for any property, in order, or null if there are none
+	 * @param remainingNodes the arguments which are not keyword arguments
+	 */
+	private T bind(final Reader.Context context, final Node source, final Node[] arguments, final List<Map.Entry<String, Node>> unknown, final List<Node> remainingNodes) {
+		final T result = create();
+		afterReading(result, source);
+
+		if (named.length > 0) {
+			for (int n = 0; n < named.length; n++) {
+				final int i = named[n];
+				final JasbPropertyDescriptor pd = properties.get(i);
+				final Node argument = arguments[slots[n]];
+				if (argument != null && !bindPrimitive(context, i, result, pd, argument)) {
+					final Object value = bindProperty(context, pd, argument);
+					if (pd.isIdentifier) {
+						context.defineIdentity(result, argument, value);
+					}
+					assign(context, i, result, value);
+				}
+			}
+			if (unknown != null) {
+				for (final Map.Entry<String, Node> entry : unknown) {
+					context.handle(new UnexpectedTermError(entry.getValue(), "keyword", expectedKeys, entry.getKey()));
+				}
+			}
+		}
+
+		if (indexed.length > 0 || remainder >= 0) {
+			for (final int i : indexed) {
+				final JasbPropertyDescriptor pd = properties.get(i);
+				final Node node = getNodeOrNull(remainingNodes, pd.position.get());
+				if (node != null && !bindPrimitive(context, i, result, pd, node)) {
+					final Object value = bindProperty(context, pd, node);
+					if (pd.isIdentifier) {
+						context.defineIdentity(result, node, value);
+					}
+					assign(context, i, result, value);
+				}
+			}
+
+			if (remainder >= 0) {
+				final JasbPropertyDescriptor varargs = properties.get(remainder);
+				final Object value;
+				if (varargs.isListOfLists) {
+					value = bindListsRemainder(context, varargs.propertyType, remainingNodes, lastIndexed);
+				} else {
+					value = context.bindMany(varargs.propertyType, remainingNodes.subList(Math.min(lastIndexed, remainingNodes.size()), remainingNodes.size()));
+				}
+				assign(context, remainder, result, value);
+			} else {
+				warnOnUnusedPositions(context, remainingNodes, lastIndexed);
+			}
+		} else {
+			warnOnUnusedPositions(context, remainingNodes, 0);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Set a double, int, long or boolean property straight from the text of an atom, without boxing the value.
+	 *
+	 * @return false if the property is not one of those, or the atom is not a value which can be read that way, in
+	 * which case it should be bound as usual
+	 */
+	private boolean bindPrimitive(final Reader.Context context, final int property, final T target, final JasbPropertyDescriptor pd, final Node node) {
+		final Class<?> type = pd.propertyType;
+		if (!type.isPrimitive() || pd.isIdentifier || !(node instanceof Atom)) return false;
+		final String text = ((Atom) node).getValue();
+		if (text.startsWith(Switcher.CROSS_REFERENCE_PREFIX)) return false;
+		final IPrimitiveAtomReader reader = context.getPrimitiveReader(pd.boxedPropertyType);
+		if (reader == null) return false;
+
+		try {
+			if (type == double.class) {
+				final double value;
+				try {
+					value = reader.readDouble(text);
+				} catch (final IllegalArgumentException e) {
+					return false;
+				}
+				setDouble(property, target, value);
+			} else if (type == int.class) {
+				final int value;
+				try {
+					value = reader.readInt(text);
+				} catch (final IllegalArgumentException e) {
+					return false;
+				}
+				setInt(property, target, value);
+			} else if (type == long.class) {
+				final long value;
+				try {
+					value = reader.readLong(text);
+				} catch (final IllegalArgumentException e) {
+					return false;
+				}
+				setLong(property, target, value);
+			} else if (type == boolean.class) {
+				final boolean value;
+				try {
+					value = reader.readBoolean(text);
+				} catch (final IllegalArgumentException e) {
+					return false;
+				}
+				setBoolean(property, target, value);
+			} else {
+				return false;
+			}
+		} catch (final RuntimeException e) {
+			setterFailed(property, target, e);
+		}
+		context.counted();
+		return true;
+	}
+
+	private void assign(final Reader.Context context, final int property, final T target, final Object value) {
+		if (value instanceof Deferred) {
+			context.fixUp(this, property, target, (Deferred) value);
+		} else if (value != Deferred.FAILED) {
+			setUnchecked(property, target, value);
+		}
+	}
+
+	private static Object bindProperty(final Reader.Context context, final JasbPropertyDescriptor pd, final Node node) {
+		if (pd.isMultiple) {
+			return bindOneOrMany(context, pd.propertyType, node);
+		} else {
+			return context.bind(pd.boxedPropertyType, node);
+		}
+	}
+
+	private static Object bindOneOrMany(final Reader.Context context, final Class<?> type, final Node node) {
+		if (node instanceof Seq && ((Seq) node).getDelimeter() == Delim.Bracket) {
+			return context.bindMany(type, (Seq) node);
+		} else if (node instanceof Atom || node instanceof Seq) {
+			final List<Object> values = new ArrayList<>(1);
+			values.add(context.bind(type, node));
+			return Deferred.all(values);
+		} else {
+			throw new RuntimeException(node + " is neither a Seq nor an Atom, which should not happen");
+		}
+	}
+
+	private static Object bindListsRemainder(final Reader.Context context, final Class<?> type, final List<Node> nodes, final int offset) {
+		final List<Node> interestingNodes = nodes.subList(Math.min(offset, nodes.size()), nodes.size());
+		final List<Object> lists = new ArrayList<>(interestingNodes.size());
+
+		for (final Node node : interestingNodes) {
+			if (node instanceof Comment) continue;
+			if (node instanceof Seq) {
+				final Seq seq = (Seq) node;
+				if (seq.getDelimeter() == Delim.Bracket) {
+					lists.add(context.bindMany(type, seq));
+				} else {
+					context.handle(BasicError.at(seq, "Was expecting a list (with square brackets), but encountered an invocation (with parentheses)"));
+				}
+			} else {
+				context.handle(BasicError.at(node, "Was expecting a list (with square brackets), but encountered an atom"));
+			}
+		}
+
+		return Deferred.all(lists);
+	}
 
 	protected final void warnOnUnusedKeys(final IReadContext context, final Invocation invocation) {
 		for (final Map.Entry<String, Node> entry : invocation.arguments.entrySet()) {
@@ -56,26 +588,26 @@ public abstract class InvocationReader<T> {
 			context.handle(new UnexpectedTermError(entry.getValue(), "keyword", expectedKeys, entry.getKey()));
 		}
 	}
-	
+
 	protected static final void warnOnUnusedPositions(final IReadContext context, final List<Node> remainder, final int offset) {
 		if (remainder.size() > offset) {
 			context.handle(new UnusedTermError(ImmutableSet.copyOf(remainder.subList(offset, remainder.size()))));
 		}
 	}
-	
+
 	protected static final Node getNodeOrNull(final List<Node> nodes, final int index) {
 		if (index >= nodes.size()) return null;
 		return nodes.get(index);
 	}
-	
+
 	protected static final <Q> ListenableFuture<List<Q>> readRemainder(final IReadContext context, final Class<Q> type, final List<Node> nodes, final int offset) {
 		return context.readMany(type, nodes.subList(Math.min(offset, nodes.size()), nodes.size()));
 	}
 
 	protected static final <Q> ListenableFuture<List<List<Q>>> readListsRemainder(final IReadContext context,
-																				  final Class<Q> type, 
-																				  final List<Node> nodes, 
-																				  final int offset) {		
+																				  final Class<Q> type,
+																				  final List<Node> nodes,
+																				  final int offset) {
 		final List<Node> interestingNodes = nodes.subList(Math.min(offset, nodes.size()), nodes.size());
 
 		final ImmutableList.Builder<ListenableFuture<List<Q>>> futureLists = ImmutableList.builder();
@@ -111,7 +643,7 @@ public abstract class InvocationReader<T> {
 			return Futures.allAsList(ImmutableList.of(readValue));
 		} else if (node instanceof Seq) {
 			final Seq seq = (Seq) node;
-			
+
 			if (seq.getDelimeter() == Delim.Bracket) {
 				return context.readMany(type, seq);
 			} else {
@@ -122,7 +654,7 @@ public abstract class InvocationReader<T> {
 			throw new RuntimeException(node + " is neither a Seq nor an Atom, which should not happen");
 		}
 	}
-	
+
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,473 @@
+package com.larkery.jasb.io.impl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.sf.cglib.asm.ClassWriter;
+import net.sf.cglib.asm.Label;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Opcodes;
+import net.sf.cglib.asm.Type;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.CharMatcher;
+import com.google.common.hash.Hashing;
+import com.larkery.jasb.bind.AfterReading;
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.sexp.Node;
+
+/**
+ * This is a class which generates subclasses of {@link InvocationReader} which handle
+ * individual mapped types; they are loaded by an {@link InvocationReaderLoader}. What each generated class does is implement the abstract hooks
+ * which (a) new up the mapped type, (b) call its {@link AfterReading} method and (c) set
+ * each of its properties by number; reading the arguments is left to {@link InvocationReader}.
+ * 
+ * The consequences of doing this with codegeneration rather than reflection are good and bad;
+ * 
+ * good: it's much faster, and stack traces are a lot easier to follow because you can see
+ * 		 what kind of thing is being constructed rather than getting a lot of recursive calls to 
+ *		 apparently identical methods which have different runtime behaviour
+ *  bad: it's a bit harder to maintain, and it makes various methods not refactor-safe in some
+ *  	 other classes, specifically the hooks in {@link InvocationReader}
+ * 
+ * @author hinton
+ *
+ * @param <T>
+ */
+class InvocationReaderGenerator<T> implements Opcodes {
+	private static final String THIS = "this";
+	private static final String TARGET = "target";
+	private static final String CREATE = "create";
+	private static final String AFTER_READING = "afterReading";
+	private static final String SET = "set";
+	private static final String INIT = "<init>";
+	/**
+	 * Change this when the generated code changes, so that cached classes are not reused
+	 */
+	private static final int VERSION = 2;
+
+	private final Class<T> typeToRead;
+	private final String generatedClassName;
+	private final String generatedClassInternalName;
+	private final String generatedClassDescriptor;
+	private final String readTypeDescriptor;
+	private final String name;
+	private final List<JasbPropertyDescriptor> properties;
+	private final Method afterReading;
+	
+	public InvocationReaderGenerator(final Class<T> typeToRead) {
+		this.typeToRead = typeToRead;
+		
+		final Bind bind = typeToRead.getAnnotation(Bind.class);
+		if (bind == null) {
+			throw new IllegalArgumentException(typeToRead + " has no Bind annotation");
+		}
+		this.name = bind.value();
+		this.properties = InvocationReader.getProperties(typeToRead);
+		this.afterReading = getAfterReadingMethod(typeToRead);
+		
+		// the hash makes the name unique within a shared loader, and identifies the cached bytecode
+		this.generatedClassName = "ReaderFor" + 
+		CharMatcher.JAVA_LETTER_OR_DIGIT.retainFrom(
+				bind.value() )
+		
+		+ "A" + typeToRead.getSimpleName() + "_" + getBindingHash();
+		this.generatedClassInternalName = 
+				getClass().getPackage().getName().replace('.', '/') +
+				"/" + generatedClassName;
+		this.generatedClassDescriptor = "L" + this.generatedClassInternalName + ";";
+		
+		this.readTypeDescriptor = Type.getDescriptor(typeToRead);
+	}
+	
+	private static Method getAfterReadingMethod(final Class<?> typeToRead) {
+		return ClassMetadata.of(typeToRead).getAfterReading().orNull();
+	}
+	
+	/**
+	 * @return a hash of everything which goes into the generated class, so that a class generated earlier can be
+	 * reused if this is the same
+	 */
+	private String getBindingHash() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(VERSION).append('\n');
+		sb.append(typeToRead.getName()).append('\n');
+		sb.append(name).append('\n');
+		if (afterReading != null) {
+			sb.append(afterReading.getName()).append('\n');
+		}
+		for (final JasbPropertyDescriptor pd : properties) {
+			sb.append(pd.name).append(' ')
+				.append(pd.isMultiple).append(' ')
+				.append(Type.getMethodDescriptor(pd.readMethod)).append(' ')
+				.append(pd.writeMethod.getName()).append(' ')
+				.append(Type.getMethodDescriptor(pd.writeMethod)).append('\n');
+		}
+		return Hashing.sha1().hashString(sb, Charsets.UTF_8).toString().substring(0, 16);
+	}
+	
+	/**
+	 * @return the binary name of the generated class
+	 */
+	public String getGeneratedClassName() {
+		return generatedClassInternalName.replace('/', '.');
+	}
+
+	/**
+	 * Generates the class which will actually construct a thing of the desired type
+	 * 
+	 * @return the bytecode for the class
+	 */
+	public byte[] generate() {
+		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES + ClassWriter.COMPUTE_MAXS);
+		
+		cw.visit(V1_7, 
+				ACC_PUBLIC+ACC_SUPER,
+				generatedClassInternalName, // our internal name
+				// our signature, which is InvocationReader<ReadType>
+				"L" + Type.getInternalName(InvocationReader.class) + "<"
+						+ readTypeDescriptor+">;",
+				// our superclass
+				Type.getInternalName(InvocationReader.class),
+				null);
+		
+		cw.visitSource(getClass().getSimpleName()+ ".java", null);
+		
+		addInnerClassForTypeToRead(cw);
+		addConstructor(cw);
+		addCreateMethod(cw);
+		addAfterReadingMethod(cw);
+		addSetMethod(cw);
+		addPrimitiveSetMethod(cw, double.class, "setDouble");
+		addPrimitiveSetMethod(cw, int.class, "setInt");
+		addPrimitiveSetMethod(cw, long.class, "setLong");
+		addPrimitiveSetMethod(cw, boolean.class, "setBoolean");
+		
+		cw.visitEnd();
+		
+		return cw.toByteArray();
+	}
+
+	/**
+	 * Adds the default constructor, which is anonymous
+	 * @param cw
+	 */
+	private void addConstructor(final ClassWriter cw) {
+		final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, INIT, "()V", null, null);
+		mv.visitCode();
+		
+		// what we want to do first is invoke our super constructor
+		
+		final Label start = new Label();
+		mv.visitLabel(start);
+
+		// empty stack
+		mv.visitVarInsn(ALOAD, 0);
+		// this
+		mv.visitLdcInsn(Type.getType(typeToRead));
+		// this, type
+		mv.visitLdcInsn(name);
+		// this, type, name
+		
+		// invoke super constructor (InvocationReader.<init>(this, type, name))
+		final String initSignature = 
+				Type.getMethodDescriptor(Type.getType(Void.TYPE), 
+						new Type[] {Type.getType(Class.class), Type.getType(String.class)});
+		
+		mv.visitMethodInsn(
+				INVOKESPECIAL,
+				Type.getInternalName(InvocationReader.class), 
+				INIT,
+				initSignature);
+		// done
+		mv.visitInsn(RETURN);
+		final Label end = new Label();
+		mv.visitLabel(end);
+
+		// declare that we have a local variable called this with type this' type
+		mv.visitLocalVariable(THIS, generatedClassDescriptor, null, start, end, 0);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * If the type we are reading is an inner class, we need to register it as an inner class.
+	 * @param cw
+	 */
+	private void addInnerClassForTypeToRead(final ClassWriter cw) {
+		// first of all, if our friend is himself an inner class, here we go
+		if (typeToRead.getEnclosingClass() != null) {
+			if (!(Modifier.isPublic(typeToRead.getModifiers()) 
+					&& Modifier.isStatic(typeToRead.getModifiers()))) {
+				throw new IllegalArgumentException(typeToRead + " is a non-static inner class, which I cannot construct");
+			} else {
+				cw.visitInnerClass(
+						Type.getInternalName(typeToRead),
+						generatedClassInternalName, 
+						typeToRead.getSimpleName(), 
+						ACC_PUBLIC + ACC_STATIC);
+			}
+		}
+	}
+
+	/**
+	 * Adds create(), which news up the mapped type; as the type parameter is erased, this returns an Object.
+	 * @param cw
+	 */
+	private void addCreateMethod(final ClassWriter cw) {
+		final MethodVisitor mv = cw.visitMethod(ACC_PROTECTED, CREATE, "()" + Type.getDescriptor(Object.class), null, null);
+		mv.visitCode();
+		final Label start = new Label();
+		mv.visitLabel(start);
+		// construct a new [type]
+		mv.visitTypeInsn(NEW, Type.getInternalName(typeToRead));
+		// dup it
+		mv.visitInsn(DUP);
+		// invoke constuctor (pops a dup)
+		mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(typeToRead), INIT, "()V");
+		mv.visitInsn(ARETURN);
+		final Label end = new Label();
+		mv.visitLabel(end);
+		mv.visitLocalVariable(THIS, generatedClassDescriptor, null, start, end, 0);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Adds afterReading(target, node), which invokes the special information method if there is one
+	 * @param cw
+	 */
+	private void addAfterReadingMethod(final ClassWriter cw) {
+		final MethodVisitor mv = cw.visitMethod(ACC_PROTECTED, AFTER_READING,
+				Type.getMethodDescriptor(Type.getType(Void.TYPE),
+						new Type[] {Type.getType(Object.class), Type.getType(Node.class)}),
+				null, null);
+		mv.visitCode();
+		final Label start = new Label();
+		mv.visitLabel(start);
+		
+		if (afterReading != null) {
+			// what do we pass to this? the node which made it?
+			// that seems reasonable.
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(typeToRead));
+			// S: target
+			mv.visitVarInsn(ALOAD, 2);
+			// S: target node
+			mv.visitMethodInsn(
+					INVOKEVIRTUAL, 
+					Type.getInternalName(typeToRead),
+					afterReading.getName(), 
+					Type.getMethodDescriptor(
+							Type.getType(Void.TYPE),
+							new Type[] {Type.getType(Node.class)}));
+			// S: empty
+		}
+		
+		mv.visitInsn(RETURN);
+		final Label end = new Label();
+		mv.visitLabel(end);
+		mv.visitLocalVariable(THIS, generatedClassDescriptor, null, start, end, 0);
+		mv.visitLocalVariable(TARGET, Type.getDescriptor(Object.class), null, start, end, 1);
+		mv.visitLocalVariable("node", Type.getDescriptor(Node.class), null, start, end, 2);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Adds set(property, target, value), which switches on the property number to call the right setter.
+	 * Multiple valued properties are filled in by replacing the contents of the list from the getter.
+	 * @param cw
+	 */
+	private void addSetMethod(final ClassWriter cw) {
+		final MethodVisitor mv = cw.visitMethod(ACC_PROTECTED, SET,
+				Type.getMethodDescriptor(Type.getType(Void.TYPE),
+						new Type[] {Type.INT_TYPE, Type.getType(Object.class), Type.getType(Object.class)}),
+				null, null);
+		mv.visitCode();
+		final Label start = new Label();
+		mv.visitLabel(start);
+		
+		final Label unknown = new Label();
+		
+		if (!properties.isEmpty()) {
+			final Label[] cases = new Label[properties.size()];
+			for (int i = 0; i < cases.length; i++) {
+				cases[i] = new Label();
+			}
+			mv.visitVarInsn(ILOAD, 1);
+			mv.visitTableSwitchInsn(0, cases.length - 1, unknown, cases);
+			
+			for (int i = 0; i < cases.length; i++) {
+				final JasbPropertyDescriptor property = properties.get(i);
+				mv.visitLabel(cases[i]);
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitTypeInsn(CHECKCAST, Type.getInternalName(typeToRead));
+				// S: target
+				if (property.isMultiple) {
+					mv.visitMethodInsn(INVOKEVIRTUAL, 
+							Type.getInternalName(typeToRead),
+							property.readMethod.getName(),
+							Type.getMethodDescriptor(property.readMethod));
+					// S: list from target
+					mv.visitInsn(DUP);
+					final Label isNull = new Label();
+					// if it is null, we want to give up
+					mv.visitJumpInsn(IFNULL, isNull);
+					mv.visitInsn(DUP);
+					// S: list list
+					mv.visitMethodInsn(INVOKEINTERFACE, 
+							Type.getInternalName(List.class),
+							"clear", 
+							Type.getMethodDescriptor(Type.getType(Void.TYPE), new Type[] {}));
+					// S: list
+					mv.visitVarInsn(ALOAD, 3);
+					mv.visitTypeInsn(CHECKCAST, Type.getInternalName(Collection.class));
+					// S: list values
+					mv.visitMethodInsn(INVOKEINTERFACE, 
+							Type.getInternalName(List.class),
+							"addAll",
+							Type.getMethodDescriptor(
+									Type.getType(Boolean.TYPE),
+									new Type[] {Type.getType(Collection.class)}));
+					// dump the boolean that comes out
+					mv.visitInsn(POP);
+					mv.visitInsn(RETURN);
+					mv.visitLabel(isNull);
+					throwRuntimeException(mv, "List for property " + property.name + " was null in newly constructed " + this.typeToRead.getSimpleName());
+				} else {
+					mv.visitVarInsn(ALOAD, 3);
+					mv.visitTypeInsn(CHECKCAST, Type.getInternalName(property.boxedPropertyType));
+					// at this point we need to unbox any boxed types
+					unboxIfPrimitive(mv, property);
+					// S: target value
+					mv.visitMethodInsn(INVOKEVIRTUAL, 
+							Type.getInternalName(typeToRead),
+							property.writeMethod.getName(),
+							Type.getMethodDescriptor(property.writeMethod));
+					mv.visitInsn(RETURN);
+				}
+			}
+		}
+		
+		mv.visitLabel(unknown);
+		throwRuntimeException(mv, typeToRead.getSimpleName() + " has no property with that number");
+		
+		final Label end = new Label();
+		mv.visitLabel(end);
+		mv.visitLocalVariable(THIS, generatedClassDescriptor, null, start, end, 0);
+		mv.visitLocalVariable("property", Type.getDescriptor(int.class), null, start, end, 1);
+		mv.visitLocalVariable(TARGET, Type.getDescriptor(Object.class), null, start, end, 2);
+		mv.visitLocalVariable("value", Type.getDescriptor(Object.class), null, start, end, 3);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+	
+	/**
+	 * Adds a method like setDouble(property, target, value), which calls the setter for the properties of the given
+	 * primitive type without boxing the value, and leaves any other property to the superclass. Nothing is added if
+	 * there are no properties of that type.
+	 * @param cw
+	 */
+	private void addPrimitiveSetMethod(final ClassWriter cw, final Class<?> primitive, final String methodName) {
+		final List<Integer> numbers = new ArrayList<>();
+		for (int i = 0; i < properties.size(); i++) {
+			final JasbPropertyDescriptor property = properties.get(i);
+			if (property.propertyType == primitive && !property.isMultiple) {
+				numbers.add(i);
+			}
+		}
+		if (numbers.isEmpty()) return;
+		
+		final Type valueType = Type.getType(primitive);
+		final String descriptor = Type.getMethodDescriptor(Type.getType(Void.TYPE),
+				new Type[] {Type.INT_TYPE, Type.getType(Object.class), valueType});
+		
+		final MethodVisitor mv = cw.visitMethod(ACC_PROTECTED, methodName, descriptor, null, null);
+		mv.visitCode();
+		final Label start = new Label();
+		mv.visitLabel(start);
+		
+		final Label other = new Label();
+		final int[] keys = new int[numbers.size()];
+		final Label[] cases = new Label[numbers.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = numbers.get(i);
+			cases[i] = new Label();
+		}
+		mv.visitVarInsn(ILOAD, 1);
+		mv.visitLookupSwitchInsn(other, keys, cases);
+		
+		for (int i = 0; i < keys.length; i++) {
+			final JasbPropertyDescriptor property = properties.get(keys[i]);
+			mv.visitLabel(cases[i]);
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(typeToRead));
+			// S: target
+			mv.visitVarInsn(valueType.getOpcode(ILOAD), 3);
+			// S: target value
+			mv.visitMethodInsn(INVOKEVIRTUAL, 
+					Type.getInternalName(typeToRead),
+					property.writeMethod.getName(),
+					Type.getMethodDescriptor(property.writeMethod));
+			mv.visitInsn(RETURN);
+		}
+		
+		// anything else goes to the superclass, which boxes it and calls set
+		mv.visitLabel(other);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ILOAD, 1);
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitVarInsn(valueType.getOpcode(ILOAD), 3);
+		mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(InvocationReader.class), methodName, descriptor);
+		mv.visitInsn(RETURN);
+		
+		final Label end = new Label();
+		mv.visitLabel(end);
+		mv.visitLocalVariable(THIS, generatedClassDescriptor, null, start, end, 0);
+		mv.visitLocalVariable("property", Type.getDescriptor(int.class), null, start, end, 1);
+		mv.visitLocalVariable(TARGET, Type.getDescriptor(Object.class), null, start, end, 2);
+		mv.visitLocalVariable("value", valueType.getDescriptor(), null, start, end, 3);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+	
+	private void unboxIfPrimitive(final MethodVisitor mv, final JasbPropertyDescriptor property) {
+		final Class<?> t = property.propertyType;
+		if (t.isPrimitive()) {
+			// we need to do the unboxing
+			// top of the stack at this point is the boxed type,
+			// so this basically consists of invoking intValue() or similar:
+			if (t == int.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Integer.class), "intValue", "()" + Type.getDescriptor(int.class));
+			} else if (t == double.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Double.class), "doubleValue", "()" + Type.getDescriptor(double.class));
+			} else if (t == boolean.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Boolean.class), "booleanValue", "()" + Type.getDescriptor(boolean.class));
+			} else if (t == long.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Long.class), "longValue", "()" + Type.getDescriptor(long.class));
+			} else if (t == float.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Float.class), "floatValue", "()" + Type.getDescriptor(float.class));
+			} else if (t == char.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Character.class), "charValue", "()" + Type.getDescriptor(char.class));
+			} else if (t == byte.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Byte.class), "byteValue", "()" + Type.getDescriptor(byte.class));
+			} else if (t == short.class) {
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Short.class), "shortValue", "()" + Type.getDescriptor(short.class));
+			} else {
+				throw new IllegalArgumentException(t + " is a new kind of primitive type! Quite suprised.");
+			}
+		}
+	}
+
+	private void throwRuntimeException(final MethodVisitor mv,final String error) {
+		mv.visitTypeInsn(NEW, "java/lang/RuntimeException");
+		mv.visitInsn(DUP);
+		mv.visitLdcInsn(error);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/RuntimeException", INIT, "(Ljava/lang/String;)V");
+		mv.visitInsn(ATHROW);
+	}
+}
@@ -0,0 +1,27 @@
+package com.larkery.jasb.io.impl;
+
+/**
+ * The counterpart of {@link InvocationReader} for writing; subclasses are generated by {@link BindingProcessor} to
+ * read the bound properties of a mapped type without reflection.
+ *
+ * <b>DO NOT</b> rename any of its protected methods, as they are used in generated subtypes
+ *
+ * @param <T>
+ */
+public abstract class InvocationWriter<T> {
+	protected final Class<T> clazz;
+
+	protected InvocationWriter(final Class<T> clazz) {
+		this.clazz = clazz;
+	}
+
+	/**
+	 * Overridden in subclasses to call the getter for the property with the given java beans name
+	 */
+	protected abstract Object get(final String property, final T target);
+
+	@SuppressWarnings("unchecked")
+	final Object getUnchecked(final String property, final Object target) {
+		return get(property, (T) target);
+	}
+}
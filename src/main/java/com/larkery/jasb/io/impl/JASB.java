@@ -1,14 +1,16 @@
 package com.larkery.jasb.io.impl;
 
+import java.io.File;
 import java.lang.reflect.Modifier;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
-import com.larkery.jasb.bind.Bind;
 import com.larkery.jasb.io.IAtomIO;
 import com.larkery.jasb.io.IModel;
 import com.larkery.jasb.io.IReader;
@@ -20,14 +22,37 @@ import com.larkery.jasb.io.IWriter;
 public class JASB {
 	private final IReader reader;
 	private final IWriter writer;
-	private final Model model;
+	private final Set<Class<?>> concrete;
+	private final Set<IAtomIO> atoms;
+	private Model model;
 	private final Multimap<String, Class<?>> classesByName; 
 	
-	JASB(final Set<Class<?>> classes, final Set<IAtomIO> atoms) {
+	/**
+	 * When to check that the bound classes can be read
+	 */
+	public enum Validation {
+		/**
+		 * Check every class when the {@link JASB} is made, one after another, and make the model then as well, so any
+		 * problem with it is thrown straight away
+		 */
+		EAGER,
+		/**
+		 * Check every class when the {@link JASB} is made, using a thread for each processor; the model is not made
+		 * until {@link JASB#getModel()} is first called, so problems with it are thrown from there
+		 */
+		PARALLEL,
+		/**
+		 * Check classes when they are first needed to read something; problems will be thrown from the reader, or from
+		 * {@link JASB#getModel()} when the model is first wanted
+		 */
+		LAZY
+	}
+	
+	JASB(final Builder builder) {
 		final ImmutableMultimap.Builder<String, Class<?>> classesByName = 
 				ImmutableMultimap.builder();
 		
-		final Set<Class<?>> concrete = ImmutableSet.copyOf(Collections2.filter(classes, 
+		this.concrete = ImmutableSet.copyOf(Collections2.filter(builder.classes, 
 				new Predicate<Class<?>>() {
 					@Override
 					public boolean apply(final Class<?> input) {
@@ -35,18 +60,25 @@ public class JASB {
 					}
 				}
 				));
+		this.atoms = builder.atoms;
 		
-		this.model = new Model(concrete, atoms);
-		this.reader = new Reader(concrete, atoms);
-		this.writer = new Writer(atoms);
+		// one registry for both, so each atom type is only worked out once
+		final AtomCodecs codecs = new AtomCodecs(atoms, atoms);
+		this.reader = new Reader(concrete, atoms, codecs, builder.synchronous, builder.bytecodeCache, builder.validation, builder.parallelism);
+		this.writer = new Writer(codecs);
 		
 		for (final Class<?> clazz : concrete) {
-			if (clazz.isAnnotationPresent(Bind.class)) {
-				classesByName.put(clazz.getAnnotation(Bind.class).value(), clazz);
+			final Optional<String> name = ClassMetadata.of(clazz).getBindName();
+			if (name.isPresent()) {
+				classesByName.put(name.get(), clazz);
 			}
 		}
 		
 		this.classesByName = classesByName.build();
+		
+		if (builder.validation == Validation.EAGER) {
+			getModel();
+		}
 	}
 	
 	public Set<Class<?>> getClassesBoundTo(final String name) {
@@ -61,12 +93,106 @@ public class JASB {
 		return reader;
 	}
 	
-	public IModel getModel() {
+	/**
+	 * Unless validation is {@link Validation#EAGER}, the model is only made when it is first wanted, as few users of
+	 * jasb need one; any problem making it is thrown from here then.
+	 * 
+	 * @throws IllegalArgumentException if a bound class cannot be modelled
+	 */
+	public synchronized IModel getModel() {
+		if (model == null) {
+			model = new Model(concrete, atoms);
+		}
 		return this.model;
 	}
 
 	public static JASB of(final Set<Class<?>> classes, final Set<IAtomIO> atoms) {
-		return new JASB(classes, atoms);
+		return builder(classes, atoms).build();
+	}
+	
+	/**
+	 * @param synchronous whether the reader should bind values directly, which is the default, or read everything
+	 * through futures
+	 */
+	public static JASB of(final Set<Class<?>> classes, final Set<IAtomIO> atoms, final boolean synchronous) {
+		return builder(classes, atoms).withSynchronousBinding(synchronous).build();
+	}
+	
+	/**
+	 * @param bytecodeCache a directory in which to keep the classes generated to read bound classes, so that they need
+	 * not be generated again the next time; it is only used for bound classes which were not compiled with the
+	 * binding processor
+	 */
+	public static JASB of(final Set<Class<?>> classes, final Set<IAtomIO> atoms, final boolean synchronous, final File bytecodeCache) {
+		return builder(classes, atoms).withSynchronousBinding(synchronous).withBytecodeCache(bytecodeCache).build();
+	}
+	
+	public static Builder builder(final Set<Class<?>> classes, final Set<IAtomIO> atoms) {
+		return new Builder(classes, atoms);
+	}
+	
+	public static class Builder {
+		private final Set<Class<?>> classes;
+		private final Set<IAtomIO> atoms;
+		private boolean synchronous = true;
+		private Optional<File> bytecodeCache = Optional.absent();
+		private Validation validation = Validation.EAGER;
+		private Optional<ForkJoinPool> parallelism = Optional.absent();
+		
+		private Builder(final Set<Class<?>> classes, final Set<IAtomIO> atoms) {
+			this.classes = classes;
+			this.atoms = atoms;
+		}
+		
+		/**
+		 * Whether the reader should bind values directly, which is the default, or read everything through futures
+		 */
+		public Builder withSynchronousBinding(final boolean synchronous) {
+			this.synchronous = synchronous;
+			return this;
+		}
+		
+		/**
+		 * Keep the classes generated to read bound classes in the given directory, so that they need not be generated
+		 * again the next time; it is only used for bound classes which were not compiled with the binding processor
+		 */
+		public Builder withBytecodeCache(final File bytecodeCache) {
+			this.bytecodeCache = Optional.of(bytecodeCache);
+			return this;
+		}
+		
+		/**
+		 * When to check the bound classes, which is {@link Validation#EAGER} by default; this also decides whether the
+		 * model is made straight away, or when it is first wanted.
+		 */
+		public Builder withValidation(final Validation validation) {
+			this.validation = validation;
+			return this;
+		}
+		
+		/**
+		 * Bind the lists of invocations in the input on the given pool, each invocation in a list by its own task. The
+		 * values and errors are the same as when binding on one thread.
+		 * 
+		 * This only applies to synchronous binding.
+		 */
+		public Builder withParallelBinding(final ForkJoinPool pool) {
+			this.parallelism = Optional.of(pool);
+			return this;
+		}
+		
+		/**
+		 * Bind in parallel on a new pool with a thread for each processor
+		 * 
+		 * @see #withParallelBinding(ForkJoinPool)
+		 */
+		public Builder withParallelBinding() {
+			return withParallelBinding(new ForkJoinPool());
+		}
+		
+		public JASB build() {
+			return new JASB(this);
+		}
 	}
 	
 	public static IWriter writer(final Set<IAtomIO> atoms) {
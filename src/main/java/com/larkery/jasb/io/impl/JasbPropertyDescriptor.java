@@ -51,7 +51,14 @@ class JasbPropertyDescriptor {
 		return out.build();
 	}
 	
+	/**
+	 * @return the bound properties of the given class, which are only worked out once for each class
+	 */
 	public static Set<JasbPropertyDescriptor> getDescriptors(final Class<?> clazz) {
+		return ClassMetadata.of(clazz).getDescriptors();
+	}
+	
+	static ImmutableSet<JasbPropertyDescriptor> computeDescriptors(final Class<?> clazz) {
 		try {
 			final ImmutableSet.Builder<JasbPropertyDescriptor> out = ImmutableSet.builder();
 			for (final PropertyDescriptor pd : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
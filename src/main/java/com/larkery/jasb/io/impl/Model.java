@@ -7,7 +7,6 @@ import java.util.Set;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
-import com.larkery.jasb.bind.Bind;
 import com.larkery.jasb.io.IAtomReader;
 import com.larkery.jasb.io.IModel;
 
@@ -166,7 +165,8 @@ public class Model implements IModel {
 
 		public InvocationModel(final Class<?> clazz) {
 			this.javaType = clazz;
-			if (!clazz.isAnnotationPresent(Bind.class)) {
+			final Optional<String> bindName = ClassMetadata.of(clazz).getBindName();
+			if (!bindName.isPresent()) {
 				throw new IllegalArgumentException(""+clazz);
 			}
 			final Object val;
@@ -176,7 +176,7 @@ public class Model implements IModel {
 				throw new IllegalArgumentException(clazz.getCanonicalName() + " couldn't be constructed", e);
 			}
 			
-			this.name = clazz.getAnnotation(Bind.class).value();
+			this.name = bindName.get();
 			
 			final ImmutableSet.Builder<IArgument> arguments = 
 					ImmutableSet.builder();
@@ -1,18 +1,25 @@
 package com.larkery.jasb.io.impl;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.larkery.jasb.bind.AfterReading;
 import com.larkery.jasb.bind.Bind;
 import com.larkery.jasb.io.IAtomReader;
+import com.larkery.jasb.io.IPrimitiveAtomReader;
 import com.larkery.jasb.io.IReadContext;
 import com.larkery.jasb.sexp.Atom;
 import com.larkery.jasb.sexp.errors.UnexpectedTermError;
@@ -23,10 +30,15 @@ class MultiAtomReader<T> {
 	private final Set<String> legalValues;
     private final Set<String> allLegalValues;
 	private final ImmutableMap<String, Class<?>> fallbacks;
+	private final ImmutableMap<String, MethodHandle> factories;
+	private final IPrimitiveAtomReader primitive;
 
 	public MultiAtomReader(final Class<T> clazz, final ImmutableSet<IAtomReader> build, final ImmutableSet<Class<?>> fallbacks) {
 		this.clazz = clazz;
 		this.delegates = build;
+		// only the first delegate can be used for primitives, as it is the first one asked to read an atom
+		final IAtomReader first = delegates.isEmpty() ? null : delegates.iterator().next();
+		this.primitive = first instanceof IPrimitiveAtomReader ? (IPrimitiveAtomReader) first : null;
 		
 		final ImmutableMap.Builder<String, Class<?>> fallbackBuilder = ImmutableMap.builder();
 		
@@ -43,47 +55,123 @@ class MultiAtomReader<T> {
 		}
 		
 		this.fallbacks = fallbackBuilder.build();
+		this.factories = createFactories(clazz, this.fallbacks);
 
         this.allLegalValues = Sets.union(legalValues,
                                          this.fallbacks.keySet());
 	}
 
 	protected ListenableFuture<T> read(final IReadContext context, final Atom atom) {
+		final Optional<T> value = readValue(atom);
+		if (value.isPresent()) {
+			return Futures.immediateFuture(value.get());
+		}
+
+        if (!atom.getValue().endsWith(":")) {
+            return context.getCrossReference(clazz, atom, atom.getValue(),
+                                             allLegalValues);
+        } else {
+            unexpected(context, atom);
+            return Futures.immediateFailedFuture(new RuntimeException("Could not read " + atom + " as " + clazz));
+        }
+	}
+
+	/**
+	 * The synchronous equivalent of {@link #read(IReadContext, Atom)}
+	 */
+	Object bind(final Reader.Context context, final Atom atom) {
+		final Optional<T> value = readValue(atom);
+		if (value.isPresent()) {
+			return value.get();
+		}
+
+		if (!atom.getValue().endsWith(":")) {
+			return context.crossReference(clazz, atom, atom.getValue(), allLegalValues);
+		} else {
+			unexpected(context, atom);
+			return Deferred.FAILED;
+		}
+	}
+
+	/**
+	 * @return the reader which can read primitive values of this type, or null if there is not one
+	 */
+	IPrimitiveAtomReader getPrimitiveReader() {
+		return primitive;
+	}
+
+	private void unexpected(final IReadContext context, final Atom atom) {
+		context.handle(new UnexpectedTermError(atom,
+											   atom.getValue().endsWith(":") ? "keyword" : "word",
+											   allLegalValues,
+											   atom.getValue()));
+	}
+
+	/**
+	 * @return the value of the atom, if it is a literal or names a fallback class
+	 */
+	private Optional<T> readValue(final Atom atom) {
 		for (final IAtomReader reader : delegates) {
 			final Optional<T> value = reader.read(atom.getValue(), clazz);
 			if (value.isPresent()) {
-				return Futures.immediateFuture(value.get());
+				return value;
 			}
 		}
 		
-		if (fallbacks.containsKey(atom.getValue())) {
+		final MethodHandle factory = factories.get(atom.getValue());
+		if (factory != null) {
+			final Object fallbackValue;
 			try {
-				final T fallbackValue = clazz.cast(fallbacks.get(atom.getValue()).getConstructor().newInstance());
-				for (final Method m : clazz.getMethods()) {
-					if (m.isAnnotationPresent(AfterReading.class)) {
-						if (m.getParameterTypes().length == 1 && m.getParameterTypes()[0].isAssignableFrom(Atom.class)) {
-							m.invoke(fallbackValue, atom);
-						}
+				fallbackValue = (Object) factory.invokeExact(atom);
+			} catch (final Throwable th) {
+				return Optional.absent();
+			}
+			return Optional.of(clazz.cast(fallbackValue));
+		}
+
+		return Optional.absent();
+	}
+
+	/**
+	 * Each fallback class is made by a handle which takes the atom naming it, constructs the class and passes the atom
+	 * to each {@link AfterReading} method of the type being read which will take it. Fallbacks which cannot be made
+	 * that way are left out, so their names are read as cross-references instead.
+	 */
+	private static ImmutableMap<String, MethodHandle> createFactories(final Class<?> clazz, final ImmutableMap<String, Class<?>> fallbacks) {
+		final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		final MethodType hookType = MethodType.methodType(void.class, Object.class, Atom.class);
+
+		final List<MethodHandle> hooks = new ArrayList<>();
+		for (final Method m : clazz.getMethods()) {
+			if (m.isAnnotationPresent(AfterReading.class)) {
+				if (m.getParameterTypes().length == 1 && m.getParameterTypes()[0].isAssignableFrom(Atom.class)) {
+					try {
+						hooks.add(lookup.unreflect(m).asType(hookType));
+					} catch (final IllegalAccessException e) {
+						return ImmutableMap.of();
 					}
 				}
-				return Futures.immediateFuture(fallbackValue);
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
 			}
 		}
 
-        if (!atom.getValue().endsWith(":")) {
-            return context.getCrossReference(clazz, atom, atom.getValue(),
-                                             allLegalValues);
-        } else {
-            context.handle(new UnexpectedTermError(atom,
-                                                   atom.getValue().endsWith(":") ? "keyword" : "word",
-                                                   allLegalValues,
-                                                   atom.getValue()));
-		
-		return Futures.immediateFailedFuture(new RuntimeException("Could not read " + atom + " as " + clazz));
-        }
-        
-       
-	}
+		final ImmutableMap.Builder<String, MethodHandle> builder = ImmutableMap.builder();
+		for (final Entry<String, Class<?>> fallback : fallbacks.entrySet()) {
+			final MethodHandle constructor;
+			try {
+				constructor = lookup.findConstructor(fallback.getValue(), MethodType.methodType(void.class))
+						.asType(MethodType.methodType(Object.class));
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				continue;
+			}
 
+			// each fold runs before what it is folded into, so the hooks are folded in from last to first
+			MethodHandle factory = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, Atom.class);
+			for (final MethodHandle hook : Lists.reverse(hooks)) {
+				factory = MethodHandles.foldArguments(factory, hook);
+			}
+			factory = MethodHandles.foldArguments(factory, MethodHandles.dropArguments(constructor, 0, Atom.class));
+			builder.put(fallback.getKey(), factory);
+		}
+		return builder.build();
+	}
 }
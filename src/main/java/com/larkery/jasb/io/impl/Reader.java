@@ -1,62 +1,130 @@
 package com.larkery.jasb.io.impl;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.larkery.jasb.bind.AfterReading;
 import com.larkery.jasb.bind.Bind;
 import com.larkery.jasb.io.IAtomReader;
+import com.larkery.jasb.io.IAtomWriter;
+import com.larkery.jasb.io.IPrimitiveAtomReader;
 import com.larkery.jasb.io.IReadContext;
 import com.larkery.jasb.io.IReader;
+import com.larkery.jasb.io.impl.JASB.Validation;
 import com.larkery.jasb.sexp.Atom;
 import com.larkery.jasb.sexp.Comment;
 import com.larkery.jasb.sexp.ISExpression;
 import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
 import com.larkery.jasb.sexp.errors.BasicError;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
 import com.larkery.jasb.sexp.errors.ILocated;
 import com.larkery.jasb.sexp.errors.UnexpectedTermError;
 import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Measure;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
+import com.larkery.jasb.sexp.parse.Pipeline;
+import com.larkery.jasb.sexp.parse.Pipeline.Span;
 
+/**
+ * A reader may be shared between threads. Everything it knows about the bound classes is either fixed when it is
+ * made or cached in concurrent maps; the state of each read is kept in a {@link Context}, which is only used by the
+ * thread doing the read.
+ */
 class Reader implements IReader {
-	private final Map<Class<?>, Switcher<?>> switchers = new HashMap<>();
-	private final Map<Class<?>, InvocationReader<?>> specificReaders = new HashMap<>();
+	private final ConcurrentMap<Class<?>, Switcher<?>> switchers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, InvocationReader<?>> specificReaders = new ConcurrentHashMap<>();
+	private final Map<ClassLoader, InvocationReaderLoader> loaders = new HashMap<>();
 	private final Set<Class<?>> boundClasses;
 	private final Set<? extends IAtomReader> atomReaders;
+	private final AtomCodecs codecs;
 	private final Set<String> allBoundNames;
+	private final boolean synchronous;
+	private final Optional<File> bytecodeCache;
+	private final boolean lazy;
+	private final Optional<ForkJoinPool> parallelism;
+	private final Set<Class<?>> checkedClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 	
 	public Reader(final Set<Class<?>> concrete, final Set<? extends IAtomReader> atomReaders) {
+		this(concrete, atomReaders, true, Optional.<File>absent(), Validation.EAGER, Optional.<ForkJoinPool>absent());
+	}
+	
+	/**
+	 * @param synchronous if true, {@link #readNode(Class, Node, IErrorHandler)} binds values directly, leaving only
+	 * forward cross-references to be filled in at the end; otherwise every value is read through a future, as an
+	 * {@link IReadContext} does.
+	 * @param bytecodeCache a directory in which to keep the readers generated for bound classes between runs
+	 * @param validation when to check that the bound classes can be read
+	 * @param parallelism if present, and binding synchronously, the lists of invocations in the input are bound on
+	 * this pool, each invocation in a list by a separate task
+	 */
+	public Reader(final Set<Class<?>> concrete, final Set<? extends IAtomReader> atomReaders, final boolean synchronous, final Optional<File> bytecodeCache, final Validation validation, final Optional<ForkJoinPool> parallelism) {
+		this(concrete, atomReaders, new AtomCodecs(atomReaders, ImmutableList.<IAtomWriter>of()), synchronous, bytecodeCache, validation, parallelism);
+	}
+	
+	/**
+	 * @param codecs the registry to find the atom readers for each type in, which may be shared with a {@link Writer};
+	 * it should have the same readers as atomReaders
+	 */
+	Reader(final Set<Class<?>> concrete, final Set<? extends IAtomReader> atomReaders, final AtomCodecs codecs, final boolean synchronous, final Optional<File> bytecodeCache, final Validation validation, final Optional<ForkJoinPool> parallelism) {
 		super();
 		
-		checkConsistency(concrete, atomReaders);
+		switch (validation) {
+		case EAGER:
+			for (final Class<?> clazz : concrete) {
+				checkClass(clazz, concrete, atomReaders);
+			}
+			break;
+		case PARALLEL:
+			checkInParallel(concrete, atomReaders);
+			break;
+		case LAZY:
+			break;
+		}
+		this.lazy = validation == Validation.LAZY;
 		
 		this.boundClasses = concrete;
 		this.atomReaders = atomReaders;
+		this.codecs = codecs;
+		this.synchronous = synchronous;
+		this.bytecodeCache = bytecodeCache;
+		this.parallelism = parallelism;
 		
 		final ImmutableSet.Builder<String> strings = ImmutableSet.builder();
 		for (final Class<?> clazz : this.boundClasses) {
-			if (clazz.isAnnotationPresent(Bind.class)) {
-				strings.add(clazz.getAnnotation(Bind.class).value());
-			}
+			strings.addAll(ClassMetadata.of(clazz).getBindName().asSet());
 		}
 		allBoundNames = strings.build();
 	}
 	
+	AtomCodecs getCodecs() {
+		return codecs;
+	}
+	
 	public IReadContext getContext(final IErrorHandler delegate) {
 		return new Context(delegate);
 	}
@@ -108,9 +176,35 @@ class Reader implements IReader {
 	public <T> Optional<T> readNode(final Class<T> output, final Node input, final IErrorHandler errors, final Map<String, Object> crossReferences) {
 		if (input == null) return Optional.absent();
 		
+		final Span span = Pipeline.start(Stage.BIND, output);
+		try {
+			return readNode(output, input, errors, crossReferences, span);
+		} finally {
+			span.finish();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> Optional<T> readNode(final Class<T> output, final Node input, final IErrorHandler errors, final Map<String, Object> crossReferences, final Span span) {
 		final Context context = new Context(errors);
 		
-		final ListenableFuture<T> read = context.read(output, input);
+		final ListenableFuture<T> read;
+		final Object value;
+		if (synchronous) {
+			read = null;
+			if (parallelism.isPresent()) {
+				final Branch branch = new Branch(context, output, input);
+				parallelism.get().invoke(branch);
+				value = branch.result();
+			} else {
+				value = context.bind(output, input);
+			}
+			context.applyFixUps();
+		} else {
+			read = context.read(output, input);
+			value = null;
+		}
+		span.count(Measure.OBJECTS, context.objects);
 		
 		for (final Map.Entry<Atom, Set<String>> error : context.unresolved.entrySet()) {
             errors.handle(new UnexpectedTermError(error.getKey(),
@@ -123,7 +217,16 @@ class Reader implements IReader {
 			crossReferences.putAll(context.resolver.getDefinitions());
 		}
 		
-		if (read.isDone()) {
+		if (read == null) {
+			if (value instanceof Deferred) {
+				final Deferred deferred = (Deferred) value;
+				return deferred.isResolved() ? Optional.fromNullable((T) deferred.get()) : Optional.<T>absent();
+			} else if (value == Deferred.FAILED) {
+				return Optional.absent();
+			} else {
+				return Optional.fromNullable((T) value);
+			}
+		} else if (read.isDone()) {
 			try {
 				return Optional.fromNullable(read.get());
 			} catch (InterruptedException | ExecutionException e) {
@@ -139,138 +242,169 @@ class Reader implements IReader {
 		return readNode(output, input, errors, null);
 	}
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private static void checkConsistency(final Set<Class<?>> classes, final Set<? extends IAtomReader> atomReaders) {
-		for (final Class<?> clazz : classes) {
-			if (Modifier.isAbstract(clazz.getModifiers())) {
-				throw new IllegalArgumentException(clazz + " cannot be unmarshalled from s-expressions as it is abstract");
-			}
-			if (clazz.getEnclosingClass() != null) {
-				if (!Modifier.isStatic(clazz.getModifiers())) {
-					throw new IllegalArgumentException(clazz + " cannot be unmarshalled from s-expressions as it is a non-static inner class");
+	/**
+	 * Check that a class can be read, given the other classes and atoms it is being read with.
+	 * 
+	 * @throws IllegalArgumentException if it cannot
+	 */
+	private static void checkClass(final Class<?> clazz, final Set<Class<?>> classes, final Set<? extends IAtomReader> atomReaders) {
+		final ClassMetadata metadata = ClassMetadata.of(clazz);
+		metadata.check();
+		
+		for (final JasbPropertyDescriptor pd : metadata.getDescriptors()) {
+			boolean canRead = false;
+			
+			if (Node.class.isAssignableFrom(pd.boxedPropertyType)) {
+				canRead = true;
+			}
+			
+			for (final IAtomReader reader : atomReaders) {
+				if (reader.canReadTo(pd.boxedPropertyType)) {
+					canRead = true;
+					break;
 				}
 			}
-			if (!(clazz.isAnnotationPresent(Bind.class))) {
-				throw new IllegalArgumentException(clazz + " has no bind annotation");
+			
+			if (!canRead && pd.boxedPropertyType.isAnnotationPresent(Bind.class)) {
+				canRead = true;
 			}
-			try {
-				final Constructor<?> constructor = clazz.getConstructor();
-				
-				final Object o;
-				try {
-					o = constructor.newInstance();
-				} catch (InstantiationException | IllegalAccessException
-						| IllegalArgumentException | InvocationTargetException e) {
-					throw new IllegalArgumentException("Constructing " + clazz
-							+ " causes an error", e);
-				}
-				
-				for (final Method m : clazz.getMethods()) {
-					if (m.isAnnotationPresent(AfterReading.class)) {
-						if (m.getReturnType() != Void.TYPE) {
-							throw new IllegalArgumentException("AfterReading method " + m + " is not void");
-						}
-						if (m.getParameterTypes().length != 1
-								|| !m.getParameterTypes()[0].equals(Node.class)) {
-							throw new IllegalArgumentException("AfterReading method " + m + " should take a single Node as its argument");
-						}
-						if (!Modifier.isPublic(m.getModifiers())) {
-							throw new IllegalArgumentException("AfterReading method " + m + " is not public");
-						}
-						if (Modifier.isStatic(m.getModifiers())) {
-							throw new IllegalArgumentException("AfterReading method " + m + " is static");
-						}
-						if (m.getDeclaringClass().isInterface()) {
-							throw new IllegalArgumentException("AfterReading method " + m + " is in an interface");
-						}
-					}
-				}
-				
-				final Set<JasbPropertyDescriptor> descriptors = JasbPropertyDescriptor.getDescriptors(clazz);
-				for (final JasbPropertyDescriptor pd : descriptors) {
-					if (pd.isMultiple) {
-						Object initialValue;
-						try {
-							initialValue = pd.readMethod.invoke(o);
-						} catch (IllegalAccessException
-								| IllegalArgumentException
-								| InvocationTargetException e) {
-							throw new IllegalArgumentException("Invoking the read method for " + pd + " on clazz caused an error", e);
-						}
-						if (initialValue instanceof List) {
-							try {
-								((List) initialValue).add(null);
-							} catch (final Throwable th) {
-								throw new IllegalArgumentException("Had an error adding a null to the list produced by " + pd + " in " + clazz, th);
-							}
-						} else {
-							throw new IllegalArgumentException(pd + " in " + clazz + " does not produce a list, but " + initialValue);
-						}
-					}
-					
-					boolean canRead = false;
-					
-					if (Node.class.isAssignableFrom(pd.boxedPropertyType)) {
-						canRead = true;
-					}
-					
-					for (final IAtomReader reader : atomReaders) {
-						if (reader.canReadTo(pd.boxedPropertyType)) {
-							canRead = true;
-							break;
-						}
-					}
-					
-					if (!canRead && pd.boxedPropertyType.isAnnotationPresent(Bind.class)) {
+			
+			if (!canRead) {
+				for (final Class<?> possible : classes) {
+					if (pd.boxedPropertyType.isAssignableFrom(possible)) {
 						canRead = true;
+						//TODO check for stupid wrapper types here
+						break;
 					}
-					
-					if (!canRead) {
-						for (final Class<?> possible : classes) {
-							if (pd.boxedPropertyType.isAssignableFrom(possible)) {
-								canRead = true;
-								//TODO check for stupid wrapper types here
-								break;
-							}
-						}
-					}
-					
-					if (!canRead) {
-						throw new IllegalArgumentException(pd + " in " + clazz + 
-								" has no legal values in the set of input classes or supported atom types");
+				}
+			}
+			
+			if (!canRead) {
+				throw new IllegalArgumentException(pd + " in " + clazz + 
+						" has no legal values in the set of input classes or supported atom types");
+			}
+		}
+	}
+	
+	/**
+	 * Check all the classes at once, throwing the problem with the first class to have one
+	 */
+	private static void checkInParallel(final Set<Class<?>> classes, final Set<? extends IAtomReader> atomReaders) {
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(classes.size(), Runtime.getRuntime().availableProcessors())));
+		try {
+			final List<Future<Void>> checks = new ArrayList<>();
+			for (final Class<?> clazz : classes) {
+				checks.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						checkClass(clazz, classes, atomReaders);
+						return null;
 					}
+				}));
+			}
+			for (final Future<Void> check : checks) {
+				try {
+					check.get();
+				} catch (final ExecutionException e) {
+					Throwables.propagateIfPossible(e.getCause());
+					throw new RuntimeException(e.getCause());
 				}
-				
-				
-			} catch (NoSuchMethodException | SecurityException e) {
-				throw new IllegalArgumentException(clazz + " does not have an accessible no-args constructor");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted whilst checking bound classes", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * When validating lazily, check the classes which are about to be used to read the given type
+	 */
+	private void checkClassesFor(final Class<?> clazz) {
+		if (!lazy) return;
+		for (final Class<?> sub : boundClasses) {
+			if (clazz.isAssignableFrom(sub) && !checkedClasses.contains(sub)) {
+				// only remember the class once it has passed, so a bad class fails every time it is used
+				checkClass(sub, boundClasses, atomReaders);
+				checkedClasses.add(sub);
 			}
 		}
 	}
 
 	class Context implements IReadContext {
 		private final IErrorHandler delegateErrorHandler;
+		/**
+		 * If this context is binding a branch on another thread, the things it would have done to the shared state of
+		 * the read, to be done by its parent in order when the branch is joined; otherwise null
+		 */
+		private final List<Replay> journal;
+		/**
+		 * The names in the read; a branch leaves all its names to its parent
+		 */
 		private final Resolver resolver = new Resolver();
 		private final Map<Atom, Set<String>> unresolved = new IdentityHashMap<Atom, Set<String>>();
+		private final List<FixUp> fixUps = new ArrayList<>();
+		private final List<PendingIdentity> pendingIdentities = new ArrayList<>();
+		private final Map<Atom, Deferred> pendingReferences = new IdentityHashMap<>();
+		private long objects = 0;
 		
 		Context(final IErrorHandler delegateErrorHandler) {
 			super();
 			this.delegateErrorHandler = delegateErrorHandler;
+			this.journal = null;
+		}
+		
+		/**
+		 * Make a context for binding a branch of the read on another thread
+		 */
+		private Context(final Context parent) {
+			super();
+			this.delegateErrorHandler = parent.delegateErrorHandler;
+			this.journal = new ArrayList<>();
 		}
 
 		@Override
 		public void handle(final IError error) {
-			delegateErrorHandler.handle(error);
+			if (journal == null) {
+				delegateErrorHandler.handle(error);
+			} else {
+				journal.add(new Replay() {
+					@Override
+					void onto(final Context context) {
+						context.handle(error);
+					}
+				});
+			}
 		}
 		
 		@Override
 		public void error(final ILocated location, final String format, final Object... interpolate) {
-			delegateErrorHandler.error(location, format, interpolate);
+			if (journal == null) {
+				delegateErrorHandler.error(location, format, interpolate);
+			} else {
+				journal.add(new Replay() {
+					@Override
+					void onto(final Context context) {
+						context.error(location, format, interpolate);
+					}
+				});
+			}
 		}
 		
 		@Override
 		public void warn(final ILocated location, final String format, final Object... interpolate) {
-			delegateErrorHandler.warn(location, format, interpolate);
+			if (journal == null) {
+				delegateErrorHandler.warn(location, format, interpolate);
+			} else {
+				journal.add(new Replay() {
+					@Override
+					void onto(final Context context) {
+						context.warn(location, format, interpolate);
+					}
+				});
+			}
 		}
 
 		@Override
@@ -299,6 +433,7 @@ class Reader implements IReader {
 			if (clazz.isInstance(node)) {
 				return Futures.immediateFuture(clazz.cast(node));
 			} else {
+				objects++;
 				return Reader.this.getSwitcher(clazz).read(this, node);
 			}
 		}
@@ -331,6 +466,185 @@ class Reader implements IReader {
 			});
 		}
 		
+		/**
+		 * The synchronous equivalent of {@link #read(Class, Node)}
+		 *
+		 * @return the value, a {@link Deferred} if it depends on a forward reference, or {@link Deferred#FAILED}
+		 */
+		Object bind(final Class<?> clazz, final Node node) {
+			if (clazz.isInstance(node)) {
+				return node;
+			} else {
+				objects++;
+				return Reader.this.getSwitcher(clazz).bind(this, node);
+			}
+		}
+		
+		/**
+		 * @return the reader for primitive values whose boxed type is given, or null if they must be bound as usual
+		 */
+		IPrimitiveAtomReader getPrimitiveReader(final Class<?> boxed) {
+			return Reader.this.getSwitcher(boxed).getPrimitiveReader();
+		}
+		
+		/**
+		 * Count a value which was bound without going through {@link #bind(Class, Node)}
+		 */
+		void counted() {
+			objects++;
+		}
+		
+		/**
+		 * The synchronous equivalent of {@link #readMany(Class, Iterable)}
+		 */
+		Object bindMany(final Class<?> clazz, final Iterable<Node> nodes) {
+			final List<Node> interesting = new ArrayList<>();
+			for (final Node node : nodes) {
+				if (node instanceof Comment) continue;
+				interesting.add(node);
+			}
+			
+			final List<Branch> branches = branch(clazz, interesting);
+			final List<Object> values = new ArrayList<>(interesting.size());
+			for (int i = 0; i < interesting.size(); i++) {
+				final Branch branch = branches == null ? null : branches.get(i);
+				if (branch == null) {
+					values.add(bind(clazz, interesting.get(i)));
+				} else {
+					values.add(branch.join(this));
+				}
+			}
+			return Deferred.all(values);
+		}
+		
+		/**
+		 * When binding in parallel, fork a branch to bind each invocation in a list, if there is more than one. Atoms
+		 * are cheap enough to bind where they are.
+		 * 
+		 * @return null if nothing was forked, or else a list with the branch, or null, for each node
+		 */
+		private List<Branch> branch(final Class<?> clazz, final List<Node> nodes) {
+			if (!parallelism.isPresent() || !ForkJoinTask.inForkJoinPool()) return null;
+			
+			int invocations = 0;
+			for (final Node node : nodes) {
+				if (node instanceof Seq) invocations++;
+			}
+			if (invocations < 2) return null;
+			
+			final List<Branch> branches = new ArrayList<>(nodes.size());
+			for (final Node node : nodes) {
+				if (node instanceof Seq) {
+					final Branch branch = new Branch(new Context(this), clazz, node);
+					branch.fork();
+					branches.add(branch);
+				} else {
+					branches.add(null);
+				}
+			}
+			return branches;
+		}
+		
+		/**
+		 * The synchronous equivalent of {@link #getCrossReference(Class, Atom, String, Set)}
+		 */
+		Object crossReference(final Class<?> clazz, final Atom where, final String identity, final Set<String> legalValues) {
+			if (journal != null) {
+				// a branch cannot see any names, not even its own, as an earlier branch may define the same name first;
+				// the parent resolves the reference when the branch is joined, in the order it would have been made
+				final Deferred.Later later = new Deferred.Later();
+				journal.add(new Replay() {
+					@Override
+					void onto(final Context context) {
+						later.set(context.crossReference(clazz, where, identity, legalValues));
+					}
+				});
+				return later;
+			}
+			
+			unresolved.put(where, legalValues);
+			
+			final Object value;
+			try {
+				value = resolver.bind(where, identity, clazz);
+			} catch (final IllegalArgumentException e) {
+				handle(BasicError.at(where, e.getMessage()));
+				return Deferred.FAILED;
+			}
+			
+			if (value instanceof Deferred) {
+				pendingReferences.put(where, (Deferred) value);
+			} else {
+				unresolved.remove(where);
+			}
+			return value;
+		}
+		
+		/**
+		 * The synchronous equivalent of {@link #registerIdentity(Object, Node, ListenableFuture)}; identities which
+		 * could not be read immediately are defined when everything has been read, if they can be resolved by then.
+		 */
+		void defineIdentity(final Object o, final Node definingNode, final Object identity) {
+			if (journal != null) {
+				journal.add(new Replay() {
+					@Override
+					void onto(final Context context) {
+						context.defineIdentity(o, definingNode, identity);
+					}
+				});
+				return;
+			}
+			
+			if (identity instanceof Deferred) {
+				pendingIdentities.add(new PendingIdentity(o, definingNode, (Deferred) identity));
+			} else if (identity instanceof String) {
+				try {
+					resolver.define((String) identity, o);
+				} catch (final IllegalArgumentException exception) {
+					handle(BasicError.at(definingNode, exception.getMessage()));
+				}
+			}
+		}
+		
+		/**
+		 * Set the given property when everything has been read, if the value can be resolved by then.
+		 */
+		void fixUp(final InvocationReader<?> reader, final int property, final Object target, final Deferred value) {
+			fixUps.add(new FixUp(reader, property, target, value));
+		}
+		
+		void applyFixUps() {
+			// defining a name may resolve the identity of something else, so go round until nothing more is defined
+			boolean defined = true;
+			while (defined) {
+				defined = false;
+				final Iterator<PendingIdentity> it = pendingIdentities.iterator();
+				while (it.hasNext()) {
+					final PendingIdentity pending = it.next();
+					if (pending.identity.isResolved()) {
+						it.remove();
+						defineIdentity(pending.o, pending.definingNode, pending.identity.get());
+						defined = true;
+					}
+				}
+			}
+			pendingIdentities.clear();
+			
+			for (final FixUp fixUp : fixUps) {
+				if (fixUp.value.isResolved()) {
+					fixUp.reader.setUnchecked(fixUp.property, fixUp.target, fixUp.value.get());
+				}
+			}
+			fixUps.clear();
+			
+			for (final Map.Entry<Atom, Deferred> pending : pendingReferences.entrySet()) {
+				if (pending.getValue().isResolved()) {
+					unresolved.remove(pending.getKey());
+				}
+			}
+			pendingReferences.clear();
+		}
+		
 		@Override
 		public boolean hasInvocationNamed(final Node head) {
 			if (head instanceof Atom) {
@@ -342,17 +656,104 @@ class Reader implements IReader {
 		}
 	}
 
+	/**
+	 * Something a branch did which must be done again by its parent
+	 */
+	private abstract static class Replay {
+		abstract void onto(final Context context);
+	}
+	
+	/**
+	 * Binds a node in its own context, on a fork-join pool. When it is joined, everything it did which affects the rest
+	 * of the read is replayed onto the joining context; branches are joined in the order of the input, so definitions,
+	 * references and errors happen in the same order as they would if everything were bound on one thread.
+	 */
+	private static class Branch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Context context;
+		private final Class<?> clazz;
+		private final Node node;
+		private Object result;
+		private Throwable failure;
+		
+		Branch(final Context context, final Class<?> clazz, final Node node) {
+			this.context = context;
+			this.clazz = clazz;
+			this.node = node;
+		}
+		
+		@Override
+		protected void compute() {
+			// exceptions are kept rather than thrown, as the pool would wrap them when rethrowing on another thread
+			try {
+				result = context.bind(clazz, node);
+			} catch (RuntimeException | Error e) {
+				failure = e;
+			}
+		}
+		
+		Object result() {
+			if (failure != null) {
+				throw Throwables.propagate(failure);
+			}
+			return result;
+		}
+		
+		Object join(final Context parent) {
+			join();
+			final Object value = result();
+			for (final Replay replay : context.journal) {
+				replay.onto(parent);
+			}
+			parent.fixUps.addAll(context.fixUps);
+			parent.objects += context.objects;
+			return value;
+		}
+	}
+
+	private static class FixUp {
+		final InvocationReader<?> reader;
+		final int property;
+		final Object target;
+		final Deferred value;
+		
+		FixUp(final InvocationReader<?> reader, final int property, final Object target, final Deferred value) {
+			this.reader = reader;
+			this.property = property;
+			this.target = target;
+			this.value = value;
+		}
+	}
+
+	private static class PendingIdentity {
+		final Object o;
+		final Node definingNode;
+		final Deferred identity;
+		
+		PendingIdentity(final Object o, final Node definingNode, final Deferred identity) {
+			this.o = o;
+			this.definingNode = definingNode;
+			this.identity = identity;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
 	private <T> Switcher<T> getSwitcher(final Class<T> clazz) {
-		@SuppressWarnings("unchecked")
 		Switcher<T> out = (Switcher<T>) switchers.get(clazz);
 		
 		if (out == null) {
-			out = new Switcher<>(
+			checkClassesFor(clazz);
+			// two threads may both make a switcher, but they will be the same, and only the first is kept
+			final Switcher<T> created = new Switcher<>(
 					clazz, 
 					createReaders(clazz), 
 					createAtomReader(clazz)
 					);
-			switchers.put(clazz, out);
+			out = (Switcher<T>) switchers.putIfAbsent(clazz, created);
+			if (out == null) {
+				out = created;
+			}
 		}
 		
 		return out;
@@ -372,16 +773,32 @@ class Reader implements IReader {
 	
 	@SuppressWarnings("unchecked")
 	private <T> InvocationReader<T> getOrCreateInvocationReader(final Class<T> sub) {
-		if (!specificReaders.containsKey(sub)) {
-			final InvocationReader<T> reader = new InvocationReaderLoader<T>(sub).getReaderInstance();
-			specificReaders.put(sub, reader);
+		InvocationReader<T> reader = (InvocationReader<T>) specificReaders.get(sub);
+		if (reader == null) {
+			// prefer a reader generated at compile time, as making one here is slow
+			final Optional<InvocationReader<T>> generated = GeneratedClasses.reader(sub);
+			final InvocationReader<T> created = generated.isPresent() ? generated.get() : getLoader(sub).getReaderInstance(sub);
+			reader = (InvocationReader<T>) specificReaders.putIfAbsent(sub, created);
+			if (reader == null) {
+				reader = created;
+			}
 		}
-		return (InvocationReader<T>) specificReaders.get(sub);
+		return reader;
+	}
+
+	/**
+	 * @return the loader for generated readers of classes from the given class's loader; usually there is only one
+	 */
+	private synchronized InvocationReaderLoader getLoader(final Class<?> clazz) {
+		InvocationReaderLoader loader = loaders.get(clazz.getClassLoader());
+		if (loader == null) {
+			loader = new InvocationReaderLoader(clazz.getClassLoader(), bytecodeCache);
+			loaders.put(clazz.getClassLoader(), loader);
+		}
+		return loader;
 	}
 
 	private <T> MultiAtomReader<T> createAtomReader(final Class<T> clazz) {
-		final ImmutableSet.Builder<IAtomReader> readers = ImmutableSet.builder();
-		
 		final ImmutableSet.Builder<Class<?>> fallbackClasses = ImmutableSet.builder();
 		for (final Class<?> sub : boundClasses) {
 			if (clazz.isAssignableFrom(sub)) {
@@ -389,11 +806,6 @@ class Reader implements IReader {
 			}
 		}
 		
-		for (final IAtomReader reader : atomReaders) {
-			if (reader.canReadTo(clazz)) {
-				readers.add(reader);
-			}
-		}
-		return new MultiAtomReader<T>(clazz, readers.build(), fallbackClasses.build());
+		return new MultiAtomReader<T>(clazz, codecs.getReaders(clazz), fallbackClasses.build());
 	}
 }
@@ -1,14 +1,13 @@
 package com.larkery.jasb.io.impl;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
@@ -20,67 +19,119 @@ import com.larkery.jasb.sexp.Atom;
  *
  */
 class Resolver  {
-	private final Map<String, SettableFuture<?>> futures = new HashMap<>();
-	private final Multimap<String, Class<?>> futureClasses = HashMultimap.create();
+	private final Map<String, Entry> entries = new HashMap<>();
 	private final Set<String> definedNames = new HashSet<>();
 
+	/**
+	 * A name, which is a {@link Deferred} until it is defined; a future for it is only made if one is asked for
+	 */
+	private static class Entry extends Deferred {
+		final List<Class<?>> classes = new ArrayList<>(1);
+		boolean defined = false;
+		Object value;
+		SettableFuture<Object> future;
+
+		@Override
+		boolean isResolved() {
+			return defined;
+		}
+
+		@Override
+		Object get() {
+			return value;
+		}
+
+		SettableFuture<Object> future() {
+			if (future == null) {
+				future = SettableFuture.create();
+				if (defined) {
+					future.set(value);
+				}
+			}
+			return future;
+		}
+	}
+
     public Set<String> getDefinedNames() {
         return definedNames;
     }
-    
+
+	private Entry entry(final String id, final Class<?> type) {
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			entry = new Entry();
+			entry.classes.add(type);
+			entries.put(id, entry);
+		}
+		return entry;
+	}
+
 	@SuppressWarnings("unchecked")
 	public <Q> ListenableFuture<Q> resolve(final Atom cause, final String id, final Class<Q> type) {
-		if (!futures.containsKey(id)) {
-			futures.put(id, SettableFuture.create());
-			futureClasses.put(id, type);
+		final Entry entry = entry(id, type);
+
+		if (entry.defined && !type.isInstance(entry.value)) {
+			return Futures.immediateFailedFuture(
+					new IllegalArgumentException("The name " + id + " does not define an element of the correct type."));
 		}
-		
-		if (futures.get(id).isDone()) {
-			try {
-				if (!type.isInstance(futures.get(id).get())) {
-					return Futures.immediateFailedFuture(
-							new IllegalArgumentException("The name " + id + " does not define an element of the correct type."));				
-				}
-			} catch (InterruptedException | ExecutionException e) {
-				return Futures.immediateFailedFuture(
-						new IllegalArgumentException("The name " + id + " does not define an element of the correct type."));								
+
+		return (ListenableFuture<Q>) entry.future();
+	}
+
+	/**
+	 * The synchronous equivalent of {@link #resolve(Atom, String, Class)}
+	 *
+	 * @return the value if the name is already defined, or a {@link Deferred} which will be resolved if it is defined
+	 * @throws IllegalArgumentException if the name is defined as something of the wrong type
+	 */
+	public Object bind(final Atom cause, final String id, final Class<?> type) {
+		final Entry entry = entry(id, type);
+
+		if (entry.defined) {
+			if (!type.isInstance(entry.value)) {
+				throw new IllegalArgumentException("The name " + id + " does not define an element of the correct type.");
 			}
+			return entry.value;
+		} else {
+			return entry;
 		}
-		
-		return (ListenableFuture<Q>) futures.get(id);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public void define(final String result, final Object o) {
-		if (futures.containsKey(result)) {
-			if (futures.get(result).isDone()) {
+		final Entry entry = entries.get(result);
+		if (entry != null) {
+			if (entry.defined) {
 				throw new IllegalArgumentException("The name " + result + " was used for two different entities Names must be unique.");
 			} else {
-				for (final Class<?> clazz : futureClasses.get(result)) {
+				for (final Class<?> clazz : entry.classes) {
 					if (!clazz.isInstance(o)) {
 						//TODO provide a better type of error here
 						throw new IllegalArgumentException("The name " + result + " does not define an element of the correct type.");
 					}
 				}
-				
-				((SettableFuture) futures.get(result)).set(o);
+
+				set(entry, o);
 			}
 		} else {
             definedNames.add(result);
-			futures.put(result, SettableFuture.create());
-			futureClasses.put(result, o.getClass());
-			((SettableFuture) futures.get(result)).set(o);
+			final Entry created = entry(result, o.getClass());
+			set(created, o);
+		}
+	}
+
+	private static void set(final Entry entry, final Object o) {
+		entry.defined = true;
+		entry.value = o;
+		if (entry.future != null) {
+			entry.future.set(o);
 		}
 	}
 
 	public Map<String, Object> getDefinitions() {
 		final ImmutableMap.Builder<String, Object> b = ImmutableMap.builder();
-		for (final Map.Entry<String, SettableFuture<?>> e : futures.entrySet()) {
-			if (e.getValue().isDone()) {
-				try {
-					b.put(e.getKey(), e.getValue().get());
-				} catch (final Exception e1) {
-				}
+		for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+			if (e.getValue().defined) {
+				b.put(e.getKey(), e.getValue().value);
 			}
 		}
 		return b.build();
@@ -8,8 +8,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.larkery.jasb.io.INodeReader;
+import com.larkery.jasb.io.IPrimitiveAtomReader;
 import com.larkery.jasb.io.IReadContext;
 import com.larkery.jasb.sexp.Atom;
+import com.larkery.jasb.sexp.Delim;
 import com.larkery.jasb.sexp.Invocation;
 import com.larkery.jasb.sexp.Node;
 import com.larkery.jasb.sexp.Seq;
@@ -23,7 +25,7 @@ import com.larkery.jasb.sexp.errors.UnexpectedTermError;
  * @param <T>
  */
 class Switcher<T> implements INodeReader<T> {
-	private static final String CROSS_REFERENCE_PREFIX = "#";
+	static final String CROSS_REFERENCE_PREFIX = "#";
 	private final Map<String, InvocationReader<? extends T>> readersByName;
 	private final Class<T> clazz;
 	private final MultiAtomReader<T> atoms;
@@ -78,4 +80,68 @@ class Switcher<T> implements INodeReader<T> {
 			return death("Expected " + readersByName.keySet() + ", not " + invocation.name +" - maybe your Bind annotated class is not in the set presented to the Reader?");
 		}
 	}
+
+	/**
+	 * The synchronous equivalent of {@link #read(IReadContext, Node)}
+	 *
+	 * @return the value, a {@link Deferred} if it is a forward reference, or {@link Deferred#FAILED}
+	 */
+	Object bind(final Reader.Context context, final Node node) {
+		if (node instanceof Seq) {
+			final InvocationReader<? extends T> reader = getReader((Seq) node);
+			if (reader != null) {
+				return reader.bind(context, (Seq) node);
+			}
+			// something is wrong, so go the long way round to report it as usual
+			final Invocation invocation = Invocation.of(node, context);
+			if (invocation != null) {
+				return bindInvocation(context, node, invocation);
+			} else {
+				return Deferred.FAILED;
+			}
+		} else if (node instanceof Atom) {
+			final Atom atom = (Atom) node;
+			if (atom.getValue().startsWith(CROSS_REFERENCE_PREFIX)) {
+				return context.crossReference(
+						clazz,
+						atom,
+						atom.getValue().substring(CROSS_REFERENCE_PREFIX.length()),
+						ImmutableSet.<String>of());
+			} else {
+				return atoms.bind(context, atom);
+			}
+		} else {
+			return Deferred.FAILED;
+		}
+	}
+
+	/**
+	 * @return the reader for primitive values of this type, if atoms of this type are read by one
+	 */
+	IPrimitiveAtomReader getPrimitiveReader() {
+		return atoms.getPrimitiveReader();
+	}
+
+	/**
+	 * @return the reader for the given node, if it is a well formed invocation of one of the names known here, or null
+	 */
+	private InvocationReader<? extends T> getReader(final Seq seq) {
+		if (seq.size() > 0 && seq.getDelimeter() == Delim.Paren) {
+			final Node head = seq.getHead();
+			if (head instanceof Atom) {
+				return readersByName.get(((Atom) head).getValue());
+			}
+		}
+		return null;
+	}
+
+	private Object bindInvocation(final Reader.Context context, final Node node, final Invocation invocation) {
+		final InvocationReader<? extends T> reader = readersByName.get(invocation.name);
+		if (reader != null) {
+			return reader.bind(context, invocation);
+		} else {
+			context.handle(new UnexpectedTermError(node, "command", readersByName.keySet(), invocation.name));
+			return Deferred.FAILED;
+		}
+	}
 }
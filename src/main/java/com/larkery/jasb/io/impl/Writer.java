@@ -1,9 +1,6 @@
 package com.larkery.jasb.io.impl;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,21 +9,54 @@ import java.util.Set;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
-import com.larkery.jasb.bind.Bind;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.larkery.jasb.io.IAtomReader;
 import com.larkery.jasb.io.IAtomWriter;
 import com.larkery.jasb.io.IWriter;
-import com.larkery.jasb.io.impl.JasbPropertyDescriptor.BoundTo;
 import com.larkery.jasb.sexp.Delim;
 import com.larkery.jasb.sexp.ISExpression;
 import com.larkery.jasb.sexp.ISExpressionVisitor;
 import com.larkery.jasb.sexp.Location;
 
 class Writer implements IWriter {
-	private final Set<? extends IAtomWriter> atomWriters;
+	private final AtomCodecs codecs;
+	private final LoadingCache<Class<?>, Optional<? extends InvocationWriter<?>>> generatedWriters = 
+			CacheBuilder.newBuilder().build(new CacheLoader<Class<?>, Optional<? extends InvocationWriter<?>>>() {
+				@Override
+				public Optional<? extends InvocationWriter<?>> load(final Class<?> key) {
+					return GeneratedClasses.writer(key);
+				}
+			});
 	
 	public Writer(final Set<? extends IAtomWriter> atomWriters) {
+		this(new AtomCodecs(ImmutableList.<IAtomReader>of(), atomWriters));
+	}
+	
+	/**
+	 * @param codecs the registry to find the atom writer for each object in, which may be shared with a {@link Reader}
+	 */
+	Writer(final AtomCodecs codecs) {
 		super();
-		this.atomWriters = atomWriters;
+		this.codecs = codecs;
+	}
+	
+	AtomCodecs getCodecs() {
+		return codecs;
+	}
+	
+	/**
+	 * Get the value of a property, with the writer generated at compile time if there is one, or else reflectively.
+	 */
+	private Object get(final JasbPropertyDescriptor pd, final Object o) throws IllegalAccessException, InvocationTargetException {
+		final Optional<? extends InvocationWriter<?>> generated = generatedWriters.getUnchecked(o.getClass());
+		if (generated.isPresent()) {
+			return generated.get().getUnchecked(pd.name, o);
+		} else {
+			return pd.readMethod.invoke(o);
+		}
 	}
 
 	/* (non-Javadoc)
@@ -73,11 +103,10 @@ class Writer implements IWriter {
 				visitor.locate(here);
 			}
 			
-			for (final IAtomWriter w : atomWriters) {
-				if (w.canWrite(o)) {
-					visitor.atom(w.write(o));
-					return;
-				}
+			final IAtomWriter w = codecs.getWriter(o);
+			if (w != null) {
+				visitor.atom(w.write(o));
+				return;
 			}
 			
 			if (identities.containsKey(o)) {
@@ -85,18 +114,14 @@ class Writer implements IWriter {
 				return;
 			}
 			
-			if (o.getClass().isAnnotationPresent(Bind.class)) {
-				final Bind bind = o.getClass().getAnnotation(Bind.class);
-				
+			final ClassMetadata metadata = ClassMetadata.of(o.getClass());
+			if (metadata.getBindName().isPresent()) {
 				visitor.open(Delim.Paren);
-				visitor.atom(bind.value());
+				visitor.atom(metadata.getBindName().get());
 				
-				final Set<JasbPropertyDescriptor> descriptors = 
-						JasbPropertyDescriptor.getDescriptors(o.getClass());
-				
-				for (final JasbPropertyDescriptor pd : JasbPropertyDescriptor.getPropertiesBoundTo(BoundTo.Name, descriptors)) {
+				for (final JasbPropertyDescriptor pd : metadata.getNamedDescriptors()) {
 					try {
-						final Object value = pd.readMethod.invoke(o);
+						final Object value = get(pd, o);
 						
 						if (value != null && !(value instanceof List && ((List<?>) value).isEmpty())) {
 							if (pd.isIdentifier) {
@@ -111,23 +136,11 @@ class Writer implements IWriter {
 					}
 				}
 				
-				final List<JasbPropertyDescriptor> positional = new ArrayList<>(
-						JasbPropertyDescriptor.getPropertiesBoundTo(BoundTo.Position, descriptors)
-						);
-				
-				Collections.sort(positional, new Comparator<JasbPropertyDescriptor>() {
-					@Override
-					public int compare(final JasbPropertyDescriptor arg0,
-							final JasbPropertyDescriptor arg1) {
-						return arg0.position.get().compareTo(arg1.position.get());
-					}
-				});
-				
 				boolean haveHitNull = false;
-				for (final JasbPropertyDescriptor pd : positional) {
+				for (final JasbPropertyDescriptor pd : metadata.getPositionalDescriptors()) {
 					Object value;
 					try {
-						value = pd.readMethod.invoke(o);
+						value = get(pd, o);
 					} catch (IllegalAccessException | IllegalArgumentException
 							| InvocationTargetException e) {
 						throw new IllegalArgumentException("Failed to invoke getter for " + pd.name, e);
@@ -140,15 +153,13 @@ class Writer implements IWriter {
 					}
 				}
 				
-				final List<JasbPropertyDescriptor> remainder = new ArrayList<>(
-						JasbPropertyDescriptor.getPropertiesBoundTo(BoundTo.Remainder, descriptors)
-						);
+				final Optional<JasbPropertyDescriptor> remainder = metadata.getRemainderDescriptor();
 				
-				if (remainder.isEmpty() == false) {
-					final JasbPropertyDescriptor remainderProp = remainder.iterator().next();
+				if (remainder.isPresent()) {
+					final JasbPropertyDescriptor remainderProp = remainder.get();
 					Object value;
 					try {
-						value = remainderProp.readMethod.invoke(o);
+						value = get(remainderProp, o);
 					} catch (IllegalAccessException | IllegalArgumentException
 							| InvocationTargetException e) {
 						throw new IllegalArgumentException("Failed to invoke getter for " + remainderProp.name, e);
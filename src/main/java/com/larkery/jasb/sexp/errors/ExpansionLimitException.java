@@ -0,0 +1,14 @@
+package com.larkery.jasb.sexp.errors;
+
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
+
+/**
+ * Thrown to abandon a macro expansion which has produced more output than it is allowed to.
+ */
+public class ExpansionLimitException extends JasbErrorException {
+	private static final long serialVersionUID = 1L;
+
+	public ExpansionLimitException(final IError error) {
+		super(error);
+	}
+}
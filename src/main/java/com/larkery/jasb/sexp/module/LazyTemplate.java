@@ -0,0 +1,122 @@
+package com.larkery.jasb.sexp.module;
+
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.IMacro;
+import com.larkery.jasb.sexp.parse.IMacroExpander;
+import com.larkery.jasb.sexp.parse.MacroModel;
+import com.larkery.jasb.sexp.template.Templates;
+
+/**
+ * A template from a module which is renamed and parsed the first time it is needed.
+ *
+ * Errors found while compiling the template go to whichever expansion first needs it; if the template turns out to be
+ * invalid, they are repeated for every later invocation, which is otherwise passed through unexpanded just as an
+ * invocation of an invalid template would be.
+ *
+ * Instances are safe to share between threads, so they can live in a {@link ModuleCache}.
+ */
+class LazyTemplate implements IMacro {
+	private final String moduleName;
+	private final String name;
+	private final Seq definition;
+	private final List<IMacro> renamers;
+
+	private Optional<? extends IMacro> template;
+	private List<IError> compileErrors;
+
+	LazyTemplate(final String moduleName, final String name, final Seq definition, final List<IMacro> renamers) {
+		this.moduleName = moduleName;
+		this.name = name;
+		this.definition = definition;
+		this.renamers = renamers;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the definition of the template as it was written in the module, which is available without compiling it
+	 */
+	Seq getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * @return true if the template has been compiled
+	 */
+	synchronized boolean isCompiled() {
+		return template != null;
+	}
+
+	private synchronized Optional<? extends IMacro> get(final IErrorHandler errors) {
+		if (template == null) {
+			final ErrorCollector collector = new ErrorCollector();
+			template = compile(collector);
+			compileErrors = collector.getErrors();
+			report(errors);
+		} else if (!template.isPresent()) {
+			report(errors);
+		}
+		return template;
+	}
+
+	private void report(final IErrorHandler errors) {
+		for (final IError e : compileErrors) {
+			errors.handle(e);
+		}
+	}
+
+	private Optional<? extends IMacro> compile(final IErrorHandler errors) {
+		try {
+			final List<Node> rewritten = Node.copyAll(Module.rewrite(moduleName, renamers, ImmutableList.of(definition), errors));
+			if (rewritten.size() == 1 && rewritten.get(0) instanceof Seq) {
+				return Templates.parse((Seq) rewritten.get(0), errors);
+			}
+		} catch (final UnfinishedExpressionException e) {
+			errors.handle(e.getError());
+		}
+		return Optional.absent();
+	}
+
+	@Override
+	public ISExpression transform(final Seq input, final IMacroExpander expander, final IErrorHandler errors) {
+		final Optional<? extends IMacro> template = get(errors);
+		if (template.isPresent()) {
+			return template.get().transform(input, expander, errors);
+		} else {
+			return expander.expandContents(input);
+		}
+	}
+
+	@Override
+	public MacroModel getModel() {
+		final Optional<? extends IMacro> template = get(IErrorHandler.NOP);
+		if (template.isPresent()) {
+			return template.get().getModel();
+		} else {
+			return MacroModel.builder().build();
+		}
+	}
+
+	@Override
+	public Optional<Node> getDefiningNode() {
+		final Optional<? extends IMacro> template = get(IErrorHandler.NOP);
+		if (template.isPresent()) {
+			return template.get().getDefiningNode();
+		} else {
+			return Optional.<Node>of(definition);
+		}
+	}
+}
@@ -20,11 +20,18 @@ import com.larkery.jasb.sexp.Location;
 import com.larkery.jasb.sexp.Node;
 import com.larkery.jasb.sexp.SExpressions;
 import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
 import com.larkery.jasb.sexp.parse.IMacro;
 import com.larkery.jasb.sexp.parse.IMacroExpander;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Measure;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
 import com.larkery.jasb.sexp.parse.MacroExpander;
 import com.larkery.jasb.sexp.parse.MacroModel;
+import com.larkery.jasb.sexp.parse.Pipeline;
+import com.larkery.jasb.sexp.parse.Pipeline.Span;
 import com.larkery.jasb.sexp.parse.SimpleMacro;
 
 public class Module implements IMacro {
@@ -42,6 +49,56 @@ public class Module implements IMacro {
 	 */
 	private final Map<String, Location> firstDefinitions = new HashMap<>();
 	protected final List<String> initTemplates = new LinkedList<>();
+	private final List<IMacro> templates = new LinkedList<>();
+	private final Optional<ModuleCache> cache;
+	private final boolean lazy;
+	
+	public Module() {
+		this(Optional.<ModuleCache>absent());
+	}
+	
+	/**
+	 * @param cache if present, compiled modules will be looked up in and stored into this cache.
+	 */
+	public Module(final Optional<ModuleCache> cache) {
+		this(cache, false);
+	}
+	
+	/**
+	 * @param cache if present, compiled modules will be looked up in and stored into this cache.
+	 * @param lazy if true, the templates in each module are not written out as template definitions; instead they are
+	 * indexed by name and made available from {@link #getTemplates()}, and each one is only renamed and parsed when it
+	 * is first invoked.
+	 */
+	public Module(final Optional<ModuleCache> cache, final boolean lazy) {
+		this.cache = cache;
+		this.lazy = lazy;
+	}
+	
+	/**
+	 * @return the templates defined by modules seen so far, if this is a lazy module; otherwise the templates are
+	 * written out as definitions in place of the module, and this is empty.
+	 */
+	public List<IMacro> getTemplates() {
+		return Collections.unmodifiableList(templates);
+	}
+	
+	/**
+	 * @param taken the names of templates defined elsewhere, to which the names of the templates returned are added
+	 * @return those of {@link #getTemplates()} whose names are not taken; the others are reported as redefinitions at
+	 * the definitions written in their modules, so that they need not be compiled.
+	 */
+	public List<IMacro> getTemplates(final Set<String> taken, final IErrorHandler errors) {
+		final ImmutableList.Builder<IMacro> result = ImmutableList.builder();
+		for (final IMacro template : templates) {
+			if (taken.add(template.getName())) {
+				result.add(template);
+			} else {
+				errors.error(((LazyTemplate) template).getDefinition(), "redefinition of template %s", template.getName());
+			}
+		}
+		return result.build();
+	}
 
 	public final IMacro getInitializerMacro() {
 		return new IMacro() {
@@ -109,8 +166,64 @@ public class Module implements IMacro {
 		} else {
 			firstDefinitions.put(moduleName, input.getLocation());
 		}
-
-		final ImmutableList.Builder<Node> transformedBody = ImmutableList.builder(); 
+		
+		final Span span = Pipeline.start(Stage.MODULE, moduleName);
+		final int templatesBefore = templates.size();
+		try {
+			if (cache.isPresent()) {
+				return compileWithCache(cache.get(), moduleName, input, parts, errors);
+			} else {
+				return compile(moduleName, parts, initTemplates, templates, errors);
+			}
+		} finally {
+			span.count(Measure.TEMPLATES, templates.size() - templatesBefore);
+			span.finish();
+		}
+	}
+	
+	private ISExpression compileWithCache(final ModuleCache cache, final String moduleName, final Seq input, final List<Node> parts, final IErrorHandler errors) {
+		final ModuleCache.Key key = new ModuleCache.Key(moduleName, input, lazy);
+		final ModuleCache.CompiledModule cached = cache.get(key);
+		if (cached != null) {
+			initTemplates.addAll(cached.initTemplates);
+			templates.addAll(cached.templates);
+			return SExpressions.inOrder(cached.definitions);
+		}
+		
+		final ErrorCollector compileErrors = new ErrorCollector();
+		final List<String> moduleInitTemplates = new LinkedList<>();
+		final List<IMacro> moduleTemplates = new LinkedList<>();
+		final ISExpression compiled = compile(moduleName, parts, moduleInitTemplates, moduleTemplates, compileErrors);
+		
+		List<Node> definitions;
+		try {
+			definitions = Node.copyAll(compiled);
+		} catch (final UnfinishedExpressionException e) {
+			compileErrors.handle(e.getError());
+			definitions = Collections.emptyList();
+		}
+		
+		for (final IError e : compileErrors.getErrors()) {
+			errors.handle(e);
+		}
+		
+		initTemplates.addAll(moduleInitTemplates);
+		templates.addAll(moduleTemplates);
+		
+		// a module with errors in it is not cached, so that its errors are reported every time it is used
+		if (compileErrors.isEmpty()) {
+			cache.put(key, new ModuleCache.CompiledModule(definitions, moduleInitTemplates, moduleTemplates));
+		}
+		
+		return SExpressions.inOrder(definitions);
+	}
+	
+	/**
+	 * Check the module definition, and either return its renamed template definitions or, if the module is lazy, put a
+	 * {@link LazyTemplate} for each of them into templates.
+	 */
+	private ISExpression compile(final String moduleName, final List<Node> parts, final List<String> initTemplates, final List<IMacro> templates, final IErrorHandler errors) {
+		final ImmutableList.Builder<Seq> definitions = ImmutableList.builder(); 
 		
 		final ImmutableList.Builder<IMacro> templateNames = ImmutableList.builder(); 
 		
@@ -147,41 +260,68 @@ public class Module implements IMacro {
 					templateNames.add(new Renamer(name, moduleName + "/" + name));
 					existingNames.add(name);
 				}
+				
+				definitions.add(s);
 			} else {
 				errors.error(n, NOT_A_TEMPLATE);
 				return SExpressions.empty();
 			}
 		}
 		
-		for (final Node n : parts.subList(2, parts.size())) {
-			if (n instanceof Seq) {
-				final Seq s = (Seq) n;
-				final List<Node> children = s.exceptComments();
-				final Atom name = (Atom) children.get(1);
-				
-				if (name.getValue().equals("init")) {
-					final Node args = children.get(2);
-					if (args instanceof Seq && ((Seq) args).isEmpty()) {
-						initTemplates.add(moduleName +"/init");
-					}
-				}
-				
-				final Seq.Builder b = Seq.builder(s.getLocation(), s.getDelimeter());
-				
-				for (final Node c : s) {
-					if (c == name) {
-						b.add(Atom.create(moduleName + "/" + name.getValue(), name.getLocation()));
-					} else {
-						b.add(c);
-					}
+		for (final Seq s : definitions.build()) {
+			final List<Node> children = s.exceptComments();
+			final Atom name = (Atom) children.get(1);
+			
+			if (name.getValue().equals("init")) {
+				final Node args = children.get(2);
+				if (args instanceof Seq && ((Seq) args).isEmpty()) {
+					initTemplates.add(moduleName +"/init");
 				}
-				transformedBody.add(b.build(s.getEndLocation()));
 			}
 		}
 		
 		templateNames.add(new Variabler(moduleName));
 		
-		final ISExpression expanded = MacroExpander.expand(templateNames.build(), 
+		if (lazy) {
+			final List<IMacro> renamers = templateNames.build();
+			final Set<String> names = new HashSet<>();
+			for (final Seq s : definitions.build()) {
+				final Atom name = (Atom) s.exceptComments().get(1);
+				if (names.add(name.getValue())) {
+					templates.add(new LazyTemplate(moduleName, moduleName + "/" + name.getValue(), s, renamers));
+				} else {
+					errors.error(s, "redefinition of template %s", moduleName + "/" + name.getValue());
+				}
+			}
+			return SExpressions.empty();
+		} else {
+			return rewrite(moduleName, templateNames.build(), definitions.build(), errors);
+		}
+	}
+	
+	/**
+	 * Rename the given template definitions, and everything within them, to belong to the given module.
+	 */
+	static ISExpression rewrite(final String moduleName, final List<IMacro> renamers, final List<Seq> definitions, final IErrorHandler errors) {
+		final ImmutableList.Builder<Node> transformedBody = ImmutableList.builder(); 
+		
+		for (final Seq s : definitions) {
+			final List<Node> children = s.exceptComments();
+			final Atom name = (Atom) children.get(1);
+			
+			final Seq.Builder b = Seq.builder(s.getLocation(), s.getDelimeter());
+			
+			for (final Node c : s) {
+				if (c == name) {
+					b.add(Atom.create(moduleName + "/" + name.getValue(), name.getLocation()));
+				} else {
+					b.add(c);
+				}
+			}
+			transformedBody.add(b.build(s.getEndLocation()));
+		}
+		
+		final ISExpression expanded = MacroExpander.expand(renamers, 
 														   SExpressions.inOrder(transformedBody.build()), errors);
 
 		// final step - replace any atoms that start with / with a module-specific version.
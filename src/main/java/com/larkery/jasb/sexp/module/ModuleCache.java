@@ -0,0 +1,130 @@
+package com.larkery.jasb.sexp.module;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.parse.IMacro;
+
+/**
+ * Holds the result of compiling module definitions, so that a module which is included by many scenarios only has its
+ * templates renamed once.
+ *
+ * Entries are keyed on the module's name, the URI of the document which defines it, and a hash of the definition's
+ * content, so a changed definition is never confused with an old one. A cache can be shared between threads and
+ * between any number of {@link Module}s.
+ *
+ * The compiled definitions keep the locations they had when first compiled; if the same file is reached by a different
+ * chain of includes later, errors within it will still name the right place in the file but will describe the include
+ * chain of the first compilation.
+ */
+public class ModuleCache {
+	private final ConcurrentMap<Key, CompiledModule> modules = new ConcurrentHashMap<>();
+
+	/**
+	 * The output of compiling a module: the renamed template definitions and the names of any init templates.
+	 */
+	public static class CompiledModule {
+		public final List<Node> definitions;
+		public final List<String> initTemplates;
+		/**
+		 * If the module was compiled lazily, this holds its templates and definitions is empty.
+		 */
+		public final List<IMacro> templates;
+
+		CompiledModule(final List<Node> definitions, final List<String> initTemplates, final List<IMacro> templates) {
+			this.definitions = ImmutableList.copyOf(definitions);
+			this.initTemplates = ImmutableList.copyOf(initTemplates);
+			this.templates = ImmutableList.copyOf(templates);
+		}
+	}
+
+	static class Key {
+		private final String moduleName;
+		private final URI source;
+		private final HashCode hash;
+		private final boolean lazy;
+
+		Key(final String moduleName, final Seq definition, final boolean lazy) {
+			this.moduleName = moduleName;
+			this.lazy = lazy;
+			final Location location = definition.getLocation();
+			this.source = location == null ? null : location.name;
+			this.hash = hash(definition);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(moduleName, source, hash, lazy);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj instanceof Key) {
+				final Key other = (Key) obj;
+				return lazy == other.lazy &&
+						moduleName.equals(other.moduleName) &&
+						Objects.equals(source, other.source) &&
+						hash.equals(other.hash);
+			}
+			return false;
+		}
+	}
+
+	CompiledModule get(final Key key) {
+		return modules.get(key);
+	}
+
+	void put(final Key key, final CompiledModule module) {
+		modules.putIfAbsent(key, module);
+	}
+
+	public int size() {
+		return modules.size();
+	}
+
+	public void clear() {
+		modules.clear();
+	}
+
+	private static HashCode hash(final Seq definition) {
+		final Hasher hasher = Hashing.sha1().newHasher();
+		definition.accept(new ISExpressionVisitor() {
+			@Override
+			public void locate(final Location loc) {}
+
+			@Override
+			public void open(final Delim delimeter) {
+				hasher.putByte((byte) 1).putInt(delimeter.ordinal());
+			}
+
+			@Override
+			public void atom(final String string) {
+				hasher.putByte((byte) 2).putInt(string.length()).putString(string, Charsets.UTF_8);
+			}
+
+			@Override
+			public void comment(final String text) {
+				hasher.putByte((byte) 3).putInt(text.length()).putString(text, Charsets.UTF_8);
+			}
+
+			@Override
+			public void close(final Delim delimeter) {
+				hasher.putByte((byte) 4);
+			}
+		});
+		return hasher.hash();
+	}
+}
@@ -0,0 +1,223 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+
+/**
+ * An {@link IResolver} which remembers what another resolver produced for each address, so that documents which are
+ * included by many scenarios are only read once.
+ *
+ * Cached content is bounded by its total length in characters, and the least recently used documents are evicted
+ * first. If several threads want the same uncached address at once, only one of them reads it and the others wait for
+ * the result.
+ *
+ * Before cached content is used it can be checked with an {@link IValidator}, which produces a version for an address
+ * (a modification time, an ETag, a content hash from a repository, and so on); if the version differs from the one seen
+ * when the content was read, the content is read again.
+ */
+public class CachingResolver implements IResolver {
+	private final IResolver delegate;
+	private final IValidator validator;
+	private final Cache<URI, Entry> cache;
+	private final AtomicLong staleCount = new AtomicLong();
+
+	/**
+	 * Decides whether cached content is still current
+	 */
+	public interface IValidator {
+		/**
+		 * @return something which will be equal for two calls if and only if the content at href has not changed in
+		 * between, or null if that cannot be known, in which case cached content is assumed to be current.
+		 */
+		public Object version(final URI href);
+	}
+
+	/**
+	 * A validator which always trusts the cache
+	 */
+	public static final IValidator NEVER = new IValidator() {
+		@Override
+		public Object version(final URI href) {
+			return null;
+		}
+	};
+
+	/**
+	 * A validator which uses the modification time of file: addresses, and trusts the cache for anything else
+	 */
+	public static final IValidator MODIFICATION_TIME = new IValidator() {
+		@Override
+		public Object version(final URI href) {
+			if ("file".equals(href.getScheme())) {
+				return new File(href).lastModified();
+			} else {
+				return null;
+			}
+		}
+	};
+
+	private static class Entry {
+		final URI location;
+		final String content;
+		final Object version;
+
+		Entry(final URI location, final String content, final Object version) {
+			this.location = location;
+			this.content = content;
+			this.version = version;
+		}
+	}
+
+	private CachingResolver(final Builder builder) {
+		this.delegate = builder.delegate;
+		this.validator = builder.validator;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(builder.maximumCharacters)
+				.weigher(new Weigher<URI, Entry>() {
+					@Override
+					public int weigh(final URI key, final Entry value) {
+						return value.content.length();
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	public static Builder builder(final IResolver delegate) {
+		return new Builder(delegate);
+	}
+
+	public static class Builder {
+		private final IResolver delegate;
+		private IValidator validator = NEVER;
+		private long maximumCharacters = 64L * 1024 * 1024;
+
+		private Builder(final IResolver delegate) {
+			this.delegate = delegate;
+		}
+
+		/**
+		 * Check cached content with the given validator before using it; by default cached content is always used.
+		 */
+		public Builder withValidator(final IValidator validator) {
+			this.validator = validator;
+			return this;
+		}
+
+		/**
+		 * Evict the least recently used content when the total length of everything cached exceeds this.
+		 */
+		public Builder withMaximumCharacters(final long maximumCharacters) {
+			this.maximumCharacters = maximumCharacters;
+			return this;
+		}
+
+		public CachingResolver build() {
+			return new CachingResolver(this);
+		}
+	}
+
+	@Override
+	public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+		return delegate.convert(include, errors);
+	}
+
+	@Override
+	public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+		// taken once, before any reading, and used both to check a cached entry and to label a new one; so a change
+		// during reading will be seen next time
+		final Object version = validator.version(href);
+		Entry entry = get(href, version, errors);
+
+		if (version != null && !Objects.equal(version, entry.version)) {
+			staleCount.incrementAndGet();
+			cache.asMap().remove(href, entry);
+			entry = get(href, version, errors);
+		}
+
+		return Includer.stringLocationReader(entry.location, entry.content);
+	}
+
+	private Entry get(final URI href, final Object version, final IErrorHandler errors) throws ResolutionException {
+		try {
+			return cache.get(href, new Callable<Entry>() {
+				@Override
+				public Entry call() throws ResolutionException {
+					return load(href, version, errors);
+				}
+			});
+		} catch (final ExecutionException | UncheckedExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), ResolutionException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	private Entry load(final URI href, final Object version, final IErrorHandler errors) throws ResolutionException {
+		final ILocationReader reader = delegate.resolve(href, errors);
+		try (final Reader r = reader.getReader()) {
+			return new Entry(reader.getLocation(), IOUtils.toString(r), version);
+		} catch (final IOException | NoSuchElementException e) {
+			throw new ResolutionException("Unable to read " + href + " (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * @return hit, miss, load and eviction counts for this resolver
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * @return how many times cached content was found to be out of date by the validator
+	 */
+	public long getStaleCount() {
+		return staleCount.get();
+	}
+
+	/**
+	 * @return the total length of everything currently cached
+	 */
+	public long getCachedCharacters() {
+		long total = 0;
+		for (final Entry e : cache.asMap().values()) {
+			total += e.content.length();
+		}
+		return total;
+	}
+
+	/**
+	 * Forget the content for the given address
+	 */
+	public void invalidate(final URI href) {
+		cache.invalidate(href);
+	}
+
+	/**
+	 * Forget everything
+	 */
+	public void clear() {
+		cache.invalidateAll();
+	}
+}
@@ -0,0 +1,180 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.parse.CachingResolver.IValidator;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+/**
+ * Remembers the {@link Expansion} of a root for a given {@link StandardSource}, so that expanding an unchanged scenario
+ * again costs next to nothing. Give one of these to {@link StandardSource.Builder#withExpansionCache(ExpansionCache)};
+ * one cache may be shared by any number of sources.
+ *
+ * Results are kept for each combination of root address, resolver, extra macros and source settings, and are only
+ * used whilst every document in the root's include closure is the same as when they were made. To check this cheaply,
+ * an {@link IValidator} is asked for the version of each document in the closure; if none has changed the result is
+ * used without reading anything. If a version has changed, or the validator cannot give one for some document, the
+ * closure is read again and its hash compared, so that a document which was touched but not changed does not cause
+ * the root to be expanded again.
+ *
+ * Expansions handed out by this are shared, and so must not be modified.
+ */
+public class ExpansionCache {
+	private final Cache<Object, Entry> cache;
+	private final IValidator validator;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong unchanged = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static class Entry {
+		final HashCode hash;
+		final Set<URI> closure;
+		final Map<URI, Object> versions;
+		final Expansion expansion;
+
+		Entry(final HashCode hash, final Set<URI> closure, final Map<URI, Object> versions, final Expansion expansion) {
+			this.hash = hash;
+			this.closure = closure;
+			this.versions = versions;
+			this.expansion = expansion;
+		}
+	}
+
+	/**
+	 * A cache holding up to the given number of expansions, which checks them by the modification times of file:
+	 * documents; expansions of anything else are checked by reading the include closure again.
+	 */
+	public ExpansionCache(final long maximumSize) {
+		this(maximumSize, CachingResolver.MODIFICATION_TIME);
+	}
+
+	/**
+	 * A cache holding up to the given number of expansions, which uses the given validator to avoid reading the include
+	 * closure when nothing has changed.
+	 *
+	 * @throws IllegalArgumentException if the validator is {@link CachingResolver#NEVER}, which would mean reading the
+	 * whole include closure to check every expansion
+	 */
+	public ExpansionCache(final long maximumSize, final IValidator validator) {
+		if (validator == CachingResolver.NEVER) {
+			throw new IllegalArgumentException("An expansion cache needs a validator which can give versions for documents");
+		}
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+		this.validator = validator;
+	}
+
+	Expansion expand(final StandardSource source, final IResolver resolver, final URI root) {
+		final Object key = source.getCacheKey(root);
+		final Entry cached = cache.getIfPresent(key);
+
+		if (cached != null && isCurrent(cached)) {
+			hits.incrementAndGet();
+			return cached.expansion;
+		}
+
+		final ErrorCollector errors = new ErrorCollector();
+		final IncludeGraph graph = IncludeGraph.build(resolver, root, errors);
+		final Set<URI> closure = ImmutableSet.<URI>builder()
+				.add(root)
+				.addAll(graph.getDocuments().keySet())
+				.addAll(graph.getDependencies().values())
+				.build();
+		final Map<URI, Object> versions = versions(closure);
+
+		if (cached != null && cached.hash.equals(graph.getHash())) {
+			unchanged.incrementAndGet();
+			cache.put(key, new Entry(cached.hash, closure, versions, cached.expansion));
+			return cached.expansion;
+		}
+
+		misses.incrementAndGet();
+
+		final Expansion expansion = source.expand(graph).withErrorsFirst(errors.getErrors());
+		final Expansion result = new Expansion(
+				ImmutableList.copyOf(expansion.nodes),
+				ImmutableList.copyOf(expansion.extraMacros),
+				ImmutableList.copyOf(expansion.errors));
+		cache.put(key, new Entry(graph.getHash(), closure, versions, result));
+		return result;
+	}
+
+	private boolean isCurrent(final Entry entry) {
+		if (entry.versions == null) return false;
+		for (final Map.Entry<URI, Object> e : entry.versions.entrySet()) {
+			if (!Objects.equal(e.getValue(), validator.version(e.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the version of each document in the closure, or null if the validator cannot say for any of them
+	 */
+	private Map<URI, Object> versions(final Set<URI> closure) {
+		final Map<URI, Object> result = new HashMap<>();
+		for (final URI uri : closure) {
+			final Object version = validator.version(uri);
+			if (version == null) return null;
+			result.put(uri, version);
+		}
+		return ImmutableMap.copyOf(result);
+	}
+
+	/**
+	 * Forget any expansion which depends on the given document
+	 */
+	public void invalidate(final URI document) {
+		for (final Map.Entry<Object, Entry> e : cache.asMap().entrySet()) {
+			if (e.getValue().closure.contains(document)) {
+				cache.asMap().remove(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Forget everything
+	 */
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * @return how many times an expansion was used because the validator said nothing had changed
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return how many times an expansion was used after reading its include closure and finding it unchanged
+	 */
+	public long getUnchangedCount() {
+		return unchanged.get();
+	}
+
+	/**
+	 * @return how many times something had to be expanded
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+}
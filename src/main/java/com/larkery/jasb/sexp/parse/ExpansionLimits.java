@@ -0,0 +1,206 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.BasicError;
+import com.larkery.jasb.sexp.errors.ExpansionLimitException;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+
+/**
+ * Puts a cap on how much output macro expansion may produce, so that a template which multiplies its input (for
+ * example by repeating @rest, or by passing itself into its own arguments) fails quickly instead of exhausting memory.
+ *
+ * As an {@link IMacroInterceptor} this counts the atoms and lists emitted by each macro invocation, including whatever
+ * nested invocations produced; {@link #limitForms(ISExpression)} counts those in each top-level form of a whole
+ * expansion. When either count goes over its limit an {@link ExpansionLimitException} is thrown, whose error names
+ * the chain of invocations which was being expanded at the time.
+ *
+ * The limits are fixed on construction and the record of what is being expanded is kept per thread, so one instance
+ * can be shared between concurrent expansions.
+ */
+public class ExpansionLimits implements IMacroInterceptor {
+	private final long maximumNodesPerInvocation;
+	private final long maximumNodesPerForm;
+
+	private final ThreadLocal<Deque<Frame>> stacks = new ThreadLocal<Deque<Frame>>() {
+		@Override
+		protected Deque<Frame> initialValue() {
+			return new ArrayDeque<>();
+		}
+	};
+
+	/**
+	 * @param maximumNodesPerInvocation the most atoms and lists any single macro invocation may produce
+	 * @param maximumNodesPerForm the most atoms and lists any top-level form may expand into
+	 */
+	public ExpansionLimits(final long maximumNodesPerInvocation, final long maximumNodesPerForm) {
+		this.maximumNodesPerInvocation = maximumNodesPerInvocation;
+		this.maximumNodesPerForm = maximumNodesPerForm;
+	}
+
+	public long getMaximumNodesPerInvocation() {
+		return maximumNodesPerInvocation;
+	}
+
+	public long getMaximumNodesPerForm() {
+		return maximumNodesPerForm;
+	}
+
+	private static class Frame {
+		final String name;
+		final Location location;
+		long nodes;
+
+		Frame(final String name, final Location location) {
+			this.name = name;
+			this.location = location;
+		}
+	}
+
+	@Override
+	public ISExpression transform(final IMacro macro, final Seq invocation, final IMacroExpander expander, final IErrorHandler errors) {
+		final Deque<Frame> stack = stacks.get();
+		final Frame frame = new Frame(macro.getName(), invocation.getLocation());
+		stack.push(frame);
+
+		final ISExpression result;
+		try {
+			result = macro.transform(invocation, expander, errors);
+		} catch (final RuntimeException | Error e) {
+			pop(stack, frame);
+			throw e;
+		}
+
+		return new ISExpression() {
+			boolean visited = false;
+
+			@Override
+			public void accept(final ISExpressionVisitor visitor) {
+				if (visited) {
+					result.accept(visitor);
+				} else {
+					visited = true;
+					try {
+						result.accept(new CountingVisitor(visitor) {
+							@Override
+							protected void count(final Location location) {
+								frame.nodes++;
+								if (frame.nodes > maximumNodesPerInvocation) {
+									throw new ExpansionLimitException(BasicError.at(frame.location,
+											String.format("expanding %s produced more than %d terms; the invocations being expanded were %s",
+													frame.name, maximumNodesPerInvocation, describeChain())));
+								}
+							}
+						});
+					} finally {
+						pop(stack, frame);
+					}
+				}
+			}
+		};
+	}
+
+	private static void pop(final Deque<Frame> stack, final Frame frame) {
+		while (!stack.isEmpty() && stack.pop() != frame);
+	}
+
+	private String describeChain() {
+		final StringBuilder sb = new StringBuilder();
+		final Iterator<Frame> it = stacks.get().descendingIterator();
+		while (it.hasNext()) {
+			final Frame f = it.next();
+			if (sb.length() > 0) sb.append(" > ");
+			sb.append(f.name).append(" at ").append(f.location);
+		}
+		return sb.length() == 0 ? "none" : sb.toString();
+	}
+
+	/**
+	 * @return an expression which produces the same output as input, except that it will throw an
+	 * {@link ExpansionLimitException} if any top-level form produces more than the allowed number of terms.
+	 */
+	public ISExpression limitForms(final ISExpression input) {
+		return new ISExpression() {
+			@Override
+			public void accept(final ISExpressionVisitor visitor) {
+				input.accept(new CountingVisitor(visitor) {
+					int depth = 0;
+					long nodes = 0;
+					Location formLocation;
+
+					@Override
+					public void open(final Delim delimeter) {
+						super.open(delimeter);
+						depth++;
+					}
+
+					@Override
+					public void close(final Delim delimeter) {
+						depth--;
+						super.close(delimeter);
+					}
+
+					@Override
+					protected void count(final Location location) {
+						if (depth == 0) {
+							nodes = 0;
+							formLocation = location;
+						}
+						nodes++;
+						if (nodes > maximumNodesPerForm) {
+							throw new ExpansionLimitException(BasicError.at(formLocation,
+									String.format("this expression expanded into more than %d terms; the invocations being expanded were %s",
+											maximumNodesPerForm, describeChain())));
+						}
+					}
+				});
+			}
+		};
+	}
+
+	private static abstract class CountingVisitor implements ISExpressionVisitor {
+		private final ISExpressionVisitor delegate;
+		private Location location;
+
+		CountingVisitor(final ISExpressionVisitor delegate) {
+			this.delegate = delegate;
+		}
+
+		protected abstract void count(final Location location);
+
+		@Override
+		public void locate(final Location loc) {
+			this.location = loc;
+			delegate.locate(loc);
+		}
+
+		@Override
+		public void open(final Delim delimeter) {
+			count(location);
+			delegate.open(delimeter);
+		}
+
+		@Override
+		public void atom(final String string) {
+			count(location);
+			delegate.atom(string);
+		}
+
+		@Override
+		public void comment(final String text) {
+			delegate.comment(text);
+		}
+
+		@Override
+		public void close(final Delim delimeter) {
+			delegate.close(delimeter);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+
+/**
+ * An {@link IMacroInterceptor} which records where expansion time goes.
+ *
+ * For each macro name it records the number of invocations, the cumulative time spent in them (including nested
+ * invocations), their self time (excluding nested invocations), the number of nodes they emitted and the deepest
+ * nesting at which they were seen. Because expansion is lazy, the time attributed to an invocation covers both the
+ * call to {@link IMacro#transform(Seq, IMacroExpander, IErrorHandler)} and the visiting of its result.
+ *
+ * The results can be written out as a table sorted by self time, or as folded stacks (one line per distinct chain of
+ * invocations, followed by its self time in nanoseconds), which is the input format for most flame graph tools.
+ *
+ * A profiler is not thread safe; use one per expansion.
+ */
+public class ExpansionProfiler implements IMacroInterceptor {
+	private final Map<String, Stats> stats = new HashMap<>();
+	private final Map<String, long[]> folded = new TreeMap<>();
+	private final Deque<Frame> stack = new ArrayDeque<>();
+
+	public static class Stats {
+		private final String name;
+		private long invocations;
+		private long totalNanos;
+		private long selfNanos;
+		private long nodes;
+		private int maximumDepth;
+
+		private Stats(final String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getInvocations() {
+			return invocations;
+		}
+
+		/**
+		 * @return time spent in invocations of this macro, including nested invocations of other macros. Recursive
+		 * invocations are only counted once.
+		 */
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		/**
+		 * @return time spent in invocations of this macro, excluding time spent in nested invocations
+		 */
+		public long getSelfNanos() {
+			return selfNanos;
+		}
+
+		/**
+		 * @return the number of atoms and lists produced by invocations of this macro; recursive invocations are only
+		 * counted once.
+		 */
+		public long getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * @return the greatest number of macro invocations enclosing (and including) an invocation of this macro
+		 */
+		public int getMaximumDepth() {
+			return maximumDepth;
+		}
+	}
+
+	private class Frame {
+		final String name;
+		final String path;
+		final Stats stats;
+		final boolean outermost;
+		final long start;
+		long childNanos;
+		long nodes;
+		boolean finished;
+
+		Frame(final String name, final Frame parent) {
+			this.name = name;
+			this.path = parent == null ? name : parent.path + ";" + name;
+			Stats s = ExpansionProfiler.this.stats.get(name);
+			if (s == null) {
+				s = new Stats(name);
+				ExpansionProfiler.this.stats.put(name, s);
+			}
+			this.stats = s;
+			this.outermost = !isRunning(name);
+			this.start = System.nanoTime();
+		}
+	}
+
+	private boolean isRunning(final String name) {
+		for (final Frame f : stack) {
+			if (f.name.equals(name)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public ISExpression transform(final IMacro macro, final Seq invocation, final IMacroExpander expander, final IErrorHandler errors) {
+		final Frame frame = new Frame(macro.getName(), stack.peek());
+		stack.push(frame);
+		frame.stats.invocations++;
+		frame.stats.maximumDepth = Math.max(frame.stats.maximumDepth, stack.size());
+
+		final ISExpression result;
+		try {
+			result = macro.transform(invocation, expander, errors);
+		} catch (final RuntimeException | Error e) {
+			finish(frame);
+			throw e;
+		}
+
+		return new ISExpression() {
+			@Override
+			public void accept(final ISExpressionVisitor visitor) {
+				if (frame.finished) {
+					result.accept(visitor);
+				} else {
+					try {
+						result.accept(new CountingVisitor(visitor, frame));
+					} finally {
+						finish(frame);
+					}
+				}
+			}
+		};
+	}
+
+	private void finish(final Frame frame) {
+		if (frame.finished) return;
+		frame.finished = true;
+		// anything left above this frame was never visited, so we just discard it
+		while (!stack.isEmpty() && stack.pop() != frame);
+
+		final long elapsed = System.nanoTime() - frame.start;
+		final long self = elapsed - frame.childNanos;
+
+		frame.stats.selfNanos += self;
+		if (frame.outermost) {
+			frame.stats.totalNanos += elapsed;
+			frame.stats.nodes += frame.nodes;
+		}
+
+		long[] f = folded.get(frame.path);
+		if (f == null) {
+			f = new long[1];
+			folded.put(frame.path, f);
+		}
+		f[0] += self;
+
+		final Frame parent = stack.peek();
+		if (parent != null) {
+			parent.childNanos += elapsed;
+		}
+	}
+
+	private static class CountingVisitor implements ISExpressionVisitor {
+		private final ISExpressionVisitor delegate;
+		private final Frame frame;
+
+		CountingVisitor(final ISExpressionVisitor delegate, final Frame frame) {
+			this.delegate = delegate;
+			this.frame = frame;
+		}
+
+		@Override
+		public void locate(final Location loc) {
+			delegate.locate(loc);
+		}
+
+		@Override
+		public void open(final Delim delimeter) {
+			frame.nodes++;
+			delegate.open(delimeter);
+		}
+
+		@Override
+		public void atom(final String string) {
+			frame.nodes++;
+			delegate.atom(string);
+		}
+
+		@Override
+		public void comment(final String text) {
+			delegate.comment(text);
+		}
+
+		@Override
+		public void close(final Delim delimeter) {
+			delegate.close(delimeter);
+		}
+	}
+
+	/**
+	 * @return the statistics for each macro seen, in decreasing order of self time
+	 */
+	public List<Stats> getStats() {
+		final List<Stats> result = new ArrayList<>(stats.values());
+		Collections.sort(result, new Comparator<Stats>() {
+			@Override
+			public int compare(final Stats o1, final Stats o2) {
+				final int c = Long.compare(o2.selfNanos, o1.selfNanos);
+				return c == 0 ? o1.name.compareTo(o2.name) : c;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Write a table of the results, sorted by decreasing self time, with times in milliseconds.
+	 */
+	public void writeReport(final Appendable out) throws IOException {
+		out.append(String.format("%-40s %10s %12s %12s %12s %6s%n", "macro", "calls", "total ms", "self ms", "nodes", "depth"));
+		for (final Stats s : getStats()) {
+			out.append(String.format("%-40s %10d %12.3f %12.3f %12d %6d%n",
+					s.name, s.invocations, s.totalNanos / 1e6, s.selfNanos / 1e6, s.nodes, s.maximumDepth));
+		}
+	}
+
+	/**
+	 * Write the self time for each distinct chain of macro invocations, one per line, in the form
+	 * <code>outer;middle;inner nanoseconds</code>.
+	 */
+	public void writeFoldedStacks(final Appendable out) throws IOException {
+		for (final Map.Entry<String, long[]> e : folded.entrySet()) {
+			out.append(e.getKey()).append(' ').append(String.valueOf(e.getValue()[0])).append('\n');
+		}
+	}
+
+	public void clear() {
+		stats.clear();
+		folded.clear();
+		stack.clear();
+	}
+}
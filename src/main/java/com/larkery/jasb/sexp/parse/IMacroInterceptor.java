@@ -0,0 +1,25 @@
+package com.larkery.jasb.sexp.parse;
+
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+
+/**
+ * Can be given to a {@link MacroExpander} to sit between it and every {@link IMacro} it invokes.
+ *
+ * The interceptor is responsible for calling {@link IMacro#transform(Seq, IMacroExpander, IErrorHandler)}
+ * itself, so it can observe both the transformation and the visiting of its (lazy) result.
+ *
+ * Any {@link MacroExpander} created while an intercepted expansion is being visited inherits the interceptor, so
+ * expanders nested inside macros (modules, templates and so on) are covered as well.
+ */
+public interface IMacroInterceptor {
+	public ISExpression transform(final IMacro macro, final Seq invocation, final IMacroExpander expander, final IErrorHandler errors);
+
+	public static final IMacroInterceptor NONE = new IMacroInterceptor() {
+		@Override
+		public ISExpression transform(final IMacro macro, final Seq invocation, final IMacroExpander expander, final IErrorHandler errors) {
+			return macro.transform(invocation, expander, errors);
+		}
+	};
+}
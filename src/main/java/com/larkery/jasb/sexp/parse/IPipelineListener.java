@@ -0,0 +1,83 @@
+package com.larkery.jasb.sexp.parse;
+
+/**
+ * Told when each stage of reading starts and finishes, how long it took, and how much it did. Install one for the
+ * current thread with {@link Pipeline#install(IPipelineListener)}; {@link PipelineStatistics} is a simple listener
+ * which adds everything up.
+ *
+ * Stages nest within one another, because the pipeline is lazy: a document is parsed as its includes are followed,
+ * and expanding the output pulls on every stage before it. The time given to {@link #finished(Stage, Object, long)}
+ * therefore includes the time spent in any stages which ran inside it. Stages may be reported from more than one
+ * thread at once, if includes are fetched concurrently.
+ */
+public interface IPipelineListener {
+	public enum Stage {
+		/**
+		 * Lexing and parsing a single document; the subject is its address
+		 */
+		PARSE,
+		/**
+		 * Following the includes from a root document; the subject is the root's address
+		 */
+		INCLUDE,
+		/**
+		 * Compiling a module definition; the subject is the module's name
+		 */
+		MODULE,
+		/**
+		 * Finding the template definitions in a document
+		 */
+		TEMPLATES,
+		/**
+		 * Expanding macro invocations in a document
+		 */
+		EXPAND,
+		/**
+		 * Binding a node to objects; the subject is the class being read
+		 */
+		BIND
+	}
+
+	public enum Measure {
+		/**
+		 * Characters read by the lexer
+		 */
+		CHARACTERS,
+		/**
+		 * Lexemes produced by the lexer
+		 */
+		LEXEMES,
+		/**
+		 * Atoms and lists produced by the stage
+		 */
+		NODES,
+		/**
+		 * Templates defined
+		 */
+		TEMPLATES,
+		/**
+		 * Objects bound
+		 */
+		OBJECTS
+	}
+
+	public void started(final Stage stage, final Object subject);
+
+	/**
+	 * Called just before {@link #finished(Stage, Object, long)}, for each measure which the stage has counted
+	 */
+	public void counted(final Stage stage, final Object subject, final Measure measure, final long amount);
+
+	public void finished(final Stage stage, final Object subject, final long nanos);
+
+	public static final IPipelineListener NONE = new IPipelineListener() {
+		@Override
+		public void started(final Stage stage, final Object subject) {}
+
+		@Override
+		public void counted(final Stage stage, final Object subject, final Measure measure, final long amount) {}
+
+		@Override
+		public void finished(final Stage stage, final Object subject, final long nanos) {}
+	};
+}
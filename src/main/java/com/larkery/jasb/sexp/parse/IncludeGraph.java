@@ -0,0 +1,290 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.BasicError;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.IAsyncResolver;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.Includer.IncludingVisitor;
+import com.larkery.jasb.sexp.parse.Includer.ModuleFilteringVisitor;
+
+/**
+ * Everything reachable by following includes from a root document, each document having been resolved, read and
+ * parsed exactly once.
+ *
+ * This holds the same information as {@link Includer#collect(IResolver, URI, IErrorHandler, Multimap)}, but also
+ * keeps the parsed contents of each document, so {@link #source(IErrorHandler)} can produce the same expression as
+ * {@link Includer#source(IResolver, URI, IErrorHandler)} without going back to the resolver. A graph is immutable
+ * once built, and may be expanded any number of times, for example by {@link StandardSource#expand(IncludeGraph)}.
+ *
+ * Problems reading documents are reported when the graph is built; problems with how documents include one another,
+ * like recursive includes, are reported whenever its source is visited, as they would be by
+ * {@link Includer#source(IResolver, URI, IErrorHandler)}.
+ */
+public class IncludeGraph {
+	private final URI root;
+	private final Map<URI, Document> documents;
+	private final ImmutableSetMultimap<URI, URI> dependencies;
+	private final HashCode hash;
+
+	/**
+	 * A single document within an include graph
+	 */
+	public static class Document {
+		private final URI address;
+		private final String content;
+		private final List<Node> nodes;
+		private final HashCode hash;
+		/**
+		 * The address that each include in this document was converted into, keyed on its line and column
+		 */
+		private final Map<String, URI> includes;
+
+		private Document(final Includer.Fetched fetched) {
+			this.address = fetched.address;
+			this.content = fetched.content;
+			this.nodes = ImmutableList.copyOf(fetched.nodes);
+			this.hash = Hashing.sha1().hashString(content, Charsets.UTF_8);
+			final Map<String, URI> includes = new HashMap<>();
+			for (final Includer.Fetched.Include include : fetched.includes) {
+				includes.put(key(include.location), include.to);
+			}
+			this.includes = ImmutableMap.copyOf(includes);
+		}
+
+		private static String key(final Location location) {
+			return location.line + ":" + location.column;
+		}
+
+		public URI getAddress() {
+			return address;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		/**
+		 * @return the parsed contents of this document, which will be empty if it could not be parsed; unless this is
+		 * the root document, these will be located as included from wherever the document was first found.
+		 */
+		public List<Node> getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * @return a hash of the content of this document
+		 */
+		public HashCode getHash() {
+			return hash;
+		}
+	}
+
+	private IncludeGraph(final URI root, final Map<URI, Document> documents, final Multimap<URI, URI> dependencies) {
+		this.root = root;
+		this.documents = ImmutableMap.copyOf(documents);
+		this.dependencies = ImmutableSetMultimap.copyOf(dependencies);
+
+		final Hasher hasher = Hashing.sha1().newHasher();
+		for (final URI uri : Ordering.natural().sortedCopy(this.documents.keySet())) {
+			hasher.putString(uri.toString(), Charsets.UTF_8);
+			hasher.putBytes(this.documents.get(uri).getHash().asBytes());
+		}
+		this.hash = hasher.hash();
+	}
+
+	/**
+	 * Build the graph of everything reachable from root, fetching one document at a time
+	 */
+	public static IncludeGraph build(final IResolver resolver, final URI root, final IErrorHandler errors) {
+		return build(resolver, root, errors, MoreExecutors.sameThreadExecutor(), 1);
+	}
+
+	/**
+	 * Build the graph of everything reachable from root, fetching documents on the given executor as in
+	 * {@link Includer#collect(IResolver, URI, IErrorHandler, Multimap, Executor, int)}
+	 */
+	public static IncludeGraph build(final IResolver resolver, final URI root, final IErrorHandler errors, final Executor executor, final int maximumConcurrency) {
+		final HashMultimap<URI, URI> dependencies = HashMultimap.create();
+		return build(root, Includer.crawl(resolver, root, errors, dependencies, executor, maximumConcurrency, Includer.Retain.NODES), dependencies);
+	}
+
+	/**
+	 * Build the graph of everything reachable from root, reading and parsing each document as soon as the resolver
+	 * delivers it, as in {@link Includer#collect(IAsyncResolver, URI, IErrorHandler, Multimap)}
+	 */
+	public static IncludeGraph build(final IAsyncResolver resolver, final URI root, final IErrorHandler errors) {
+		final HashMultimap<URI, URI> dependencies = HashMultimap.create();
+		return build(root, Includer.crawl(resolver, root, errors, dependencies, Includer.Retain.NODES), dependencies);
+	}
+
+	private static IncludeGraph build(final URI root, final List<Includer.Fetched> fetched, final Multimap<URI, URI> dependencies) {
+		final Map<URI, Document> documents = new HashMap<>();
+		for (final Includer.Fetched f : fetched) {
+			if (f.content != null) {
+				documents.put(f.address, new Document(f));
+			}
+		}
+		return new IncludeGraph(root, documents, dependencies);
+	}
+
+	public URI getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return every document which could be read, by address
+	 */
+	public Map<URI, Document> getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * @return a map from each document to the documents it includes
+	 */
+	public ImmutableSetMultimap<URI, URI> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * @return the content of each document, by address; this is the same as the result of
+	 * {@link Includer#collect(IResolver, URI, IErrorHandler)}
+	 */
+	public Map<URI, String> getContents() {
+		final ImmutableMap.Builder<URI, String> result = ImmutableMap.builder();
+		for (final Document document : documents.values()) {
+			result.put(document.getAddress(), document.getContent());
+		}
+		return result.build();
+	}
+
+	/**
+	 * @return a hash of the addresses and contents of every document in the graph, which will be the same for any two
+	 * graphs whose documents are the same.
+	 */
+	public HashCode getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the root document with all its includes put in place, as {@link Includer#source(IResolver, URI, IErrorHandler)}
+	 * would produce
+	 */
+	public ISExpression source(final IErrorHandler errors) {
+		return new ISExpression() {
+			@Override
+			public void accept(final ISExpressionVisitor visitor) {
+				final Document document = documents.get(root);
+				if (document == null) {
+					errors.handle(BasicError.nowhere("Unable to resolve " + root));
+					return;
+				}
+
+				final IncludingVisitor including = new GraphIncludingVisitor(new ModuleFilteringVisitor(visitor), errors);
+				for (final Node node : document.getNodes()) {
+					node.accept(including);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return root.toString();
+			}
+		};
+	}
+
+	private class GraphIncludingVisitor extends IncludingVisitor {
+		GraphIncludingVisitor(final ModuleFilteringVisitor visitor, final IErrorHandler errors) {
+			super(null, visitor, errors);
+		}
+
+		@Override
+		protected Optional<URI> convert(final Seq cut) {
+			final Document from = documents.get(cut.getLocation().name);
+			if (from == null) {
+				return Optional.absent();
+			}
+			// an include which could not be converted has already been reported whilst building the graph
+			return Optional.fromNullable(from.includes.get(Document.key(cut.getLocation())));
+		}
+
+		@Override
+		protected ISExpression read(final URI uri, final Location includeLocation) throws ResolutionException {
+			final Document document = documents.get(uri);
+			if (document == null) {
+				throw new ResolutionException(uri + " could not be read");
+			}
+			return new ISExpression() {
+				@Override
+				public void accept(final ISExpressionVisitor visitor) {
+					final ISExpressionVisitor relocated = new RelocatingVisitor(visitor, includeLocation);
+					for (final Node node : document.getNodes()) {
+						node.accept(relocated);
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * Changes the locations of everything passing through to be as if it came via an include at a given location.
+	 */
+	private static class RelocatingVisitor implements ISExpressionVisitor {
+		private final ISExpressionVisitor delegate;
+		private final Location includeLocation;
+
+		RelocatingVisitor(final ISExpressionVisitor delegate, final Location includeLocation) {
+			this.delegate = delegate;
+			this.includeLocation = includeLocation;
+		}
+
+		@Override
+		public void locate(final Location loc) {
+			delegate.locate(loc.via(Location.Via.Type.Include, includeLocation));
+		}
+
+		@Override
+		public void open(final Delim delimeter) {
+			delegate.open(delimeter);
+		}
+
+		@Override
+		public void atom(final String string) {
+			delegate.atom(string);
+		}
+
+		@Override
+		public void comment(final String text) {
+			delegate.comment(text);
+		}
+
+		@Override
+		public void close(final Delim delimeter) {
+			delegate.close(delimeter);
+		}
+	}
+}
@@ -5,18 +5,40 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.io.IOUtils;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.larkery.jasb.sexp.Atom;
 import com.larkery.jasb.sexp.Comment;
 import com.larkery.jasb.sexp.INodeVisitor;
@@ -27,9 +49,14 @@ import com.larkery.jasb.sexp.Node;
 import com.larkery.jasb.sexp.SExpressions;
 import com.larkery.jasb.sexp.Seq;
 import com.larkery.jasb.sexp.errors.BasicError;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
 import com.larkery.jasb.sexp.errors.ResolutionException;
 import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
+import com.larkery.jasb.sexp.parse.Pipeline.Span;
+import com.larkery.jasb.sexp.parse2.IncludeScanner;
 
 public class Includer {
 	public interface ILocationReader {
@@ -56,6 +83,18 @@ public class Includer {
 		};
 	}
 	
+	/**
+	 * Like {@link #fileLocationReader(URI)}, except that local files are memory mapped by a {@link MappedLocationReader}
+	 * rather than read through a stream.
+	 */
+	public static ILocationReader mappedLocationReader(final URI ref) {
+		if (MappedLocationReader.canMap(ref)) {
+			return new MappedLocationReader(ref, Charset.defaultCharset());
+		} else {
+			return fileLocationReader(ref);
+		}
+	}
+	
 	/**
 	 * A convenience method for making an {@link ILocationReader} which just reads from a string.
 	 * @param location
@@ -104,6 +143,68 @@ public class Includer {
 		public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException;
 	}
 	
+	/**
+	 * A resolver which does not block whilst fetching content, so that many includes can be on their way at once.
+	 */
+	public interface IAsyncResolver {
+		/**
+		 * As {@link IResolver#convert(Seq, IErrorHandler)}, which should be quick
+		 */
+		public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException;
+		
+		/**
+		 * As {@link IResolver#resolve(URI, IErrorHandler)}, except that the result is delivered later. If the content
+		 * cannot be found the future should fail with a {@link ResolutionException}.
+		 * 
+		 * Errors may be given to the error handler from any thread until the future completes.
+		 */
+		public ListenableFuture<ILocationReader> resolveAsync(final URI href, final IErrorHandler errors);
+	}
+	
+	/**
+	 * @return an asynchronous resolver which runs the given blocking resolver on the given executor
+	 */
+	public static IAsyncResolver asynchronous(final IResolver resolver, final ListeningExecutorService executor) {
+		return new IAsyncResolver() {
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+				return resolver.convert(include, errors);
+			}
+			
+			@Override
+			public ListenableFuture<ILocationReader> resolveAsync(final URI href, final IErrorHandler errors) {
+				return executor.submit(new Callable<ILocationReader>() {
+					@Override
+					public ILocationReader call() throws ResolutionException {
+						return resolver.resolve(href, errors);
+					}
+				});
+			}
+		};
+	}
+	
+	/**
+	 * @return a blocking resolver which waits for the given asynchronous resolver
+	 */
+	public static IResolver blocking(final IAsyncResolver resolver) {
+		return new IResolver() {
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+				return resolver.convert(include, errors);
+			}
+			
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				try {
+					return Uninterruptibles.getUninterruptibly(resolver.resolveAsync(href, errors));
+				} catch (final ExecutionException e) {
+					Throwables.propagateIfInstanceOf(e.getCause(), ResolutionException.class);
+					throw Throwables.propagate(e.getCause());
+				}
+			}
+		};
+	}
+	
 	/**
 	 * Given a resolver and a root address, construct a map which contains all of the included
 	 * things by URI that were found in the root document or any of its includes, and so on.
@@ -139,13 +240,341 @@ public class Includer {
 		URI addr;
 		
 		/**
-		 * Holds a single boolean, which indicates whether we want to recurse into no-includes when
+		 * Indicates whether we want to recurse into no-includes when
 		 * looking for includes to stick in the output.
 		 */
-		final boolean[] shouldLookWithinNoInclude = new boolean[] {true};
+		boolean shouldLookWithinNoInclude = true;
+		
+		while ((addr = addrs.poll()) != null) {
+			final Fetched fetched = fetch(resolver, addr, includeLocation.poll(), shouldLookWithinNoInclude, Retain.CONTENT, errors);
+			
+			if (fetched.content != null) {
+				builder.put(addr, fetched.content);
+			}
+			
+			for (final Fetched.Include include : fetched.includes) {
+				if (dependencyGraph != null) {
+					dependencyGraph.put(include.from, include.to);
+				}
+				
+				if (!builder.containsKey(include.to)) {
+					addrs.push(include.to);
+					includeLocation.push(include.location);
+				}
+			}
+			
+			if (fetched.parsed) {
+				shouldLookWithinNoInclude = false;
+			}
+		}
+		
+		return ImmutableMap.copyOf(builder);
+	}
+	
+	/**
+	 * As {@link #collect(IResolver, URI, IErrorHandler, Multimap)}, except that includes are resolved, read and parsed
+	 * on the given executor, so several can be waiting on the resolver at once.
+	 * 
+	 * The result and dependency graph are the same as from the sequential version, except that if a document is
+	 * included several times it is fetched only once, so its own includes only appear once in the dependency graph.
+	 * Errors from each document are passed on to errors together, in the order the documents finish.
+	 * 
+	 * The resolver must be safe to use from several threads at once. The errors and dependency graph are only touched by
+	 * the calling thread.
+	 * 
+	 * @param executor the executor to fetch includes on
+	 * @param maximumConcurrency the most fetches to have submitted to the executor at once
+	 */
+	public static Map<URI, String> collect(final IResolver resolver, final URI root, final IErrorHandler errors, final Multimap<URI, URI> dependencyGraph, final Executor executor, final int maximumConcurrency) {
+		final HashMap<URI, String> builder = new HashMap<>();
+		for (final Fetched fetched : crawl(resolver, root, errors, dependencyGraph, executor, maximumConcurrency, Retain.CONTENT)) {
+			if (fetched.content != null) {
+				builder.put(fetched.address, fetched.content);
+			}
+		}
+		return ImmutableMap.copyOf(builder);
+	}
+	
+	/**
+	 * As {@link #collect(IResolver, URI, IErrorHandler, Multimap)}, except that the content of each document is not
+	 * read into a string; instead the {@link ILocationReader} it was read from is kept, so it can be read again later.
+	 * If the resolver produces {@link MappedLocationReader}s this means that a document's content is only ever held in
+	 * a memory mapping.
+	 * 
+	 * As in the concurrent collect, a document which is included several times is only read once.
+	 */
+	public static Map<URI, ILocationReader> collectReaders(final IResolver resolver, final URI root, final IErrorHandler errors, final Multimap<URI, URI> dependencyGraph) {
+		final HashMap<URI, ILocationReader> builder = new HashMap<>();
+		for (final Fetched fetched : crawl(resolver, root, errors, dependencyGraph, MoreExecutors.sameThreadExecutor(), 1, Retain.READER)) {
+			if (fetched.reader != null) {
+				builder.put(fetched.address, fetched.reader);
+			}
+		}
+		return ImmutableMap.copyOf(builder);
+	}
+	
+	/**
+	 * Fetch every document reachable from root exactly once, using the given executor.
+	 * 
+	 * @param retain how much of each document to keep
+	 * @return the documents in the order they were fetched
+	 */
+	static List<Fetched> crawl(final IResolver resolver, final URI root, final IErrorHandler errors, final Multimap<URI, URI> dependencyGraph, final Executor executor, final int maximumConcurrency, final Retain retain) {
+		Preconditions.checkArgument(maximumConcurrency > 0, "Maximum concurrency must be positive");
+		
+		final Span span = Pipeline.start(Stage.INCLUDE, root);
+		try {
+			final List<Fetched> result = new ArrayList<>();
+			final CompletionService<Fetched> fetches = new ExecutorCompletionService<>(executor);
+			final Set<URI> seen = new HashSet<>();
+			final Deque<Fetched.Include> waiting = new LinkedList<>();
+			int running = 0;
 		
+			seen.add(root);
+			fetches.submit(Pipeline.propagate(fetcher(resolver, root, null, true, retain)));
+			running++;
+		
+			while (running > 0) {
+				final Fetched fetched;
+				try {
+					fetched = fetches.take().get();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					errors.handle(BasicError.nowhere("Interrupted whilst collecting includes"));
+					break;
+				} catch (final ExecutionException e) {
+					throw Throwables.propagate(e.getCause());
+				}
+				running--;
+			
+				for (final IError e : fetched.errors) {
+					errors.handle(e);
+				}
+			
+				result.add(fetched);
+			
+				for (final Fetched.Include include : fetched.includes) {
+					if (dependencyGraph != null) {
+						dependencyGraph.put(include.from, include.to);
+					}
+					if (seen.add(include.to)) {
+						waiting.add(include);
+					}
+				}
+			
+				while (running < maximumConcurrency && !waiting.isEmpty()) {
+					final Fetched.Include include = waiting.poll();
+					fetches.submit(Pipeline.propagate(fetcher(resolver, include.to, include.location, false, retain)));
+					running++;
+				}
+			}
+		
+			return result;
+		} finally {
+			span.finish();
+		}
+	}
+	
+	/**
+	 * As {@link #collect(IResolver, URI, IErrorHandler, Multimap)}, except that includes are resolved asynchronously.
+	 * Every include is requested from the resolver as soon as it is found, and documents are read and parsed in the
+	 * calling thread in the order they arrive, so a slow include does not hold up parsing the others.
+	 * 
+	 * As in the concurrent collect, a document which is included several times is only resolved once.
+	 */
+	public static Map<URI, String> collect(final IAsyncResolver resolver, final URI root, final IErrorHandler errors, final Multimap<URI, URI> dependencyGraph) {
+		final HashMap<URI, String> builder = new HashMap<>();
+		for (final Fetched fetched : crawl(resolver, root, errors, dependencyGraph, Retain.CONTENT)) {
+			if (fetched.content != null) {
+				builder.put(fetched.address, fetched.content);
+			}
+		}
+		return ImmutableMap.copyOf(builder);
+	}
+	
+	/**
+	 * Fetch every document reachable from root exactly once, using an asynchronous resolver.
+	 * 
+	 * @return the documents in the order they were fetched
+	 */
+	static List<Fetched> crawl(final IAsyncResolver resolver, final URI root, final IErrorHandler errors, final Multimap<URI, URI> dependencyGraph, final Retain retain) {
+		final Span span = Pipeline.start(Stage.INCLUDE, root);
+		try {
+			final IResolver converter = blocking(resolver);
+			final List<Fetched> result = new ArrayList<>();
+			final BlockingQueue<Resolved> resolved = new LinkedBlockingQueue<>();
+			final Set<URI> seen = new HashSet<>();
+			int running = 0;
+		
+			seen.add(root);
+			Resolved.request(resolver, root, null, true, resolved);
+			running++;
+		
+			while (running > 0) {
+				final Resolved next;
+				try {
+					next = resolved.take();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					errors.handle(BasicError.nowhere("Interrupted whilst collecting includes"));
+					break;
+				}
+				running--;
+			
+				for (final IError e : next.errors.getErrors()) {
+					errors.handle(e);
+				}
+			
+				final Fetched fetched = new Fetched(next.address);
+				if (next.reader != null) {
+					read(converter, fetched, next.reader, next.includeLocation, next.lookWithinNoInclude, retain, errors);
+				} else if (next.failure instanceof ResolutionException) {
+					errors.handle(BasicError.nowhere(next.failure.getMessage()));
+				} else {
+					throw Throwables.propagate(next.failure);
+				}
+				result.add(fetched);
+			
+				for (final Fetched.Include include : fetched.includes) {
+					if (dependencyGraph != null) {
+						dependencyGraph.put(include.from, include.to);
+					}
+					if (seen.add(include.to)) {
+						Resolved.request(resolver, include.to, include.location, false, resolved);
+						running++;
+					}
+				}
+			}
+		
+			return result;
+		} finally {
+			span.finish();
+		}
+	}
+	
+	/**
+	 * The outcome of asking an asynchronous resolver for a document
+	 */
+	private static class Resolved {
+		final URI address;
+		final Location includeLocation;
+		final boolean lookWithinNoInclude;
+		final ErrorCollector errors;
+		ILocationReader reader;
+		Throwable failure;
+		
+		private Resolved(final URI address, final Location includeLocation, final boolean lookWithinNoInclude, final ErrorCollector errors) {
+			this.address = address;
+			this.includeLocation = includeLocation;
+			this.lookWithinNoInclude = lookWithinNoInclude;
+			this.errors = errors;
+		}
+		
+		/**
+		 * Ask the resolver for address, and put the outcome onto queue when it arrives
+		 */
+		static void request(final IAsyncResolver resolver, final URI address, final Location includeLocation, final boolean lookWithinNoInclude, final BlockingQueue<Resolved> queue) {
+			final Resolved result = new Resolved(address, includeLocation, lookWithinNoInclude, new ErrorCollector());
+			ListenableFuture<ILocationReader> future;
+			try {
+				future = resolver.resolveAsync(address, result.errors);
+			} catch (final RuntimeException e) {
+				future = Futures.immediateFailedFuture(e);
+			}
+			Futures.addCallback(future, new FutureCallback<ILocationReader>() {
+				@Override
+				public void onSuccess(final ILocationReader reader) {
+					result.reader = reader;
+					queue.add(result);
+				}
+				
+				@Override
+				public void onFailure(final Throwable t) {
+					result.failure = t;
+					queue.add(result);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * How much of each document to keep whilst collecting includes
+	 */
+	enum Retain {
+		/**
+		 * Only the reader it came from
+		 */
+		READER,
+		/**
+		 * The reader and its content
+		 */
+		CONTENT,
 		/**
-		 * A visitor which pulls out includes and sticks them on the queue to process
+		 * The reader, its content and its parsed nodes
+		 */
+		NODES
+	}
+	
+	/**
+	 * The outcome of reading a single document whilst collecting includes
+	 */
+	static class Fetched {
+		static class Include {
+			final URI from;
+			final URI to;
+			final Location location;
+			
+			Include(final URI from, final URI to, final Location location) {
+				this.from = from;
+				this.to = to;
+				this.location = location;
+			}
+		}
+		
+		final URI address;
+		ILocationReader reader;
+		String content;
+		List<Node> nodes = Collections.emptyList();
+		boolean parsed;
+		final List<Include> includes = new ArrayList<>();
+		List<IError> errors = Collections.emptyList();
+		
+		Fetched(final URI address) {
+			this.address = address;
+		}
+	}
+	
+	private static Callable<Fetched> fetcher(final IResolver resolver, final URI address, final Location includeLocation, final boolean lookWithinNoInclude, final Retain retain) {
+		return new Callable<Fetched>() {
+			@Override
+			public Fetched call() {
+				final ErrorCollector errors = new ErrorCollector();
+				final Fetched result = fetch(resolver, address, includeLocation, lookWithinNoInclude, retain, errors);
+				result.errors = errors.getErrors();
+				return result;
+			}
+		};
+	}
+	
+	/**
+	 * Resolve, read and parse a single document, and find the includes within it
+	 */
+	private static Fetched fetch(final IResolver resolver, final URI address, final Location includeLocation, final boolean lookWithinNoInclude, final Retain retain, final IErrorHandler errors) {
+		final Fetched result = new Fetched(address);
+		try {
+			read(resolver, result, resolver.resolve(address, errors), includeLocation, lookWithinNoInclude, retain, errors);
+		} catch (final ResolutionException|UnsupportedOperationException|NoSuchElementException e) {
+			errors.handle(BasicError.nowhere(e.getMessage()));
+		}
+		return result;
+	}
+	
+	/**
+	 * Read and parse a single resolved document into result, and find the includes within it
+	 */
+	private static void read(final IResolver resolver, final Fetched result, final ILocationReader loc, final Location includeLocation, final boolean lookWithinNoInclude, final Retain retain, final IErrorHandler errors) {
+		/**
+		 * A visitor which pulls out includes and sticks them in the result
 		 */
 		final INodeVisitor addressCollector = new INodeVisitor(){
 				@Override
@@ -162,19 +591,11 @@ public class Includer {
                                                                 e.getMessage()));
 									return false;
 								}
-							
-								if (dependencyGraph != null) {
-									dependencyGraph.put(seq.getLocation().name, addr);
-								}
 								
-								if (builder.containsKey(addr)) {
-								} else {
-									addrs.push(addr);
-									includeLocation.push(seq.getLocation());
-								}
+								result.includes.add(new Fetched.Include(seq.getLocation().name, addr, seq.getLocation()));
 								return false;
 							} else if (nameOfHead.equals("no-include")) {
-								return shouldLookWithinNoInclude[0];
+								return lookWithinNoInclude;
 							}
 						}
 					}
@@ -189,27 +610,35 @@ public class Includer {
 				public void atom(final Atom atom) {}
 			};
 		
-		while ((addr = addrs.poll()) != null) {
-			try {
-				final Location iloc = includeLocation.poll();
-				final ILocationReader loc = resolver.resolve(addr, errors);
-				String stringValue;
-				stringValue = IOUtils.toString(loc.getReader());
-				builder.put(addr, stringValue);
-		
-				final List<Node> nodes = Node.copyAll(Parser.source(iloc, loc.getLocation(), new StringReader(stringValue), errors));
+		try {
+			result.reader = loc;
 			
-				for (final Node n : nodes) {
-					n.accept(addressCollector);
+			final List<? extends Node> nodes;
+			switch (retain) {
+			case NODES:
+				result.content = IOUtils.toString(loc.getReader());
+				nodes = Node.copyAll(Parser.source(includeLocation, loc.getLocation(), new StringReader(result.content), errors));
+				result.nodes = ImmutableList.copyOf(nodes);
+				break;
+			case CONTENT:
+				result.content = IOUtils.toString(loc.getReader());
+				nodes = IncludeScanner.scan(includeLocation, loc.getLocation(), new StringReader(result.content), lookWithinNoInclude, errors);
+				break;
+			case READER:
+			default:
+				try (final Reader reader = loc.getReader()) {
+					nodes = IncludeScanner.scan(includeLocation, loc.getLocation(), reader, lookWithinNoInclude, errors);
 				}
-				
-				shouldLookWithinNoInclude[0] = false;
-			} catch (final IOException|ResolutionException|UnsupportedOperationException|UnfinishedExpressionException e) {
-				errors.handle(BasicError.nowhere(e.getMessage()));
+				break;
 			}
-		}
 		
-		return ImmutableMap.copyOf(builder);
+			for (final Node n : nodes) {
+				n.accept(addressCollector);
+			}
+			result.parsed = true;
+		} catch (final IOException|UnsupportedOperationException|NoSuchElementException|UnfinishedExpressionException e) {
+			errors.handle(BasicError.nowhere(e.getMessage()));
+		}
 	}
     
 	/**
@@ -223,12 +652,15 @@ public class Includer {
 		return new ISExpression() {
 			@Override
 			public void accept(final ISExpressionVisitor visitor) {
+				final Span span = Pipeline.start(Stage.INCLUDE, root);
 				try {
 					final ILocationReader reader = resolver.resolve(root, errors);
 					final ISExpression real = Parser.source(reader.getLocation(), reader.getReader(), errors);
 					real.accept(new IncludingVisitor(resolver, new ModuleFilteringVisitor(visitor), errors));
 				} catch (final ResolutionException nse) {
 					errors.handle(BasicError.nowhere("Unable to resolve" + root + " (" + nse.getMessage() + ")"));
+				} finally {
+					span.finish();
 				}
 			}
 			
@@ -285,12 +717,27 @@ public class Includer {
 		private final ModuleFilteringVisitor delegate;
 		private int filterModules = 0;
 
-		private IncludingVisitor(final IResolver resolver, final ModuleFilteringVisitor visitor, final IErrorHandler errors) {
+		IncludingVisitor(final IResolver resolver, final ModuleFilteringVisitor visitor, final IErrorHandler errors) {
 			super(visitor);
 			this.delegate = visitor;
 			this.resolver = resolver;
 			this.errors = errors;
 		}
+		
+		/**
+		 * @return the address of the document to put in place of the given include, or absent to just remove it
+		 */
+		protected Optional<URI> convert(final Seq cut) throws ResolutionException {
+			return Optional.of(resolver.convert(cut, errors));
+		}
+		
+		/**
+		 * @return the contents of the document at the given address, located as if included at includeLocation
+		 */
+		protected ISExpression read(final URI uri, final Location includeLocation) throws ResolutionException {
+			final ILocationReader reader = resolver.resolve(uri, errors);
+			return Parser.source(includeLocation, reader.getLocation(), reader.getReader(), errors);
+		}
 
 		protected boolean isFilteringModules() {
 			return filterModules > 0;
@@ -332,19 +779,19 @@ public class Includer {
 			case "include":
 			default:
 				try {
-					final URI uri = resolver.convert(cut, errors);
+					final Optional<URI> target = convert(cut);
+					if (!target.isPresent()) {
+						locate(cut.getEndLocation());
+						break;
+					}
+					final URI uri = target.get();
 					
 					if (stack.contains(uri)) {
 						if (!isFilteringModules()) {
 							errors.handle(BasicError.at(cut, uri + " recursively includes itself"));
 						}
 					} else {
-						final ILocationReader reader = resolver.resolve(uri, errors);
-						final ISExpression real = 
-							Parser.source(cut.getLocation(),
-										  reader.getLocation(), 
-										  reader.getReader(), 
-										  errors);
+						final ISExpression real = read(uri, cut.getLocation());
 						
 						// this is a bit hacky
 						stack.push(uri);
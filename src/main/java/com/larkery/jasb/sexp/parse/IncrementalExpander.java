@@ -0,0 +1,255 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+/**
+ * Keeps the expansions of a set of root scenarios up to date as the documents they include change.
+ *
+ * For each root this remembers the {@link IncludeGraph} it was built from and the resulting {@link Expansion}, and
+ * from those graphs a map from each document to the roots which depend on it. When told that some documents have
+ * changed, either by {@link #changed(Collection)} or by watching a directory, only the roots which include them are
+ * rebuilt, and only the changed documents are read again; the content of everything else comes from a
+ * {@link CachingResolver}.
+ *
+ * A root is rebuilt as a whole: every document it includes is parsed again, and its templates compiled and expanded
+ * again, whether or not they changed. The only thing which is reused is modules, if the {@link StandardSource} is given
+ * a {@link com.larkery.jasb.sexp.module.ModuleCache}.
+ *
+ * Addresses are compared after normalising them, and for file: addresses after removing any authority and trailing
+ * slash, so that a change reported as {@code file:///a/b} is seen by a root which included {@code file:/a/b/}.
+ */
+public class IncrementalExpander {
+	private final CachingResolver resolver;
+	private final StandardSource source;
+	private final Map<URI, Result> results = new LinkedHashMap<>();
+	/**
+	 * A map from each document to the roots that include it, directly or otherwise
+	 */
+	private final HashMultimap<URI, URI> dependants = HashMultimap.create();
+	private final CopyOnWriteArrayList<IListener> listeners = new CopyOnWriteArrayList<>();
+
+	public interface IListener {
+		/**
+		 * Called after a root has been rebuilt because something it includes changed
+		 */
+		public void rebuilt(final URI root, final Expansion expansion);
+	}
+
+	private static class Result {
+		final IncludeGraph graph;
+		final Expansion expansion;
+
+		Result(final IncludeGraph graph, final Expansion expansion) {
+			this.graph = graph;
+			this.expansion = expansion;
+		}
+	}
+
+	/**
+	 * @param resolver the resolver to read documents with
+	 * @param source the source to expand include graphs with; its own resolver is not used.
+	 */
+	public IncrementalExpander(final IResolver resolver, final StandardSource source) {
+		this.resolver = CachingResolver.builder(resolver).build();
+		this.source = source;
+	}
+
+	public void addListener(final IListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(final IListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return the expansion of the given root, building it if it has not been built before
+	 */
+	public synchronized Expansion get(final URI root) {
+		Result result = results.get(root);
+		if (result == null) {
+			result = build(root);
+		}
+		return result.expansion;
+	}
+
+	/**
+	 * @return the include graph the current expansion of root was built from, building it if need be
+	 */
+	public synchronized IncludeGraph getGraph(final URI root) {
+		get(root);
+		return results.get(root).graph;
+	}
+
+	/**
+	 * @return the roots which currently depend on the given document
+	 */
+	public synchronized Set<URI> getDependants(final URI document) {
+		return ImmutableSet.copyOf(dependants.get(normalise(document)));
+	}
+
+	/**
+	 * Stop keeping the expansion of the given root up to date
+	 */
+	public synchronized void forget(final URI root) {
+		final Result result = results.remove(root);
+		if (result != null) {
+			unlink(root, result.graph);
+		}
+	}
+
+	/**
+	 * Tell this that the given documents have changed, and rebuild any roots which include them.
+	 *
+	 * @return the roots which were rebuilt
+	 */
+	public Set<URI> changed(final Collection<URI> documents) {
+		final Map<URI, Expansion> rebuilt = new LinkedHashMap<>();
+		synchronized (this) {
+			final Set<URI> changed = new HashSet<>();
+			final Set<URI> affected = new LinkedHashSet<>();
+			for (final URI document : documents) {
+				resolver.invalidate(document);
+				changed.add(normalise(document));
+				affected.addAll(dependants.get(normalise(document)));
+			}
+
+			// the resolver has the addresses as the roots included them, which may be written differently
+			for (final URI root : affected) {
+				for (final URI document : addresses(root, results.get(root).graph)) {
+					if (changed.contains(normalise(document))) {
+						resolver.invalidate(document);
+					}
+				}
+			}
+
+			for (final URI root : affected) {
+				rebuilt.put(root, build(root).expansion);
+			}
+		}
+
+		for (final Map.Entry<URI, Expansion> e : rebuilt.entrySet()) {
+			for (final IListener listener : listeners) {
+				listener.rebuilt(e.getKey(), e.getValue());
+			}
+		}
+
+		return rebuilt.keySet();
+	}
+
+	private Result build(final URI root) {
+		final Result old = results.get(root);
+		if (old != null) {
+			unlink(root, old.graph);
+		}
+
+		final ErrorCollector errors = new ErrorCollector();
+		final IncludeGraph graph = IncludeGraph.build(resolver, root, errors);
+		final Expansion expansion = source.expand(graph);
+		final Result result = new Result(graph, expansion.withErrorsFirst(errors.getErrors()));
+
+		results.put(root, result);
+		for (final URI document : addresses(root, graph)) {
+			dependants.put(normalise(document), root);
+		}
+
+		return result;
+	}
+
+	private void unlink(final URI root, final IncludeGraph graph) {
+		for (final URI document : addresses(root, graph)) {
+			dependants.remove(normalise(document), root);
+		}
+	}
+
+	/**
+	 * @return the addresses a root depends on: itself, what it includes, and the things it tried to include but which
+	 * could not be read, as they may appear later
+	 */
+	private static Set<URI> addresses(final URI root, final IncludeGraph graph) {
+		return ImmutableSet.<URI>builder()
+				.add(root)
+				.addAll(graph.getDocuments().keySet())
+				.addAll(graph.getDependencies().values())
+				.build();
+	}
+
+	/**
+	 * @return the address in a form which is the same however it was written
+	 */
+	static URI normalise(final URI address) {
+		final URI normal = address.normalize();
+		if ("file".equals(normal.getScheme()) && !normal.isOpaque()
+				&& (normal.getRawAuthority() == null || normal.getRawAuthority().isEmpty() || normal.getRawAuthority().equals("localhost"))) {
+			String path = normal.getRawPath();
+			while (path.length() > 1 && path.endsWith("/")) {
+				path = path.substring(0, path.length() - 1);
+			}
+			return URI.create("file://" + path);
+		}
+		return normal;
+	}
+
+	/**
+	 * Watch the given directory, and call {@link #changed(Collection)} with the file: address of anything in it which
+	 * is created, modified or deleted. Changes are picked up on a daemon thread until the result is closed.
+	 */
+	public Closeable watch(final Path directory) throws IOException {
+		final WatchService watcher = FileSystems.getDefault().newWatchService();
+		directory.register(watcher,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final WatchKey key = watcher.take();
+						final Set<URI> changes = new HashSet<>();
+						for (final WatchEvent<?> event : key.pollEvents()) {
+							if (event.context() instanceof Path) {
+								changes.add(directory.resolve((Path) event.context()).toUri());
+							}
+						}
+						if (!changes.isEmpty()) {
+							changed(changes);
+						}
+						if (!key.reset()) {
+							return;
+						}
+					}
+				} catch (final InterruptedException | ClosedWatchServiceException e) {
+					return;
+				}
+			}
+		}, "jasb-watch " + directory);
+		thread.setDaemon(true);
+		thread.start();
+
+		return watcher;
+	}
+}
@@ -13,13 +13,27 @@ import com.larkery.jasb.sexp.SExpressions;
 import com.larkery.jasb.sexp.Seq;
 import com.larkery.jasb.sexp.errors.BasicError;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
+import com.larkery.jasb.sexp.parse.Pipeline.Span;
 
 public class MacroExpander implements IMacroExpander {
 	private final Map<String, IMacro> macros;
 	private final IErrorHandler errors;
+	private final IMacroInterceptor interceptor;
+
+	/**
+	 * Holds the interceptor of whichever intercepted expansion is currently being visited on this thread, so that
+	 * expanders created by macros during that visit can inherit it.
+	 */
+	private static final ThreadLocal<IMacroInterceptor> ACTIVE_INTERCEPTOR = new ThreadLocal<>();
 
 	public static ISExpression expand(final List<IMacro> macros, final ISExpression input, final IErrorHandler errors) {
-		return new MacroExpander(macros, errors).expand(input);
+		final IMacroInterceptor active = ACTIVE_INTERCEPTOR.get();
+		return expand(macros, input, errors, active == null ? IMacroInterceptor.NONE : active);
+	}
+	
+	public static ISExpression expand(final List<IMacro> macros, final ISExpression input, final IErrorHandler errors, final IMacroInterceptor interceptor) {
+		return new MacroExpander(macros, errors, interceptor).expand(input);
 	}
 	
 	@Override
@@ -27,8 +41,9 @@ public class MacroExpander implements IMacroExpander {
 		return new ExpandedExpression(transformed, 1);
 	}
 
-	private MacroExpander(final List<IMacro> macros, final IErrorHandler errors) {
+	private MacroExpander(final List<IMacro> macros, final IErrorHandler errors, final IMacroInterceptor interceptor) {
 		this.errors = errors;
+		this.interceptor = interceptor;
 
 		final ImmutableMap.Builder<String, IMacro> b = ImmutableMap.builder();
 
@@ -55,6 +70,38 @@ public class MacroExpander implements IMacroExpander {
 
 		@Override
 		public void accept(final ISExpressionVisitor visitor) {
+			// only the outermost expansion is reported, as expanders are created within macros all the time
+			if (atDepth == 0 && !Pipeline.isRunning(Stage.EXPAND)) {
+				final Span span = Pipeline.start(Stage.EXPAND, null);
+				try {
+					intercept(span.countNodes(visitor));
+				} finally {
+					span.finish();
+				}
+			} else {
+				intercept(visitor);
+			}
+		}
+		
+		private void intercept(final ISExpressionVisitor visitor) {
+			if (interceptor == IMacroInterceptor.NONE) {
+				visit(visitor);
+			} else {
+				final IMacroInterceptor outer = ACTIVE_INTERCEPTOR.get();
+				ACTIVE_INTERCEPTOR.set(interceptor);
+				try {
+					visit(visitor);
+				} finally {
+					if (outer == null) {
+						ACTIVE_INTERCEPTOR.remove();
+					} else {
+						ACTIVE_INTERCEPTOR.set(outer);
+					}
+				}
+			}
+		}
+		
+		private void visit(final ISExpressionVisitor visitor) {
 			unexpanded.accept(new Editor(visitor) {
 				int depth = 0;
 				
@@ -93,7 +140,7 @@ public class MacroExpander implements IMacroExpander {
 							final IMacro macro = macros.get(s);
 							
 							try {
-								return macro.transform(unexpanded, MacroExpander.this,  errors);
+								return interceptor.transform(macro, unexpanded, MacroExpander.this, errors);
 							} catch (final StackOverflowError soe) {
 								errors.handle(BasicError.at(first, "Maximum macro expansion depth reached within " + s));
 							}
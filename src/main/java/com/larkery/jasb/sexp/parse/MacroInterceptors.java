@@ -0,0 +1,63 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+
+public class MacroInterceptors {
+	/**
+	 * @return an interceptor which passes each invocation through the given interceptors in order, so the first one
+	 * given sees the invocation first and the last one calls the macro.
+	 */
+	public static IMacroInterceptor chain(final List<IMacroInterceptor> interceptors) {
+		IMacroInterceptor result = IMacroInterceptor.NONE;
+		for (int i = interceptors.size() - 1; i >= 0; i--) {
+			final IMacroInterceptor interceptor = interceptors.get(i);
+			if (result == IMacroInterceptor.NONE) {
+				result = interceptor;
+			} else if (interceptor != IMacroInterceptor.NONE) {
+				result = new Chained(interceptor, result);
+			}
+		}
+		return result;
+	}
+
+	private static class Chained implements IMacroInterceptor {
+		private final IMacroInterceptor outer;
+		private final IMacroInterceptor inner;
+
+		Chained(final IMacroInterceptor outer, final IMacroInterceptor inner) {
+			this.outer = outer;
+			this.inner = inner;
+		}
+
+		@Override
+		public ISExpression transform(final IMacro macro, final Seq invocation, final IMacroExpander expander, final IErrorHandler errors) {
+			return outer.transform(new IMacro() {
+				@Override
+				public String getName() {
+					return macro.getName();
+				}
+
+				@Override
+				public ISExpression transform(final Seq input, final IMacroExpander expander, final IErrorHandler errors) {
+					return inner.transform(macro, input, expander, errors);
+				}
+
+				@Override
+				public MacroModel getModel() {
+					return macro.getModel();
+				}
+
+				@Override
+				public Optional<Node> getDefiningNode() {
+					return macro.getDefiningNode();
+				}
+			}, invocation, expander, errors);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+
+/**
+ * An {@link ILocationReader} for a local file which maps the file into memory rather than reading it, and decodes it a
+ * few thousand characters at a time as the parser asks for them. The whole file is never held as a string, so large
+ * generated files cost no more heap than the parser's own buffers.
+ *
+ * The file is mapped when it is first read, and the mapping is shared by every reader this produces, so holding on to
+ * one of these is a cheap way to keep a file's content around.
+ */
+public class MappedLocationReader implements ILocationReader {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final URI location;
+	private final Charset charset;
+	private MappedByteBuffer buffer;
+
+	public MappedLocationReader(final URI location, final Charset charset) {
+		this.location = location;
+		this.charset = charset;
+	}
+
+	@Override
+	public URI getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return the number of bytes in the file
+	 */
+	public long size() {
+		return map().capacity();
+	}
+
+	private synchronized ByteBuffer map() {
+		if (buffer == null) {
+			try (final FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ)) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} catch (final IOException | IllegalArgumentException e) {
+				throw new NoSuchElementException("Unable to map " + location + " (" + e.getMessage() + ")");
+			}
+		}
+		return buffer.duplicate();
+	}
+
+	@Override
+	public Reader getReader() {
+		return new DecodingReader(map(), charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE));
+	}
+
+	/**
+	 * @return true if the given address is a local file which can be mapped, which it cannot be if it is 2GB or more
+	 */
+	public static boolean canMap(final URI location) {
+		if (!"file".equals(location.getScheme())) return false;
+		final File file = new File(location);
+		return file.isFile() && file.length() <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Reads characters by decoding a byte buffer as it goes
+	 */
+	private static class DecodingReader extends Reader {
+		private final ByteBuffer bytes;
+		private final CharsetDecoder decoder;
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		private boolean finished = false;
+
+		DecodingReader(final ByteBuffer bytes, final CharsetDecoder decoder) {
+			this.bytes = bytes;
+			this.decoder = decoder;
+			chars.flip();
+		}
+
+		@Override
+		public int read(final char[] cbuf, final int off, final int len) throws IOException {
+			if (len == 0) return 0;
+			if (!chars.hasRemaining() && !fill()) return -1;
+			final int n = Math.min(len, chars.remaining());
+			chars.get(cbuf, off, n);
+			return n;
+		}
+
+		private boolean fill() throws IOException {
+			chars.clear();
+			while (chars.position() == 0 && !finished) {
+				final CoderResult result = decoder.decode(bytes, chars, true);
+				if (result.isUnderflow()) {
+					decoder.flush(chars);
+					finished = true;
+				} else if (result.isError()) {
+					result.throwException();
+				}
+			}
+			chars.flip();
+			return chars.hasRemaining();
+		}
+
+		@Override
+		public void close() {
+			finished = true;
+			chars.clear();
+			chars.flip();
+		}
+	}
+}
@@ -7,27 +7,41 @@ import com.larkery.jasb.sexp.ISExpression;
 import com.larkery.jasb.sexp.ISExpressionVisitor;
 import com.larkery.jasb.sexp.Location;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Measure;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
+import com.larkery.jasb.sexp.parse.Pipeline.Span;
+import com.larkery.jasb.sexp.parse2.Lexer;
+import com.larkery.jasb.sexp.parse2.LookaheadLexer;
 import com.larkery.jasb.sexp.parse2.PolishParser;
 
 public class Parser {
 	public static ISExpression source(final URI location, final Reader reader, final IErrorHandler errors) {
-		return new ISExpression() {
-			@Override
-			public void accept(final ISExpressionVisitor visitor) {
-				final PolishParser pp = new PolishParser(location, reader);
-				pp.parse(visitor);
-			}
-		};
+		return source(null, location, reader, errors);
 	}
 
 	public static ISExpression source(final Location location, final URI location2, final Reader reader, final IErrorHandler errors) {
 		return new ISExpression() {
 			@Override
 			public void accept(final ISExpressionVisitor visitor) {
-				final PolishParser pp = new PolishParser(location, location2, reader);
-				pp.parse(visitor);
+				parse(location, location2, reader, visitor);
 			}
 		};
 	}
 
+	private static void parse(final Location location, final URI uri, final Reader reader, final ISExpressionVisitor visitor) {
+		// started before the lexer, which reads the first lexeme as it is made
+		final Span span = Pipeline.start(Stage.PARSE, uri);
+		Lexer lexer = null;
+		try {
+			lexer = new Lexer(location, uri, reader);
+			final PolishParser pp = new PolishParser(new LookaheadLexer(lexer));
+			pp.parse(span.countNodes(visitor));
+		} finally {
+			if (lexer != null) {
+				span.count(Measure.CHARACTERS, lexer.getCharacterCount());
+				span.count(Measure.LEXEMES, lexer.getLexemeCount());
+			}
+			span.finish();
+		}
+	}
 }
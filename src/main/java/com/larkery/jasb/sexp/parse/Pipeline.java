@@ -0,0 +1,190 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.util.concurrent.Callable;
+
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Measure;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
+
+/**
+ * Holds the {@link IPipelineListener} for the current thread, and lets the stages of the pipeline report to it.
+ *
+ * When no listener is installed, {@link #start(Stage, Object)} hands back a span which does nothing, so the cost of
+ * the instrumentation is one thread local lookup per stage.
+ */
+public class Pipeline {
+	private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * A listener installed on a thread; closing this puts back whatever was installed before.
+	 */
+	public static class Scope implements AutoCloseable {
+		private final IPipelineListener listener;
+		private final Scope outer;
+		private final int[] running = new int[Stage.values().length];
+		private boolean closed = false;
+
+		private Scope(final IPipelineListener listener, final Scope outer) {
+			this.listener = listener;
+			this.outer = outer;
+		}
+
+		@Override
+		public void close() {
+			if (closed) return;
+			closed = true;
+			if (outer == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(outer);
+			}
+		}
+	}
+
+	/**
+	 * A single run of a stage, which adds up what it has done and reports it when finished
+	 */
+	public static class Span {
+		private static final Span NONE = new Span(null, null, null);
+
+		private final Scope scope;
+		private final Stage stage;
+		private final Object subject;
+		private final long start;
+		private final long[] counts;
+		private boolean finished = false;
+
+		private Span(final Scope scope, final Stage stage, final Object subject) {
+			this.scope = scope;
+			this.stage = stage;
+			this.subject = subject;
+			if (scope == null) {
+				this.start = 0;
+				this.counts = null;
+			} else {
+				this.counts = new long[Measure.values().length];
+				scope.running[stage.ordinal()]++;
+				scope.listener.started(stage, subject);
+				this.start = System.nanoTime();
+			}
+		}
+
+		public void count(final Measure measure, final long amount) {
+			if (scope == null) return;
+			counts[measure.ordinal()] += amount;
+		}
+
+		/**
+		 * @return a visitor which counts the atoms and lists passing through it into {@link Measure#NODES}, or just the
+		 * given visitor if nothing is listening
+		 */
+		public ISExpressionVisitor countNodes(final ISExpressionVisitor visitor) {
+			if (scope == null) return visitor;
+			return new ISExpressionVisitor() {
+				@Override
+				public void locate(final Location loc) {
+					visitor.locate(loc);
+				}
+
+				@Override
+				public void open(final Delim delimeter) {
+					counts[Measure.NODES.ordinal()]++;
+					visitor.open(delimeter);
+				}
+
+				@Override
+				public void atom(final String string) {
+					counts[Measure.NODES.ordinal()]++;
+					visitor.atom(string);
+				}
+
+				@Override
+				public void comment(final String text) {
+					visitor.comment(text);
+				}
+
+				@Override
+				public void close(final Delim delimeter) {
+					visitor.close(delimeter);
+				}
+			};
+		}
+
+		public void finish() {
+			if (scope == null || finished) return;
+			finished = true;
+			final long elapsed = System.nanoTime() - start;
+			scope.running[stage.ordinal()]--;
+			for (final Measure measure : Measure.values()) {
+				if (counts[measure.ordinal()] != 0) {
+					scope.listener.counted(stage, subject, measure, counts[measure.ordinal()]);
+				}
+			}
+			scope.listener.finished(stage, subject, elapsed);
+		}
+	}
+
+	/**
+	 * Report everything which happens on this thread to the given listener, until the result is closed.
+	 */
+	public static Scope install(final IPipelineListener listener) {
+		final Scope scope = new Scope(listener, CURRENT.get());
+		CURRENT.set(scope);
+		return scope;
+	}
+
+	/**
+	 * @return the listener for this thread, or {@link IPipelineListener#NONE}
+	 */
+	public static IPipelineListener listener() {
+		final Scope scope = CURRENT.get();
+		return scope == null ? IPipelineListener.NONE : scope.listener;
+	}
+
+	/**
+	 * @return true if a listener is installed and the given stage is already running on this thread
+	 */
+	public static boolean isRunning(final Stage stage) {
+		final Scope scope = CURRENT.get();
+		return scope != null && scope.running[stage.ordinal()] > 0;
+	}
+
+	/**
+	 * Start a run of the given stage; the result must be finished, normally in a finally block.
+	 */
+	public static Span start(final Stage stage, final Object subject) {
+		final Scope scope = CURRENT.get();
+		if (scope == null) {
+			return Span.NONE;
+		} else {
+			return new Span(scope, stage, subject);
+		}
+	}
+
+	/**
+	 * @return a callable which runs the given one with this thread's listener installed, for handing work to another
+	 * thread
+	 */
+	public static <T> Callable<T> propagate(final Callable<T> callable) {
+		final Scope scope = CURRENT.get();
+		if (scope == null) return callable;
+		final IPipelineListener listener = scope.listener;
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				if (listener() == listener) {
+					// already installed, if the executor runs tasks in the calling thread
+					return callable.call();
+				}
+				final Scope scope = install(listener);
+				try {
+					return callable.call();
+				} finally {
+					scope.close();
+				}
+			}
+		};
+	}
+}
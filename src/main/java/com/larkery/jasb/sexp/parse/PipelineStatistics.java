@@ -0,0 +1,184 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link IPipelineListener} which adds up, for each stage, the number of runs, the time spent in them and
+ * everything they counted.
+ *
+ * As stages nest, two times are kept: the total time, which includes stages running inside a stage but only counts
+ * a stage once if it runs inside itself, and the self time, which excludes any stage running inside it. The self
+ * times of all the stages add up to the time spent in the outermost stages.
+ *
+ * Statistics may be gathered from several threads at once. Typically one is installed for each request, and its
+ * report written out when the request is done.
+ */
+public class PipelineStatistics implements IPipelineListener {
+	private final Map<Stage, Stats> stats = new EnumMap<>(Stage.class);
+
+	private final ThreadLocal<Deque<Frame>> stacks = new ThreadLocal<Deque<Frame>>() {
+		@Override
+		protected Deque<Frame> initialValue() {
+			return new ArrayDeque<>();
+		}
+	};
+
+	public static class Stats {
+		private final Stage stage;
+		private long runs;
+		private long totalNanos;
+		private long selfNanos;
+		private final long[] counts = new long[Measure.values().length];
+
+		private Stats(final Stage stage) {
+			this.stage = stage;
+		}
+
+		private Stats(final Stats other) {
+			this.stage = other.stage;
+			this.runs = other.runs;
+			this.totalNanos = other.totalNanos;
+			this.selfNanos = other.selfNanos;
+			System.arraycopy(other.counts, 0, counts, 0, counts.length);
+		}
+
+		public Stage getStage() {
+			return stage;
+		}
+
+		public long getRuns() {
+			return runs;
+		}
+
+		/**
+		 * @return time spent in this stage, including stages nested within it
+		 */
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		/**
+		 * @return time spent in this stage, excluding stages nested within it
+		 */
+		public long getSelfNanos() {
+			return selfNanos;
+		}
+
+		public long getCount(final Measure measure) {
+			return counts[measure.ordinal()];
+		}
+	}
+
+	private static class Frame {
+		final Stage stage;
+		final boolean outermost;
+		long childNanos;
+
+		Frame(final Stage stage, final boolean outermost) {
+			this.stage = stage;
+			this.outermost = outermost;
+		}
+	}
+
+	@Override
+	public void started(final Stage stage, final Object subject) {
+		final Deque<Frame> stack = stacks.get();
+		boolean outermost = true;
+		for (final Frame f : stack) {
+			if (f.stage == stage) {
+				outermost = false;
+				break;
+			}
+		}
+		stack.push(new Frame(stage, outermost));
+	}
+
+	@Override
+	public synchronized void counted(final Stage stage, final Object subject, final Measure measure, final long amount) {
+		get(stage).counts[measure.ordinal()] += amount;
+	}
+
+	@Override
+	public void finished(final Stage stage, final Object subject, final long nanos) {
+		final Deque<Frame> stack = stacks.get();
+		Frame frame;
+		// anything above the frame for this stage never finished, so we discard it
+		do {
+			frame = stack.poll();
+		} while (frame != null && frame.stage != stage);
+
+		final Frame parent = stack.peek();
+		if (parent != null) {
+			parent.childNanos += nanos;
+		}
+
+		synchronized (this) {
+			final Stats s = get(stage);
+			s.runs++;
+			if (frame == null) {
+				s.selfNanos += nanos;
+				s.totalNanos += nanos;
+			} else {
+				s.selfNanos += nanos - frame.childNanos;
+				if (frame.outermost) {
+					s.totalNanos += nanos;
+				}
+			}
+		}
+	}
+
+	private Stats get(final Stage stage) {
+		Stats s = stats.get(stage);
+		if (s == null) {
+			s = new Stats(stage);
+			stats.put(stage, s);
+		}
+		return s;
+	}
+
+	/**
+	 * @return a copy of the statistics for each stage which has run, in pipeline order
+	 */
+	public synchronized List<Stats> getStats() {
+		final List<Stats> result = new ArrayList<>();
+		for (final Stats s : stats.values()) {
+			result.add(new Stats(s));
+		}
+		return result;
+	}
+
+	/**
+	 * @return a copy of the statistics for the given stage
+	 */
+	public synchronized Stats getStats(final Stage stage) {
+		return new Stats(get(stage));
+	}
+
+	/**
+	 * Write a table of the results, one row per stage, with times in milliseconds.
+	 */
+	public void writeReport(final Appendable out) throws IOException {
+		out.append(String.format("%-10s %8s %12s %12s", "stage", "runs", "total ms", "self ms"));
+		for (final Measure m : Measure.values()) {
+			out.append(String.format(" %12s", m.name().toLowerCase()));
+		}
+		out.append(String.format("%n"));
+		for (final Stats s : getStats()) {
+			out.append(String.format("%-10s %8d %12.3f %12.3f", s.stage.name().toLowerCase(), s.runs, s.totalNanos / 1e6, s.selfNanos / 1e6));
+			for (final Measure m : Measure.values()) {
+				out.append(String.format(" %12d", s.getCount(m)));
+			}
+			out.append(String.format("%n"));
+		}
+	}
+
+	public synchronized void clear() {
+		stats.clear();
+	}
+}
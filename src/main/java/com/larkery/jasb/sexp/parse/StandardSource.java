@@ -2,19 +2,29 @@ package com.larkery.jasb.sexp.parse;
 
 import java.net.URI;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import com.google.common.base.Equivalence;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.larkery.jasb.sexp.Delim;
 import com.larkery.jasb.sexp.ISExpression;
 import com.larkery.jasb.sexp.ISExpressionSource;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
 import com.larkery.jasb.sexp.Node;
 import com.larkery.jasb.sexp.NodeBuilder;
 import com.larkery.jasb.sexp.SExpressions;
 import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.ExpansionLimitException;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
 import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
 import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
 import com.larkery.jasb.sexp.module.Module;
+import com.larkery.jasb.sexp.module.ModuleCache;
+import com.larkery.jasb.sexp.parse.Includer.IAsyncResolver;
 import com.larkery.jasb.sexp.parse.Includer.IResolver;
 import com.larkery.jasb.sexp.template.Templates;
 
@@ -28,14 +38,134 @@ import com.larkery.jasb.sexp.template.Templates;
  */
 public class StandardSource implements ISExpressionSource {
 	private final IResolver resolver;
+	private final Optional<IAsyncResolver> asyncResolver;
 	private final boolean expandTemplates;
 	private final List<IMacro> extraMacros;
+	private final IMacroInterceptor interceptor;
+	private final Optional<ExpansionLimits> limits;
+	private final Optional<ModuleCache> moduleCache;
+	private final boolean lazyModules;
+	private final boolean inlineTemplates;
+	private final Optional<ExpansionCache> expansionCache;
 	
 	StandardSource(final IResolver resolver, final boolean expandTemplates, final List<IMacro> extraMacros) {
+		this(builder(resolver).withMacros(extraMacros.toArray(new IMacro[extraMacros.size()])).withTemplates(expandTemplates));
+	}
+	
+	private StandardSource(final Builder builder) {
 		super();
-		this.resolver = resolver;
-		this.expandTemplates = expandTemplates;
-		this.extraMacros = ImmutableList.copyOf(extraMacros);
+		this.resolver = builder.resolver;
+		this.asyncResolver = builder.asyncResolver;
+		this.expandTemplates = builder.expandTemplates;
+		this.extraMacros = builder.extraMacros.build();
+		this.interceptor = MacroInterceptors.chain(builder.interceptors.build());
+		this.limits = builder.limits;
+		this.moduleCache = builder.moduleCache;
+		this.lazyModules = builder.lazyModules;
+		this.inlineTemplates = builder.inlineTemplates;
+		this.expansionCache = builder.expansionCache;
+	}
+	
+	public static Builder builder(final IResolver resolver) {
+		return new Builder(resolver, Optional.<IAsyncResolver>absent());
+	}
+	
+	/**
+	 * Make a source which fetches all the includes for a root up front using the given resolver, so that slow
+	 * includes are fetched at the same time as others are parsed, and then expands them.
+	 */
+	public static Builder builder(final IAsyncResolver resolver) {
+		return new Builder(Includer.blocking(resolver), Optional.of(resolver));
+	}
+	
+	public static class Builder {
+		private final IResolver resolver;
+		private final Optional<IAsyncResolver> asyncResolver;
+		private boolean expandTemplates = true;
+		private final ImmutableList.Builder<IMacro> extraMacros = ImmutableList.builder();
+		private final ImmutableList.Builder<IMacroInterceptor> interceptors = ImmutableList.builder();
+		private Optional<ExpansionLimits> limits = Optional.absent();
+		private Optional<ModuleCache> moduleCache = Optional.absent();
+		private boolean lazyModules = false;
+		private boolean inlineTemplates = false;
+		private Optional<ExpansionCache> expansionCache = Optional.absent();
+		
+		private Builder(final IResolver resolver, final Optional<IAsyncResolver> asyncResolver) {
+			this.resolver = resolver;
+			this.asyncResolver = asyncResolver;
+		}
+		
+		public Builder withMacros(final IMacro... macros) {
+			extraMacros.add(macros);
+			return this;
+		}
+		
+		public Builder withoutTemplates() {
+			return withTemplates(false);
+		}
+		
+		private Builder withTemplates(final boolean expandTemplates) {
+			this.expandTemplates = expandTemplates;
+			return this;
+		}
+		
+		/**
+		 * Pass every macro invocation through the given interceptor - for example an {@link ExpansionProfiler}. If
+		 * several interceptors are given, each invocation goes through them in the order they were given.
+		 */
+		public Builder withInterceptor(final IMacroInterceptor interceptor) {
+			this.interceptors.add(interceptor);
+			return this;
+		}
+		
+		/**
+		 * Abandon expansion with an error if any macro invocation or top-level form produces more output than the
+		 * given limits allow.
+		 */
+		public Builder withLimits(final ExpansionLimits limits) {
+			this.limits = Optional.of(limits);
+			return withInterceptor(limits);
+		}
+		
+		/**
+		 * Look up compiled modules in the given cache, and put any newly compiled modules into it. The cache may be shared
+		 * by any number of sources.
+		 */
+		public Builder withModuleCache(final ModuleCache moduleCache) {
+			this.moduleCache = Optional.of(moduleCache);
+			return this;
+		}
+		
+		/**
+		 * Only rename and parse templates defined in modules when they are first invoked, rather than all of them up
+		 * front. Errors in module templates which are never used will not be reported.
+		 */
+		public Builder withLazyModules() {
+			this.lazyModules = true;
+			return this;
+		}
+		
+		/**
+		 * Partially evaluate template bodies when they are defined, so that invocations of other templates which do
+		 * not depend on any arguments are only expanded once.
+		 */
+		public Builder withInlinedTemplates() {
+			this.inlineTemplates = true;
+			return this;
+		}
+		
+		/**
+		 * Reuse the results of {@link StandardSource#expand(URI)} from the given cache whilst the documents they came from
+		 * are unchanged.
+		 */
+		public Builder withExpansionCache(final ExpansionCache expansionCache) {
+			this.expansionCache = Optional.of(expansionCache);
+			return this;
+		}
+		
+		public StandardSource build() {
+			return new StandardSource(this);
+		}
 	}
 
 	public static class Expansion {
@@ -49,6 +179,16 @@ public class StandardSource implements ISExpressionSource {
 			this.extraMacros = extraMacros;
 			this.errors = errors;
 		}
+		
+		/**
+		 * @return this expansion, with the given errors ahead of its own
+		 */
+		Expansion withErrorsFirst(final List<IError> earlier) {
+			if (earlier.isEmpty()) {
+				return this;
+			}
+			return new Expansion(nodes, extraMacros, ImmutableList.<IError>builder().addAll(earlier).addAll(errors).build());
+		}
 	}
 	
 	public static final ISExpressionSource create(final IResolver resolver, final IMacro...extraMacros) {
@@ -56,31 +196,180 @@ public class StandardSource implements ISExpressionSource {
 	}
 	
 	public static final Expansion expand(final URI root, final IResolver resolver, final IMacro...extraMacros) {
-		final StandardSource s = new StandardSource(resolver, true, ImmutableList.copyOf(extraMacros));
+		return new StandardSource(resolver, true, ImmutableList.copyOf(extraMacros)).expand(root);
+	}
+	
+	/**
+	 * Read, include and fully expand everything reachable from the given root
+	 */
+	public Expansion expand(final URI root) {
+		if (expansionCache.isPresent()) {
+			return expansionCache.get().expand(this, resolver, root);
+		}
+		
 		final ImmutableList.Builder<IMacro> macros = ImmutableList.builder();
 		final ErrorCollector errors = new ErrorCollector();
 		
 		try {
-			final List<Node> nodes = Node.copyAll(s.get(root, errors, macros));
+			final List<Node> nodes = Node.copyAll(get(root, errors, macros));
 			return new Expansion(nodes, macros.build(), errors.getErrors());
 		} catch (final UnfinishedExpressionException e) {
 			errors.handle(e.getError());
+		} catch (final ExpansionLimitException e) {
+			for (final IError error : e.getErrors()) {
+				errors.handle(error);
+			}
 		}
 		return new Expansion(Collections.<Node>emptyList(), macros.build(), errors.getErrors());
 	}
 	
-	public ISExpression get(final URI address, final IErrorHandler errors, final ImmutableList.Builder<IMacro> macros) {
-		ISExpression source = Includer.source(resolver, address, errors);
+	/**
+	 * Receives fully expanded top-level forms from {@link StandardSource#stream(URI, IFormConsumer)}
+	 */
+	public interface IFormConsumer {
+		public void form(final Node form);
+	}
+	
+	/**
+	 * As {@link #expand(URI)}, except that each top-level form is given to the consumer as soon as it has been expanded,
+	 * rather than all of them being collected into a list. The expanded output is never all in memory at once, although
+	 * the unexpanded input is, as templates can be defined after they are used.
+	 * 
+	 * @return an expansion with no nodes, holding the macros and errors
+	 */
+	public Expansion stream(final URI root, final IFormConsumer consumer) {
+		final ImmutableList.Builder<IMacro> macros = ImmutableList.builder();
+		final ErrorCollector errors = new ErrorCollector();
+		
+		try {
+			final FormSplitter splitter = new FormSplitter(consumer);
+			get(root, errors, macros).accept(splitter);
+			splitter.finish();
+		} catch (final UnfinishedExpressionException e) {
+			errors.handle(e.getError());
+		} catch (final ExpansionLimitException e) {
+			for (final IError error : e.getErrors()) {
+				errors.handle(error);
+			}
+		}
+		return new Expansion(Collections.<Node>emptyList(), macros.build(), errors.getErrors());
+	}
+	
+	/**
+	 * Builds each top-level form it sees and passes it on
+	 */
+	private static class FormSplitter implements ISExpressionVisitor {
+		private final IFormConsumer consumer;
+		private NodeBuilder builder = NodeBuilder.create();
+		private Location here;
+		private int depth = 0;
 		
-		final Module module = new Module();
+		FormSplitter(final IFormConsumer consumer) {
+			this.consumer = consumer;
+		}
+		
+		@Override
+		public void locate(final Location loc) {
+			here = loc;
+			builder.locate(loc);
+		}
+		
+		@Override
+		public void open(final Delim delimeter) {
+			builder.open(delimeter);
+			depth++;
+		}
+		
+		@Override
+		public void close(final Delim delimeter) {
+			builder.close(delimeter);
+			depth--;
+			if (depth == 0) flush();
+		}
+		
+		@Override
+		public void atom(final String string) {
+			builder.atom(string);
+			if (depth == 0) flush();
+		}
+		
+		@Override
+		public void comment(final String text) {
+			builder.comment(text);
+			if (depth == 0) flush();
+		}
+		
+		private void flush() {
+			final List<Node> forms;
+			try {
+				forms = builder.getAll();
+			} catch (final UnfinishedExpressionException e) {
+				throw new IllegalStateException("A top-level form was unfinished at depth 0", e);
+			}
+			builder = NodeBuilder.create();
+			builder.locate(here);
+			for (final Node form : forms) {
+				consumer.form(form);
+			}
+		}
+		
+		void finish() throws UnfinishedExpressionException {
+			if (depth > 0) {
+				builder.getAll();
+			}
+		}
+	}
+	
+	/**
+	 * Include and fully expand the given graph, without going back to the resolver
+	 */
+	public Expansion expand(final IncludeGraph graph) {
+		final ImmutableList.Builder<IMacro> macros = ImmutableList.builder();
+		final ErrorCollector errors = new ErrorCollector();
+		
+		try {
+			final List<Node> nodes = Node.copyAll(get(graph, errors, macros));
+			return new Expansion(nodes, macros.build(), errors.getErrors());
+		} catch (final UnfinishedExpressionException e) {
+			errors.handle(e.getError());
+		} catch (final ExpansionLimitException e) {
+			for (final IError error : e.getErrors()) {
+				errors.handle(error);
+			}
+		}
+		return new Expansion(Collections.<Node>emptyList(), macros.build(), errors.getErrors());
+	}
+	
+	public ISExpression get(final URI address, final IErrorHandler errors, final ImmutableList.Builder<IMacro> macros) {
+		if (asyncResolver.isPresent()) {
+			return get(IncludeGraph.build(asyncResolver.get(), address, errors), errors, macros);
+		} else {
+			return expand(Includer.source(resolver, address, errors), errors, macros);
+		}
+	}
+	
+	public ISExpression get(final IncludeGraph graph, final IErrorHandler errors, final ImmutableList.Builder<IMacro> macros) {
+		return expand(graph.source(errors), errors, macros);
+	}
+	
+	private ISExpression expand(ISExpression source, final IErrorHandler errors, final ImmutableList.Builder<IMacro> macros) {
+		final Module module = new Module(moduleCache, lazyModules);
 		if (expandTemplates) {
 			// rewrite modules
 			
-			source = MacroExpander.expand(ImmutableList.<IMacro>of(module), source, errors);
+			source = MacroExpander.expand(ImmutableList.<IMacro>of(module), source, errors, interceptor);
 			
 			final NodeBuilder output = NodeBuilder.create();
 			
-			final List<IMacro> templates = Templates.extract(source, output, errors);
+			final Set<String> otherMacros = new HashSet<>();
+			if (inlineTemplates) {
+				otherMacros.add(module.getInitializerMacro().getName());
+				for (final IMacro m : extraMacros) {
+					otherMacros.add(m.getName());
+				}
+			}
+			
+			final List<IMacro> templates = Templates.extract(source, output, errors, inlineTemplates, otherMacros);
 			
 			try {
 				source = SExpressions.inOrder(output.getAll());
@@ -88,7 +377,15 @@ public class StandardSource implements ISExpressionSource {
 				errors.handle(e.getError());
 			}
 			
-			macros.addAll(templates);			
+			macros.addAll(templates);
+			
+			if (lazyModules) {
+				final Set<String> names = new HashSet<>();
+				for (final IMacro template : templates) {
+					names.add(template.getName());
+				}
+				macros.addAll(module.getTemplates(names, errors));
+			}
 		}
 		
 		macros.add(module.getInitializerMacro());
@@ -96,11 +393,30 @@ public class StandardSource implements ISExpressionSource {
 		macros.addAll(extraMacros);
 		
 		final List<IMacro> macros2 = macros.build();
-		if (macros2.isEmpty()) {
-			return source;
-		} else {
-			return MacroExpander.expand(macros2, source, errors);
+		if (!macros2.isEmpty()) {
+			source = MacroExpander.expand(macros2, source, errors, interceptor);
+		}
+		
+		if (limits.isPresent()) {
+			source = limits.get().limitForms(source);
+		}
+		
+		return source;
+	}
+	
+	/**
+	 * @return something which is equal for two sources only if they would expand root in the same way, given the same
+	 * documents
+	 */
+	Object getCacheKey(final URI root) {
+		final Equivalence<Object> identity = Equivalence.identity();
+		final ImmutableList.Builder<Object> key = ImmutableList.builder();
+		key.add(root, identity.wrap(resolver), expandTemplates, inlineTemplates, lazyModules,
+				identity.wrap(interceptor), identity.wrap(limits.orNull()));
+		for (final IMacro macro : extraMacros) {
+			key.add(identity.wrap(macro));
 		}
+		return key.build();
 	}
 	
 	@Override
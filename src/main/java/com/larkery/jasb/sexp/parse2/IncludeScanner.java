@@ -0,0 +1,128 @@
+package com.larkery.jasb.sexp.parse2;
+
+import java.io.Reader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.NodeBuilder;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.BasicError;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse2.Lexer.Lexeme;
+
+/**
+ * Finds the include and include-modules forms in a document straight from the lexer, without parsing the rest of the
+ * document into nodes. Only the include forms themselves are built.
+ *
+ * A form is found if the same form would have an atom for its head when parsed by {@link PolishParser}, so this finds
+ * the same includes as parsing the document and looking for them, except within infix expressions, which it does not
+ * parse.
+ */
+public class IncludeScanner {
+	private static final ImmutableSet<String> INCLUDES = ImmutableSet.of("include", "include-modules");
+	private static final ImmutableSet<String> PUNCTUATION = ImmutableSet.of("(", ")", "[", "]", "{", "}");
+
+	/**
+	 * @param lookWithinNoInclude whether to look for includes within no-include forms
+	 * @return the include forms found in the input, in order
+	 */
+	public static List<Seq> scan(final Location includeLocation, final URI uri, final Reader reader, final boolean lookWithinNoInclude, final IErrorHandler errors) {
+		final LookaheadLexer lexer = new LookaheadLexer(new Lexer(includeLocation, uri, reader));
+		final List<Seq> result = new ArrayList<>();
+
+		int depth = 0;
+		// the depth outside the no-include form being skipped, or -1
+		int skipping = -1;
+
+		Lexeme next;
+		while ((next = lexer.next()) != null) {
+			if (next.isComment) continue;
+			switch (next.value) {
+			case "(":
+			case "[":
+				if (skipping < 0 && !next.comment.isPresent()) {
+					// a comment after the bracket would be the head of the seq
+					final Optional<Lexeme> head = head(lexer);
+					if (head.isPresent()) {
+						if (INCLUDES.contains(head.get().value)) {
+							final Optional<Seq> include = materialise(next, lexer, errors);
+							if (include.isPresent()) {
+								result.add(include.get());
+							}
+							continue;
+						} else if (!lookWithinNoInclude && head.get().value.equals("no-include")) {
+							skipping = depth;
+						}
+					}
+				}
+				depth++;
+				break;
+			case ")":
+			case "]":
+				depth--;
+				if (depth == skipping) {
+					skipping = -1;
+				}
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the atom which will be the head of the seq just opened, if there is one
+	 */
+	private static Optional<Lexeme> head(final LookaheadLexer lexer) {
+		int i = 0;
+		Optional<Lexeme> l;
+		while ((l = lexer.lookAhead(i)).isPresent()) {
+			final Lexeme lexeme = l.get();
+			if (lexeme.isComment || PUNCTUATION.contains(lexeme.value)) {
+				return Optional.absent();
+			} else if (lexeme.value.equals(",")) {
+				i++;
+			} else {
+				return l;
+			}
+		}
+		return Optional.absent();
+	}
+
+	/**
+	 * Build the seq opened by open from the lexemes which follow it
+	 */
+	private static Optional<Seq> materialise(final Lexeme open, final LookaheadLexer lexer, final IErrorHandler errors) {
+		final NodeBuilder builder = NodeBuilder.create();
+		open.accept(builder);
+		int depth = 1;
+		while (depth > 0) {
+			final Lexeme next = lexer.next();
+			if (next == null) {
+				errors.handle(BasicError.at(open.location, "Unclosed " + open.value));
+				return Optional.absent();
+			}
+			next.accept(builder);
+			if (!next.isComment) {
+				if (next.value.equals("(") || next.value.equals("[")) {
+					depth++;
+				} else if (next.value.equals(")") || next.value.equals("]")) {
+					depth--;
+				}
+			}
+		}
+		try {
+			final Node node = builder.get();
+			return node instanceof Seq ? Optional.of((Seq) node) : Optional.<Seq>absent();
+		} catch (final UnfinishedExpressionException e) {
+			errors.handle(e.getError());
+			return Optional.absent();
+		}
+	}
+}
@@ -79,6 +79,8 @@ public class Lexer {
 	private final PushbackReader reader;
 	private Lexeme next = null;
 	private boolean separateColons = false;
+	private long characters = 0;
+	private long lexemes = 0;
 	
 	public Lexer(final Location sourceLocation, final URI uri, final Reader reader) {
 		super();
@@ -100,6 +102,7 @@ public class Lexer {
 		int c;
 		try {
 			c = reader.read();
+			if (c >= 0) characters++;
 			column++;
 			if (c == '\n') {
 				line ++;
@@ -117,6 +120,7 @@ public class Lexer {
 		} catch (final IOException e) {
 			throw new RuntimeException(e);
 		}
+		characters--;
 		column--;
 		// cannot safely unread a newline (column ends up wrong), but it doesn't matter because we will just read it off next anyway
 		if (c == '\n') {
@@ -225,6 +229,7 @@ public class Lexer {
 	
 	private void advance() {
 		next = readChunk();
+		if (next != null) lexemes++;
 	}
 	
 	public Location location() {
@@ -254,4 +259,18 @@ public class Lexer {
 	public boolean isSeparateColons() {
 		return separateColons;
 	}
+	
+	/**
+	 * @return the number of characters read so far
+	 */
+	public long getCharacterCount() {
+		return characters;
+	}
+	
+	/**
+	 * @return the number of lexemes read so far, not counting comments attached to other lexemes
+	 */
+	public long getLexemeCount() {
+		return lexemes;
+	}
 }
@@ -0,0 +1,197 @@
+package com.larkery.jasb.sexp.template;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.larkery.jasb.sexp.Atom;
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.SExpressions;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.IMacro;
+import com.larkery.jasb.sexp.parse.IMacroExpander;
+import com.larkery.jasb.sexp.parse.MacroExpander;
+import com.larkery.jasb.sexp.parse.MacroModel;
+
+/**
+ * Partially evaluates template bodies. Any invocation of a template within a body which does not mention any of the
+ * body's arguments will produce the same output every time the body is used, so it is expanded once here instead.
+ *
+ * To keep the output the same as it would have been, an invocation is left alone if:
+ * <ul>
+ * <li>it mentions any atom starting with @</li>
+ * <li>it is inside an invocation of some other macro, which might do something unusual with its arguments</li>
+ * <li>expanding it produces any errors or warnings, or any atom starting with @</li>
+ * </ul>
+ * Invocations of other macros are never expanded here, so they still happen at each use.
+ *
+ * Inlined nodes are located relative to the template which contained the invocation, rather than relative to the
+ * invocation itself, so error messages within them describe a shorter chain of templates.
+ */
+class Inliner {
+	private final List<IMacro> table;
+	private final Set<String> templateNames = new HashSet<>();
+	private final Set<String> otherMacros;
+
+	private Inliner(final List<IMacro> templates, final Set<String> otherMacros) {
+		this.otherMacros = otherMacros;
+		final ImmutableList.Builder<IMacro> table = ImmutableList.builder();
+		for (final IMacro t : templates) {
+			templateNames.add(t.getName());
+			table.add(t);
+		}
+		for (final String name : otherMacros) {
+			if (!templateNames.contains(name)) {
+				table.add(new Opaque(name));
+			}
+		}
+		this.table = table.build();
+	}
+
+	/**
+	 * @param templates the templates to inline into one another
+	 * @param otherMacros the names of any other macros which will be in effect when the templates are used
+	 * @return the templates, where each {@link Template} has had its body partially evaluated
+	 */
+	static List<IMacro> inline(final List<IMacro> templates, final Set<String> otherMacros) {
+		final Inliner inliner = new Inliner(templates, otherMacros);
+		final ImmutableList.Builder<IMacro> result = ImmutableList.builder();
+		for (final IMacro m : templates) {
+			if (m instanceof Template) {
+				result.add(inliner.inline((Template) m));
+			} else {
+				result.add(m);
+			}
+		}
+		return result.build();
+	}
+
+	private Template inline(final Template template) {
+		final List<Node> body;
+		try {
+			body = Node.copyAll(template.getBody());
+		} catch (final UnfinishedExpressionException e) {
+			return template;
+		}
+
+		final ImmutableList.Builder<Node> newBody = ImmutableList.builder();
+		boolean changed = false;
+		for (final Node n : body) {
+			final List<Node> rewritten = rewrite(n);
+			changed = changed || rewritten.size() != 1 || rewritten.get(0) != n;
+			newBody.addAll(rewritten);
+		}
+
+		return changed ? template.withBody(SExpressions.inOrder(newBody.build())) : template;
+	}
+
+	private List<Node> rewrite(final Node node) {
+		if (node instanceof Seq) {
+			final Seq seq = (Seq) node;
+			final List<Node> parts = seq.exceptComments();
+
+			if (seq.getDelimeter() == Delim.Paren && !parts.isEmpty() && parts.get(0) instanceof Atom) {
+				final String head = ((Atom) parts.get(0)).getValue();
+				if (otherMacros.contains(head) && !templateNames.contains(head)) {
+					return ImmutableList.<Node>of(seq);
+				} else if (templateNames.contains(head)) {
+					final Optional<List<Node>> expanded = expand(seq);
+					if (expanded.isPresent()) {
+						return expanded.get();
+					}
+				}
+			}
+
+			final Seq.Builder builder = Seq.builder(seq.getLocation(), seq.getDelimeter());
+			boolean changed = false;
+			for (final Node child : seq) {
+				final List<Node> rewritten = rewrite(child);
+				changed = changed || rewritten.size() != 1 || rewritten.get(0) != child;
+				builder.addAll(rewritten);
+			}
+
+			if (changed) {
+				return ImmutableList.<Node>of(builder.build(seq.getEndLocation()));
+			}
+		}
+
+		return ImmutableList.of(node);
+	}
+
+	private Optional<List<Node>> expand(final Seq invocation) {
+		if (!mentionsArguments(invocation)) {
+			final ErrorCollector errors = new ErrorCollector();
+			try {
+				final List<Node> result = Node.copyAll(MacroExpander.expand(table, invocation, errors));
+				if (errors.isEmpty() && !mentionsArguments(SExpressions.inOrder(result))) {
+					return Optional.of(result);
+				}
+			} catch (final UnfinishedExpressionException | StackOverflowError e) {
+			}
+		}
+		return Optional.absent();
+	}
+
+	private static boolean mentionsArguments(final ISExpression expression) {
+		final boolean[] result = new boolean[1];
+		expression.accept(new ISExpressionVisitor() {
+			@Override
+			public void locate(final Location loc) {}
+
+			@Override
+			public void open(final Delim delimeter) {}
+
+			@Override
+			public void atom(final String string) {
+				result[0] = result[0] || string.startsWith("@");
+			}
+
+			@Override
+			public void comment(final String text) {}
+
+			@Override
+			public void close(final Delim delimeter) {}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Stands in for a macro which is not a template, so that nothing inside an invocation of it is touched.
+	 */
+	private static class Opaque implements IMacro {
+		private final String name;
+
+		Opaque(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public ISExpression transform(final Seq input, final IMacroExpander expander, final IErrorHandler errors) {
+			return input;
+		}
+
+		@Override
+		public MacroModel getModel() {
+			return MacroModel.builder().build();
+		}
+
+		@Override
+		public Optional<Node> getDefiningNode() {
+			return Optional.absent();
+		}
+	}
+}
@@ -222,6 +222,28 @@ class Template extends SimpleMacro {
 		this.allowedArgumentCount = allowedNumberedArguments;
 	}
 	
+	private Template(final Template original, final ISExpression body) {
+		this.definition = original.definition;
+		this.templateName = original.templateName;
+		this.body = body;
+		this.arguments = original.arguments;
+		this.requiredNames = original.requiredNames;
+		this.allowedNames = original.allowedNames;
+		this.minimumArgumentCount = original.minimumArgumentCount;
+		this.allowedArgumentCount = original.allowedArgumentCount;
+	}
+	
+	/**
+	 * @return a template which is the same as this one, except that it has the given body
+	 */
+	Template withBody(final ISExpression body) {
+		return new Template(this, body);
+	}
+	
+	ISExpression getBody() {
+		return body;
+	}
+	
 	@Override
 	public String getName() {
 		return templateName;
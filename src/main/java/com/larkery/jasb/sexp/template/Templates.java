@@ -24,7 +24,11 @@ import com.larkery.jasb.sexp.errors.IErrorHandler;
 import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
 import com.larkery.jasb.sexp.parse.Editor;
 import com.larkery.jasb.sexp.parse.IMacro;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Measure;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
 import com.larkery.jasb.sexp.parse.MacroExpander;
+import com.larkery.jasb.sexp.parse.Pipeline;
+import com.larkery.jasb.sexp.parse.Pipeline.Span;
 import com.larkery.jasb.sexp.template.Template.Argument;
 import com.larkery.jasb.sexp.template.Template.NamedArgument;
 import com.larkery.jasb.sexp.template.Template.NumberedArgument;
@@ -46,7 +50,36 @@ public class Templates {
 		}
 	}
 	
+	/**
+	 * As {@link #extract(ISExpression, ISExpressionVisitor, IErrorHandler)}, but optionally partially evaluates the
+	 * templates' bodies, so that invocations of other templates which do not depend on any arguments are expanded once
+	 * here rather than at every use.
+	 * 
+	 * @param inline whether to partially evaluate template bodies
+	 * @param otherMacros the names of any macros other than these templates which will be used alongside them;
+	 * invocations of these are not expanded, and nothing inside them is inlined.
+	 */
+	public static List<IMacro> extract(final ISExpression input, final ISExpressionVisitor output, final IErrorHandler errors, final boolean inline, final Set<String> otherMacros) {
+		final List<IMacro> templates = extract(input, output, errors);
+		if (inline) {
+			return Inliner.inline(templates, otherMacros);
+		} else {
+			return templates;
+		}
+	}
+	
 	public static List<IMacro> extract(final ISExpression input, final ISExpressionVisitor output, final IErrorHandler errors) {
+		final Span span = Pipeline.start(Stage.TEMPLATES, null);
+		try {
+			final List<IMacro> templates = extractTemplates(input, output, errors);
+			span.count(Measure.TEMPLATES, templates.size());
+			return templates;
+		} finally {
+			span.finish();
+		}
+	}
+	
+	private static List<IMacro> extractTemplates(final ISExpression input, final ISExpressionVisitor output, final IErrorHandler errors) {
 		final ImmutableList.Builder<IMacro> templates = ImmutableList.builder();
 		
 		final Set<String> names = new HashSet<>();
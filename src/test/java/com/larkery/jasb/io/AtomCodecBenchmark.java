@@ -0,0 +1,66 @@
+package com.larkery.jasb.io;
+
+import java.io.StringReader;
+import java.net.URI;
+
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.atom.BooleanAtomIO;
+import com.larkery.jasb.io.atom.DateAtomIO;
+import com.larkery.jasb.io.atom.EnumAtomIO;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.PeriodAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.impl.JASB;
+import com.larkery.jasb.io.testmodel.Atoms;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * Reads and writes a document which is almost all atoms, with every atom codec in use. Not run as part of the tests;
+ * run main() by hand.
+ */
+public class AtomCodecBenchmark {
+	private static final int ATOMS_PER_LIST = 2000;
+	private static final int ROUNDS = 200;
+
+	public static void main(final String[] args) throws Exception {
+		final String[] colours = {"red", "GREEN", "Blue", "darkslategrey"};
+		final StringBuilder sb = new StringBuilder("(atoms strings:[");
+		for (int i = 0; i < ATOMS_PER_LIST; i++) sb.append(" s").append(i);
+		sb.append("] numbers:[");
+		for (int i = 0; i < ATOMS_PER_LIST; i++) sb.append(' ').append(i).append(".5");
+		sb.append("] colours:[");
+		for (int i = 0; i < ATOMS_PER_LIST; i++) sb.append(' ').append(colours[i % colours.length]);
+		sb.append("] dates:[");
+		for (int i = 0; i < ATOMS_PER_LIST; i++) sb.append(String.format(" %02d/%02d/%04d", 1 + i % 28, 1 + i % 12, 1900 + i % 200));
+		sb.append("] periods:[");
+		for (int i = 0; i < ATOMS_PER_LIST; i++) sb.append(" \"").append(1 + i % 9).append(" days\"");
+		sb.append("])");
+
+		final JASB jasb = JASB.of(ImmutableSet.<Class<?>>of(Atoms.class),
+				ImmutableSet.<IAtomIO>of(new StringAtomIO(), new NumberAtomIO(), new BooleanAtomIO(),
+						new EnumAtomIO(), new DateAtomIO(), new PeriodAtomIO()));
+		final Node node = Node.copy(Parser.source(URI.create("benchmark"), new StringReader(sb.toString()), IErrorHandler.SLF4J));
+		final Atoms atoms = jasb.getReader().readNode(Atoms.class, node, IErrorHandler.RAISE).get();
+		if (atoms.getPeriods().size() != ATOMS_PER_LIST || atoms.getDates().size() != ATOMS_PER_LIST) {
+			throw new AssertionError("benchmark document was not read properly");
+		}
+
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				jasb.getReader().readNode(Atoms.class, node, IErrorHandler.RAISE);
+			}
+			final long readMillis = (System.nanoTime() - start) / 1000000;
+
+			start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				Node.copy(jasb.getWriter().write(atoms));
+			}
+			final long writeMillis = (System.nanoTime() - start) / 1000000;
+
+			System.out.printf("%d atoms: read %dms, write %dms%n", 5 * ATOMS_PER_LIST * ROUNDS, readMillis, writeMillis);
+		}
+	}
+}
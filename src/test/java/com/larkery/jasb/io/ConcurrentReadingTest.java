@@ -0,0 +1,87 @@
+package com.larkery.jasb.io;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.impl.JASB;
+import com.larkery.jasb.io.impl.JASB.Validation;
+import com.larkery.jasb.io.testmodel.Arithmetic;
+import com.larkery.jasb.io.testmodel.Div;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Times;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * Checks that one {@link JASB} can serve reads from many threads at once
+ */
+public class ConcurrentReadingTest {
+	private static final int THREADS = 8;
+	private static final int READS = 200;
+	static final String SOURCE = "(+ (value name:a of:1) (* (value of:2) #a) (/ (value of:3) (value of:4)))";
+
+	static JASB create() {
+		return JASB.builder(
+				ImmutableSet.<Class<?>>of(Div.class, Plus.class, Times.class, Value.class),
+				ImmutableSet.<IAtomIO>of(new StringAtomIO(), new NumberAtomIO()))
+				// lazily, so that the threads race to set up the reader
+				.withValidation(Validation.LAZY)
+				.build();
+	}
+
+	static Node parse() throws Exception {
+		return Node.copy(Parser.source(URI.create("test"), new StringReader(SOURCE), IErrorHandler.SLF4J));
+	}
+
+	@Test
+	public void sharedReaderGivesTheSameResultOnEveryThread() throws Exception {
+		final JASB jasb = create();
+		final Node node = parse();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<List<String>>> results = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				results.add(executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() throws Exception {
+						start.await();
+						final List<String> written = new ArrayList<>();
+						for (int j = 0; j < READS; j++) {
+							final Arithmetic value = jasb.getReader().readNode(Arithmetic.class, node, IErrorHandler.RAISE).get();
+							written.add(String.valueOf(Node.copy(jasb.getWriter().write(value))));
+						}
+						return written;
+					}
+				}));
+			}
+			start.countDown();
+
+			final String expected = String.valueOf(Node.copy(create().getWriter().write(
+					create().getReader().readNode(Arithmetic.class, node, IErrorHandler.RAISE).get())));
+			for (final Future<List<String>> result : results) {
+				for (final String written : result.get()) {
+					Assert.assertEquals(expected, written);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
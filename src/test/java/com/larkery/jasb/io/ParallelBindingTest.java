@@ -0,0 +1,186 @@
+package com.larkery.jasb.io;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.impl.JASB;
+import com.larkery.jasb.io.testmodel.Arithmetic;
+import com.larkery.jasb.io.testmodel.Div;
+import com.larkery.jasb.io.testmodel.GetNode;
+import com.larkery.jasb.io.testmodel.ListOfListsOfString;
+import com.larkery.jasb.io.testmodel.ListOfStrings;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Times;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * Checks that binding in parallel gives the same values, and the same errors in the same order, as binding on one thread
+ */
+public class ParallelBindingTest {
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@AfterClass
+	public static void shutdown() {
+		POOL.shutdown();
+	}
+
+	private static JASB create(final boolean parallel) {
+		final JASB.Builder builder = JASB.builder(
+				ImmutableSet.<Class<?>>of(
+						GetNode.class,
+						Div.class,
+						Plus.class,
+						ListOfStrings.class,
+						ListOfListsOfString.class,
+						Times.class,
+						Value.class),
+				ImmutableSet.<IAtomIO>of(
+						new StringAtomIO(),
+						new NumberAtomIO()));
+		if (parallel) {
+			builder.withParallelBinding(POOL);
+		}
+		return builder.build();
+	}
+
+	private static Node parse(final String s) throws UnfinishedExpressionException {
+		return Node.copy(Parser.source(URI.create("test"), new StringReader(s), IErrorHandler.SLF4J));
+	}
+
+	private static String describe(final JASB jasb, final Optional<?> value) throws UnfinishedExpressionException {
+		return value.isPresent() ? String.valueOf(Node.copy(jasb.getWriter().write(value.get()))) : "absent";
+	}
+
+	/**
+	 * @return the objects in the value, depth first, each numbered by when it was first seen; two values with the same
+	 * shape here have their references pointing at the same places
+	 */
+	private static List<Integer> identities(final Optional<?> value) {
+		final List<Integer> result = new ArrayList<>();
+		if (value.isPresent()) {
+			identities(value.get(), new IdentityHashMap<Object, Integer>(), result);
+		}
+		return result;
+	}
+
+	private static void identities(final Object value, final Map<Object, Integer> seen, final List<Integer> result) {
+		if (value == null) {
+			result.add(-1);
+			return;
+		}
+		final Integer index = seen.get(value);
+		if (index != null) {
+			result.add(index);
+			return;
+		}
+		seen.put(value, seen.size());
+		result.add(seen.get(value));
+		if (value instanceof Plus) {
+			for (final Arithmetic term : ((Plus) value).terms) identities(term, seen, result);
+		} else if (value instanceof Times) {
+			for (final Arithmetic term : ((Times) value).terms) identities(term, seen, result);
+		} else if (value instanceof Div) {
+			identities(((Div) value).first, seen, result);
+			identities(((Div) value).second, seen, result);
+		}
+	}
+
+	private static List<String> messages(final ErrorCollector errors) {
+		final List<String> result = new ArrayList<>();
+		for (final IError e : errors.getErrors()) {
+			result.add(e.getType() + " " + e.getLocation() + " " + e.getMessage());
+		}
+		return result;
+	}
+
+	private static void assertSameInBothModes(final String source) throws UnfinishedExpressionException {
+		final JASB sequential = create(false);
+		final JASB parallel = create(true);
+		final Node node = parse(source);
+
+		final ErrorCollector sequentialErrors = new ErrorCollector();
+		final Optional<?> sequentialValue = sequential.getReader().readNode(Arithmetic.class, node, sequentialErrors);
+
+		// repeated, as a race would not show every time
+		for (int i = 0; i < 20; i++) {
+			final ErrorCollector parallelErrors = new ErrorCollector();
+			final Optional<?> parallelValue = parallel.getReader().readNode(Arithmetic.class, node, parallelErrors);
+
+			Assert.assertEquals(source, describe(sequential, sequentialValue), describe(parallel, parallelValue));
+			Assert.assertEquals(source, identities(sequentialValue), identities(parallelValue));
+			Assert.assertEquals(source, messages(sequentialErrors), messages(parallelErrors));
+		}
+	}
+
+	private static String many(final int count) {
+		final StringBuilder sb = new StringBuilder("(+");
+		for (int i = 0; i < count; i++) {
+			sb.append(" (* (value name:v").append(i).append(" of:").append(i).append(")");
+			if (i > 0) sb.append(" #v").append(i - 1);
+			sb.append(" #v").append((i + 7) % count).append(")");
+		}
+		return sb.append(")").toString();
+	}
+
+	@Test
+	public void valuesAreTheSame() throws UnfinishedExpressionException {
+		assertSameInBothModes("(value of:1)");
+		assertSameInBothModes("(+ (value of:1) (/ (value of:2) (value of:3)) (* (value of:4) (value of:5)))");
+		assertSameInBothModes("(* #b (value name:a of:1) #a (/ #a #b) (+ (value name:b of:2) #a))");
+		assertSameInBothModes(many(200));
+	}
+
+	@Test
+	public void errorsAreTheSameAndInTheSameOrder() throws UnfinishedExpressionException {
+		assertSameInBothModes("(+ (* name:times) (* name:times) (* name:times))");
+		assertSameInBothModes("(+ (/ #b #a) (value name:a of:1) (strings values:[x]) (value of:y))");
+		assertSameInBothModes("(+ #a (* (value name:a of:1)) (* (value name:a of:2) #a) #a)");
+		assertSameInBothModes("(+ (frobnicate) (value of:x) (+ (value name:a of:1) (/ 1 2 3)) #missing)");
+		assertSameInBothModes("(+ (* (value name:a of:1) #a) (* (value name:a of:2) #a))");
+	}
+
+	@Test
+	public void referencesResolveToTheSameObjects() throws UnfinishedExpressionException {
+		final Times read = (Times) create(true).getReader().readNode(
+				Arithmetic.class,
+				parse("(* (+ #b) (value name:a of:1) (+ #a) (/ (value name:b of:2) #a))"),
+				IErrorHandler.RAISE).get();
+
+		final Div div = (Div) read.terms.get(3);
+		Assert.assertSame(div.getFirst(), ((Plus) read.terms.get(0)).terms.get(0));
+		Assert.assertSame(read.terms.get(1), ((Plus) read.terms.get(2)).terms.get(0));
+		Assert.assertSame(read.terms.get(1), div.getSecond());
+	}
+
+	@Test
+	public void firstDefinitionWinsInEveryBranch() throws UnfinishedExpressionException {
+		final Plus read = (Plus) create(true).getReader().readNode(
+				Arithmetic.class,
+				parse("(+ (* (value name:a of:1) #a) (* (value name:a of:2) #a))"),
+				new ErrorCollector()).get();
+
+		final Times first = (Times) read.terms.get(0);
+		final Times second = (Times) read.terms.get(1);
+		Assert.assertSame(first.terms.get(0), first.terms.get(1));
+		Assert.assertSame(first.terms.get(0), second.terms.get(1));
+	}
+}
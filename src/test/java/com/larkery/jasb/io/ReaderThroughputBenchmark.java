@@ -0,0 +1,55 @@
+package com.larkery.jasb.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.larkery.jasb.io.impl.JASB;
+import com.larkery.jasb.io.testmodel.Arithmetic;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+
+/**
+ * Measures how many reads a second one shared {@link JASB} manages as the number of threads using it grows. Not run as
+ * part of the tests; run main() by hand.
+ */
+public class ReaderThroughputBenchmark {
+	private static final int READS_PER_THREAD = 200000;
+
+	public static void main(final String[] args) throws Exception {
+		final JASB jasb = ConcurrentReadingTest.create();
+		final Node node = ConcurrentReadingTest.parse();
+		final int processors = Runtime.getRuntime().availableProcessors();
+
+		for (int run = 0; run < 3; run++) {
+			for (int threads = 1; threads <= processors; threads *= 2) {
+				final ExecutorService executor = Executors.newFixedThreadPool(threads);
+				try {
+					final List<Future<?>> results = new ArrayList<>();
+					final long start = System.nanoTime();
+					for (int i = 0; i < threads; i++) {
+						results.add(executor.submit(new Callable<Void>() {
+							@Override
+							public Void call() {
+								for (int j = 0; j < READS_PER_THREAD; j++) {
+									jasb.getReader().readNode(Arithmetic.class, node, IErrorHandler.RAISE);
+								}
+								return null;
+							}
+						}));
+					}
+					for (final Future<?> result : results) {
+						result.get();
+					}
+					final long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+					System.out.printf("%d threads: %d reads/s%n", threads, (threads * (long) READS_PER_THREAD * 1000) / millis);
+				} finally {
+					executor.shutdownNow();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.larkery.jasb.io;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.impl.JASB;
+import com.larkery.jasb.io.testmodel.Arithmetic;
+import com.larkery.jasb.io.testmodel.Div;
+import com.larkery.jasb.io.testmodel.GetNode;
+import com.larkery.jasb.io.testmodel.ListOfListsOfString;
+import com.larkery.jasb.io.testmodel.ListOfStrings;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Times;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * Checks that binding synchronously gives the same values and errors as reading with futures
+ */
+public class SynchronousBindingTest extends JasbIOTest {
+	private static JASB create(final boolean synchronous) {
+		return JASB.of(
+				ImmutableSet.<Class<?>>of(
+						GetNode.class,
+						Div.class,
+						Plus.class,
+						ListOfStrings.class,
+						ListOfListsOfString.class,
+						Times.class,
+						Value.class),
+				ImmutableSet.of(
+						new StringAtomIO(),
+						new NumberAtomIO()),
+				synchronous);
+	}
+
+	private static Node parse(final String s) {
+		try {
+			return Node.copy(Parser.source(URI.create("test"), new StringReader(s), IErrorHandler.SLF4J));
+		} catch (final UnfinishedExpressionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String describe(final JASB jasb, final Optional<?> value) {
+		if (value.isPresent()) {
+			try {
+				return String.valueOf(Node.copy(jasb.getWriter().write(value.get())));
+			} catch (final UnfinishedExpressionException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			return "absent";
+		}
+	}
+
+	/**
+	 * @return the errors, sorted because unresolved names are reported in no particular order
+	 */
+	private static List<String> messages(final ErrorCollector errors) {
+		final List<String> result = new ArrayList<>();
+		for (final IError e : errors.getErrors()) {
+			result.add(e.getType() + " " + e.getLocation() + " " + e.getMessage());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private void assertSameInBothModes(final Class<?> out, final String source) {
+		final JASB futures = create(false);
+		final JASB synchronous = create(true);
+
+		final ErrorCollector futureErrors = new ErrorCollector();
+		final ErrorCollector synchronousErrors = new ErrorCollector();
+
+		final Optional<?> futureValue = futures.getReader().readNode(out, parse(source), futureErrors);
+		final Optional<?> synchronousValue = synchronous.getReader().readNode(out, parse(source), synchronousErrors);
+
+		Assert.assertEquals(source, describe(futures, futureValue), describe(synchronous, synchronousValue));
+		Assert.assertEquals(source, messages(futureErrors), messages(synchronousErrors));
+	}
+
+	@Test
+	public void forwardAndBackwardReferencesAreResolved() {
+		final Times read = (Times) context.getReader().readNode(
+				Arithmetic.class,
+				parse("(* #b (value name:a of:1) #a #b (+ #a #b) (value name:b of:2))"),
+				IErrorHandler.RAISE).get();
+
+		Assert.assertSame(read.terms.get(1), read.terms.get(2));
+		Assert.assertSame(read.terms.get(5), read.terms.get(0));
+		Assert.assertSame(read.terms.get(5), read.terms.get(3));
+		final Plus plus = (Plus) read.terms.get(4);
+		Assert.assertSame(read.terms.get(1), plus.terms.get(0));
+		Assert.assertSame(read.terms.get(5), plus.terms.get(1));
+	}
+
+	@Test
+	public void valuesAreTheSameInBothModes() {
+		assertSameInBothModes(Arithmetic.class, "(value of:1)");
+		assertSameInBothModes(Arithmetic.class, "(/ (value of:1) (+ (value of:2) (value of:3)))");
+		assertSameInBothModes(Arithmetic.class, "(* #b (value name:a of:1) #a (/ #a #b) (value name:b of:2))");
+		assertSameInBothModes(Arithmetic.class, "#a");
+		assertSameInBothModes(ListOfStrings.class, "(strings values: [a b c])");
+		assertSameInBothModes(ListOfListsOfString.class, "(listoflists x [a b] [c] d (e))");
+	}
+
+	@Test
+	public void errorsAreTheSameInBothModes() {
+		assertSameInBothModes(Arithmetic.class, "(value this that the other)");
+		assertSameInBothModes(Arithmetic.class, "(+ (* name:times) (* name:times))");
+		assertSameInBothModes(Arithmetic.class, "(+ #missing (value of:1))");
+		assertSameInBothModes(Arithmetic.class, "(+ (/ #b #a) (value name:a of:1) (strings values:[x]))");
+		assertSameInBothModes(Arithmetic.class, "(+ #a (value name:a of:1) (value name:a of:2) #a)");
+		assertSameInBothModes(Arithmetic.class, "(+ (frobnicate) word: (value of:x))");
+		assertSameInBothModes(Arithmetic.class, "(/ 1 2 3)");
+	}
+
+	@Test
+	public void identitiesWhichAreReferencesAreTheSameInBothModes() {
+		assertSameInBothModes(Arithmetic.class, "(+ (value name:#a of:1) (value name:a of:2) #a)");
+		assertSameInBothModes(Arithmetic.class, "(+ (value name:a of:1) (value name:#a of:2) #a)");
+		assertSameInBothModes(Arithmetic.class, "(+ (value name:#b of:1) (value name:#a of:2) (value name:a of:3))");
+	}
+
+	@Test
+	public void keywordErrorsAreTheSameInBothModes() {
+		assertSameInBothModes(Arithmetic.class, "(value of:1 of:2)");
+		assertSameInBothModes(Arithmetic.class, "(value of:1 name:a colour:red colour:blue)");
+		assertSameInBothModes(Arithmetic.class, "(value of:1 colour:red size:large)");
+		assertSameInBothModes(Arithmetic.class, "(value of:1 name:)");
+		assertSameInBothModes(Arithmetic.class, "(value name: of: of:1)");
+		assertSameInBothModes(Arithmetic.class, "(+ colour:red (value of:1) (value ;comment\n of:2))");
+		assertSameInBothModes(Arithmetic.class, "[value of:1]");
+		assertSameInBothModes(Arithmetic.class, "()");
+		assertSameInBothModes(Arithmetic.class, "((value of:1))");
+		assertSameInBothModes(Arithmetic.class, "(nothing of:1 of:2)");
+	}
+}
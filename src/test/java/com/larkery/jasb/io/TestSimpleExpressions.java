@@ -58,6 +58,18 @@ public class TestSimpleExpressions extends JasbIOTest {
 		Assert.assertEquals(ImmutableList.of(), read.terms);
 	}
 	
+	@Test
+	public void readsBareWordsAsInstances() throws InterruptedException, ExecutionException {
+		final Plus read = read("(+ * (value of:1) * /)", Plus.class);
+		Assert.assertEquals(4, read.terms.size());
+		Assert.assertTrue(read.terms.get(0) instanceof Times);
+		Assert.assertTrue(read.terms.get(2) instanceof Times);
+		Assert.assertTrue(read.terms.get(3) instanceof Div);
+		Assert.assertNotSame(read.terms.get(0), read.terms.get(2));
+		Assert.assertEquals("*", read.terms.get(0).node.toString());
+		Assert.assertEquals("/", read.terms.get(3).node.toString());
+	}
+	
 	@Test
 	public void readsEmptyTimes() throws InterruptedException, ExecutionException {
 		final Times read = read("(*)", Times.class);
@@ -19,14 +19,19 @@ public class DateAtomIOTest {
 			"2013/01/01",
 			"01-01-2013",
 			"01/13/2013",
-			"40/12/2013"
+			"40/12/2013",
+			"29/02/2013",
+			"00/01/2013"
 				));
 	}
 	
 	@Test
 	public void correctDates() throws Exception {
 		correctDates(ImmutableMap.of(
-				"01/01/2013", new DateTime(2013, 01, 01, 0, 0, DateTimeZone.UTC)
+				"01/01/2013", new DateTime(2013, 01, 01, 0, 0, DateTimeZone.UTC),
+				"29/02/2012", new DateTime(2012, 02, 29, 0, 0, DateTimeZone.UTC),
+				" 31/12/1999 ", new DateTime(1999, 12, 31, 0, 0, DateTimeZone.UTC),
+				"1/2/2013", new DateTime(2013, 02, 01, 0, 0, DateTimeZone.UTC)
 				));
 	}
 	
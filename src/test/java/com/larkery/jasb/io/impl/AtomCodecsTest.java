@@ -0,0 +1,112 @@
+package com.larkery.jasb.io.impl;
+
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.IAtomReader;
+import com.larkery.jasb.io.IAtomWriter;
+import com.larkery.jasb.io.atom.EnumAtomIO;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+
+public class AtomCodecsTest {
+	enum Letter {
+		a, A, b
+	}
+
+	/**
+	 * Writes only even integers, so it has to be asked about each object
+	 */
+	static class EvenIO implements IAtomIO {
+		@Override
+		public boolean canWrite(final Object object) {
+			return object instanceof Integer && ((Integer) object) % 2 == 0;
+		}
+
+		@Override
+		public String write(final Object object) {
+			return "even";
+		}
+
+		@Override
+		public boolean canReadTo(final Class<?> output) {
+			return false;
+		}
+
+		@Override
+		public <T> Optional<T> read(final String in, final Class<T> out) {
+			return Optional.absent();
+		}
+
+		@Override
+		public Set<String> getLegalValues(final Class<?> output) {
+			return ImmutableSet.of();
+		}
+
+		@Override
+		public String getDisplayName(final Class<?> javaType) {
+			return "even";
+		}
+	}
+
+	private static AtomCodecs writers(final IAtomWriter... writers) {
+		return new AtomCodecs(ImmutableList.<IAtomReader>of(), ImmutableList.copyOf(writers));
+	}
+
+	@Test
+	public void writersAreTriedInOrder() {
+		final StringAtomIO string = new StringAtomIO();
+		final NumberAtomIO number = new NumberAtomIO();
+		final EvenIO even = new EvenIO();
+
+		Assert.assertSame(number, writers(string, number, even).getWriter(2));
+		Assert.assertSame(even, writers(string, even, number).getWriter(2));
+		Assert.assertSame(number, writers(string, even, number).getWriter(3));
+		Assert.assertSame(even, writers(string, even, number).getWriter(4));
+		Assert.assertSame(string, writers(string, even, number).getWriter("x"));
+	}
+
+	@Test
+	public void objectsNoWriterWantsHaveNoWriter() {
+		final AtomCodecs codecs = writers(new EvenIO(), new NumberAtomIO());
+		Assert.assertNull(codecs.getWriter("x"));
+		Assert.assertNull(codecs.getWriter("y"));
+		Assert.assertNotNull(codecs.getWriter(1));
+	}
+
+	@Test
+	public void readersAreFoundByType() {
+		final StringAtomIO string = new StringAtomIO();
+		final NumberAtomIO number = new NumberAtomIO();
+		final AtomCodecs codecs = new AtomCodecs(ImmutableList.<IAtomReader>of(string, number), ImmutableList.<IAtomWriter>of());
+
+		Assert.assertEquals(ImmutableList.of(number), codecs.getReaders(Double.class).asList());
+		Assert.assertEquals(ImmutableList.of(string), codecs.getReaders(String.class).asList());
+		Assert.assertTrue(codecs.getReaders(Letter.class).isEmpty());
+	}
+
+	@Test
+	public void readerAndWriterShareOneRegistry() {
+		final JASB jasb = JASB.of(ImmutableSet.<Class<?>>of(), ImmutableSet.<IAtomIO>of(new StringAtomIO(), new NumberAtomIO()));
+		final AtomCodecs codecs = ((Reader) jasb.getReader()).getCodecs();
+
+		Assert.assertSame(codecs, ((Writer) jasb.getWriter()).getCodecs());
+		Assert.assertFalse(codecs.getReaders(String.class).isEmpty());
+		Assert.assertNotNull(codecs.getWriter("x"));
+	}
+
+	@Test
+	public void enumsAreReadIgnoringCaseWithTheFirstConstantWinning() {
+		final EnumAtomIO io = new EnumAtomIO();
+		Assert.assertEquals(Letter.a, io.read("A", Letter.class).get());
+		Assert.assertEquals(Letter.a, io.read("a", Letter.class).get());
+		Assert.assertEquals(Letter.b, io.read("B", Letter.class).get());
+		Assert.assertFalse(io.read("c", Letter.class).isPresent());
+	}
+}
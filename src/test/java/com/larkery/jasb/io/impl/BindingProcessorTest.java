@@ -0,0 +1,99 @@
+package com.larkery.jasb.io.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.bind.Bind;
+
+/**
+ * Runs the {@link BindingProcessor} over small classes with javac
+ */
+public class BindingProcessorTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static class Source extends SimpleJavaFileObject {
+		private final String code;
+
+		Source(final String name, final String code) {
+			super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+
+	private static String location(final Class<?> clazz) throws URISyntaxException {
+		return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+	}
+
+	private boolean compile(final String name, final String code, final DiagnosticCollector<JavaFileObject> diagnostics) throws IOException, URISyntaxException {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		final File output = folder.getRoot();
+		final List<String> options = Arrays.asList(
+				"-processor", BindingProcessor.class.getName(),
+				"-classpath", Joiner.on(File.pathSeparator).join(location(Bind.class), location(ImmutableSet.class), location(org.slf4j.Logger.class)),
+				"-d", output.getPath(),
+				"-s", output.getPath());
+		return compiler.getTask(null, null, diagnostics, options, null, Collections.singletonList(new Source(name, code))).call();
+	}
+
+	@Test
+	public void classesWithoutANoArgumentConstructorAreSkipped() throws IOException, URISyntaxException {
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final boolean compiled = compile("test.Named",
+				"package test;\n" +
+				"@com.larkery.jasb.bind.Bind(\"named\")\n" +
+				"public class Named {\n" +
+				"	public Named(final String name) {}\n" +
+				"}\n", diagnostics);
+
+		Assert.assertTrue(diagnostics.getDiagnostics().toString(), compiled);
+		Assert.assertFalse(new File(folder.getRoot(), "test/NamedJasbReader.java").exists());
+
+		boolean noted = false;
+		for (final Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			if (d.getKind() == Diagnostic.Kind.NOTE && d.getMessage(null).contains("no public constructor without arguments")) {
+				noted = true;
+			}
+		}
+		Assert.assertTrue(diagnostics.getDiagnostics().toString(), noted);
+	}
+
+	@Test
+	public void classesWithANoArgumentConstructorAreGenerated() throws IOException, URISyntaxException {
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final boolean compiled = compile("test.Plain",
+				"package test;\n" +
+				"@com.larkery.jasb.bind.Bind(\"plain\")\n" +
+				"public class Plain {\n" +
+				"}\n", diagnostics);
+
+		Assert.assertTrue(diagnostics.getDiagnostics().toString(), compiled);
+		Assert.assertTrue(new File(folder.getRoot(), "test/PlainJasbReader.java").exists());
+		Assert.assertEquals(ImmutableList.of(), ImmutableList.copyOf(diagnostics.getDiagnostics()));
+	}
+}
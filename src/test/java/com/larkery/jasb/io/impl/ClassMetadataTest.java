@@ -0,0 +1,118 @@
+package com.larkery.jasb.io.impl;
+
+import java.io.StringReader;
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.bind.BindNamedArgument;
+import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.impl.JASB.Validation;
+import com.larkery.jasb.io.testmodel.Div;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Parser;
+
+public class ClassMetadataTest {
+	@Bind("broken")
+	public static class Broken {
+		public Broken() {
+			throw new IllegalStateException("cannot be made");
+		}
+		
+		@BindNamedArgument
+		public String getName() {
+			return null;
+		}
+		
+		public void setName(final String name) {
+		}
+	}
+	
+	@Bind("unmodellable")
+	public static class Unmodellable {
+		@BindNamedArgument
+		public String getName() {
+			throw new IllegalStateException("has no default");
+		}
+		
+		public void setName(final String name) {
+		}
+	}
+	
+	private static JASB jasb(final Validation validation, final Class<?>... classes) {
+		return JASB.builder(ImmutableSet.copyOf(classes), ImmutableSet.<IAtomIO>of(new StringAtomIO(), new NumberAtomIO()))
+				.withValidation(validation)
+				.build();
+	}
+	
+	private static String problem(final Validation validation) {
+		try {
+			jasb(validation, Value.class, Broken.class);
+		} catch (final IllegalArgumentException e) {
+			return e.getMessage();
+		}
+		Assert.fail("Expected " + validation + " validation to find the broken class");
+		return null;
+	}
+	
+	@Test
+	public void metadataIsWorkedOutOnce() {
+		Assert.assertSame(ClassMetadata.of(Value.class), ClassMetadata.of(Value.class));
+		Assert.assertSame(ClassMetadata.of(Value.class).getDescriptors(), JasbPropertyDescriptor.getDescriptors(Value.class));
+		Assert.assertEquals("value", ClassMetadata.of(Value.class).getBindName().get());
+		Assert.assertFalse(ClassMetadata.of(String.class).getBindName().isPresent());
+	}
+	
+	@Test
+	public void parallelValidationFindsTheSameProblem() {
+		Assert.assertEquals(problem(Validation.EAGER), problem(Validation.PARALLEL));
+		jasb(Validation.PARALLEL, Value.class, Div.class, Plus.class);
+	}
+	
+	@Test
+	public void lazyValidationWaitsUntilAClassIsRead() throws UnfinishedExpressionException {
+		final JASB jasb = jasb(Validation.LAZY, Value.class, Broken.class);
+		
+		final Node node = Node.copy(Parser.source(URI.create("test"), new StringReader("(value of:1)"), IErrorHandler.SLF4J));
+		Assert.assertEquals(1, jasb.getReader().read(Value.class, node, IErrorHandler.RAISE).getValue().get().getValue(), 0);
+		
+		try {
+			jasb.getReader().read(Broken.class, node, IErrorHandler.RAISE);
+			Assert.fail("Reading a broken class should fail");
+		} catch (final IllegalArgumentException e) {
+			Assert.assertEquals(problem(Validation.EAGER), e.getMessage());
+		}
+	}
+	
+	@Test
+	public void eagerValidationMakesTheModel() {
+		try {
+			jasb(Validation.EAGER, Value.class, Unmodellable.class);
+			Assert.fail("Expected eager validation to find the unmodellable class");
+		} catch (final IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Couldn't get default value"));
+		}
+	}
+	
+	@Test
+	public void otherValidationMakesTheModelWhenItIsWanted() {
+		for (final Validation validation : new Validation[] {Validation.PARALLEL, Validation.LAZY}) {
+			final JASB jasb = jasb(validation, Value.class, Unmodellable.class);
+			try {
+				jasb.getModel();
+				Assert.fail("Expected the model for the unmodellable class to fail with " + validation + " validation");
+			} catch (final IllegalArgumentException e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Couldn't get default value"));
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.larkery.jasb.io.impl;
+
+import java.io.File;
+import java.io.StringReader;
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.bind.BindNamedArgument;
+import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.atom.BooleanAtomIO;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.testmodel.Beans;
+import com.larkery.jasb.io.testmodel.Div;
+import com.larkery.jasb.io.testmodel.ListOfListsOfString;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Times;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Invocation;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * The test model is compiled with the {@link BindingProcessor}, so it should have generated readers and writers
+ */
+public class GeneratedClassesTest {
+	/**
+	 * The processor cannot generate a reader for this, as its enclosing class is not public
+	 */
+	static class Enclosing {
+		@Bind("hidden")
+		public static class Hidden {
+			private String value;
+
+			@BindNamedArgument
+			public String getValue() {
+				return value;
+			}
+
+			public void setValue(final String value) {
+				this.value = value;
+			}
+		}
+	}
+
+	private static Node parse(final String s) throws UnfinishedExpressionException {
+		return Node.copy(Parser.source(URI.create("test"), new StringReader(s), IErrorHandler.SLF4J));
+	}
+
+	@Test
+	public void findsGeneratedClasses() {
+		Assert.assertTrue(GeneratedClasses.reader(Value.class).isPresent());
+		Assert.assertTrue(GeneratedClasses.writer(Value.class).isPresent());
+		Assert.assertEquals("value", GeneratedClasses.reader(Value.class).get().getName());
+	}
+
+	@Test
+	public void fallsBackWhenNothingWasGenerated() throws UnfinishedExpressionException {
+		Assert.assertFalse(GeneratedClasses.reader(Enclosing.Hidden.class).isPresent());
+		Assert.assertFalse(GeneratedClasses.writer(Enclosing.Hidden.class).isPresent());
+
+		final Enclosing.Hidden hidden = new Reader(ImmutableSet.<Class<?>>of(Enclosing.Hidden.class), ImmutableSet.of(new StringAtomIO()))
+			.readNode(Enclosing.Hidden.class, parse("(hidden value:x)"), IErrorHandler.RAISE).get();
+		Assert.assertEquals("x", hidden.getValue());
+	}
+
+	@Test
+	public void generatedReadersFollowTheJavaBeansRules() throws UnfinishedExpressionException {
+		Assert.assertTrue(GeneratedClasses.reader(Beans.class).isPresent());
+		Assert.assertEquals(1, InvocationReader.getProperties(Beans.class).size());
+
+		final Beans beans = GeneratedClasses.reader(Beans.class).get().bind(
+				new Reader(ImmutableSet.<Class<?>>of(Beans.class), ImmutableSet.of(new StringAtomIO(), new BooleanAtomIO())).new Context(IErrorHandler.RAISE),
+				Invocation.of(parse("(beans flag:true)"), IErrorHandler.RAISE));
+		Assert.assertTrue(beans.isFlag());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void readersCompiledForOtherPropertiesAreRejected() {
+		new InvocationReader<Value>(Value.class, "value", "name") {
+			@Override
+			protected Value create() {
+				return new Value();
+			}
+
+			@Override
+			protected void afterReading(final Value target, final Node node) {
+			}
+
+			@Override
+			protected void set(final int property, final Value target, final Object value) {
+			}
+		};
+	}
+
+	@Test
+	public void generatedReadersMatchRuntimeReaders() throws UnfinishedExpressionException {
+		assertSameResult(Value.class, "(value name:a of:1)");
+		assertSameResult(Div.class, "(/ (value of:1) (value of:2))");
+		assertSameResult(Plus.class, "(+ (value of:1) (* (value of:2)) (value of:3))");
+		assertSameResult(Times.class, "(* name:x)");
+		assertSameResult(ListOfListsOfString.class, "(listoflists x [a b] [c])");
+	}
+
+	private static <T> void assertSameResult(final Class<T> type, final String source) throws UnfinishedExpressionException {
+		final Reader reader = new Reader(
+				ImmutableSet.<Class<?>>of(Value.class, Div.class, Plus.class, Times.class, ListOfListsOfString.class),
+				ImmutableSet.of(new StringAtomIO(), new NumberAtomIO()));
+		final Writer writer = new Writer(ImmutableSet.<IAtomIO>of(new StringAtomIO(), new NumberAtomIO()));
+
+		final Invocation invocation = Invocation.of(parse(source), IErrorHandler.RAISE);
+
+		final T generated = GeneratedClasses.reader(type).get().bind(reader.new Context(IErrorHandler.RAISE), invocation);
+		final T loaded = new InvocationReaderLoader(type.getClassLoader(), Optional.<File>absent()).getReaderInstance(type).bind(reader.new Context(IErrorHandler.RAISE), invocation);
+
+		Assert.assertEquals(source, Node.copy(writer.write(loaded)).toString(), Node.copy(writer.write(generated)).toString());
+	}
+}
@@ -0,0 +1,81 @@
+package com.larkery.jasb.io.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.testmodel.Div;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Invocation;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Parser;
+
+public class InvocationReaderLoaderTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static Value readValue(final InvocationReaderLoader loader) throws UnfinishedExpressionException {
+		final Reader reader = new Reader(ImmutableSet.<Class<?>>of(Value.class), ImmutableSet.of(new StringAtomIO(), new NumberAtomIO()));
+		final Node node = Node.copy(Parser.source(URI.create("test"), new StringReader("(value name:x of:2)"), IErrorHandler.SLF4J));
+		return loader.getReaderInstance(Value.class).bind(reader.new Context(IErrorHandler.RAISE), Invocation.of(node, IErrorHandler.RAISE));
+	}
+
+	@Test
+	public void generatedClassesShareOneLoader() {
+		final InvocationReaderLoader loader = new InvocationReaderLoader(getClass().getClassLoader(), Optional.<File>absent());
+
+		Assert.assertSame(loader, loader.getReaderClass(Value.class).getClassLoader());
+		Assert.assertSame(loader, loader.getReaderClass(Div.class).getClassLoader());
+		Assert.assertSame(loader, loader.getReaderClass(Plus.class).getClassLoader());
+		Assert.assertSame(loader.getReaderClass(Value.class), loader.getReaderClass(Value.class));
+	}
+
+	@Test
+	public void damagedCacheIsGeneratedAgain() throws IOException, UnfinishedExpressionException {
+		final File cache = folder.newFolder();
+		final InvocationReaderLoader first = new InvocationReaderLoader(getClass().getClassLoader(), Optional.of(cache));
+		final String name = first.getReaderClass(Value.class).getName();
+
+		final File cached = new File(cache, name + ".class");
+		Assert.assertTrue(cached.isFile());
+		Assert.assertEquals(1, cache.list().length);
+
+		Files.write(cached.toPath(), new byte[] {1, 2, 3});
+		final InvocationReaderLoader second = new InvocationReaderLoader(getClass().getClassLoader(), Optional.of(cache));
+		final Value value = readValue(second);
+
+		Assert.assertEquals("x", value.getName());
+		Assert.assertEquals(2, value.getValue(), 0);
+
+		// the damaged file is replaced, so the next loader can use it
+		Assert.assertArrayEquals(new InvocationReaderGenerator<>(Value.class).generate(), Files.readAllBytes(cached.toPath()));
+		Assert.assertEquals(1, cache.list().length);
+	}
+
+	@Test
+	public void cachedBytecodeIsReused() throws IOException, UnfinishedExpressionException {
+		final File cache = folder.newFolder();
+		final InvocationReaderLoader first = new InvocationReaderLoader(getClass().getClassLoader(), Optional.of(cache));
+		final File cached = new File(cache, first.getReaderClass(Value.class).getName() + ".class");
+		final long modified = cached.lastModified();
+
+		final Value value = readValue(new InvocationReaderLoader(getClass().getClassLoader(), Optional.of(cache)));
+
+		Assert.assertEquals("x", value.getName());
+		Assert.assertEquals(modified, cached.lastModified());
+	}
+}
@@ -0,0 +1,99 @@
+package com.larkery.jasb.io.impl;
+
+import java.io.File;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.atom.BooleanAtomIO;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.testmodel.Primitives;
+import com.larkery.jasb.sexp.Invocation;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.IErrorHandler.IError;
+import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * Checks that primitive properties set without boxing get the same values and errors as when they are read through
+ * futures
+ */
+public class PrimitiveBindingTest {
+	private static final ImmutableSet<IAtomIO> ATOMS = ImmutableSet.of(new StringAtomIO(), new NumberAtomIO(), new BooleanAtomIO());
+
+	private static Node parse(final String s) throws UnfinishedExpressionException {
+		return Node.copy(Parser.source(URI.create("test"), new StringReader(s), IErrorHandler.SLF4J));
+	}
+
+	private static JASB create(final boolean synchronous) {
+		return JASB.of(ImmutableSet.<Class<?>>of(Primitives.class), ATOMS, synchronous);
+	}
+
+	private static String describe(final Optional<Primitives> value) {
+		if (!value.isPresent()) return "absent";
+		final Primitives p = value.get();
+		return p.getReal() + " " + p.getCount() + " " + p.getTotal() + " " + p.isFlag() + " " + p.getPositive();
+	}
+
+	/**
+	 * @return the errors, sorted because unresolved names are reported in no particular order
+	 */
+	private static List<String> messages(final ErrorCollector errors) {
+		final List<String> result = new ArrayList<>();
+		for (final IError e : errors.getErrors()) {
+			result.add(e.getType() + " " + e.getLocation() + " " + e.getMessage());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private static void assertSameInBothModes(final String source) throws UnfinishedExpressionException {
+		final ErrorCollector futureErrors = new ErrorCollector();
+		final ErrorCollector synchronousErrors = new ErrorCollector();
+
+		final Optional<Primitives> future = create(false).getReader().readNode(Primitives.class, parse(source), futureErrors);
+		final Optional<Primitives> synchronous = create(true).getReader().readNode(Primitives.class, parse(source), synchronousErrors);
+
+		Assert.assertEquals(source, describe(future), describe(synchronous));
+		Assert.assertEquals(source, messages(futureErrors), messages(synchronousErrors));
+	}
+
+	@Test
+	public void valuesAreTheSameAsWithFutures() throws UnfinishedExpressionException {
+		assertSameInBothModes("(primitives 1.5 count:2 total:30000000000 flag:true positive:4)");
+		assertSameInBothModes("(primitives 50% count:250% total:150% flag:false)");
+		assertSameInBothModes("(primitives -1e3 flag:yes)");
+	}
+
+	@Test
+	public void errorsAreTheSameAsWithFutures() throws UnfinishedExpressionException {
+		assertSameInBothModes("(primitives x count:1.5 total:y)");
+		assertSameInBothModes("(primitives #a count:#b)");
+		assertSameInBothModes("(primitives 1 count:(primitives 2))");
+		assertSameInBothModes("(primitives 1 positive:-1 count:3)");
+	}
+
+	@Test
+	public void generatedReadersSetPrimitives() throws UnfinishedExpressionException {
+		final Reader reader = new Reader(ImmutableSet.<Class<?>>of(Primitives.class), ATOMS);
+		final Invocation invocation = Invocation.of(parse("(primitives 2.5 count:3 total:4 flag:true)"), IErrorHandler.RAISE);
+
+		final Primitives compiled = GeneratedClasses.reader(Primitives.class).get().bind(reader.new Context(IErrorHandler.RAISE), invocation);
+		final Primitives loaded = new InvocationReaderLoader(Primitives.class.getClassLoader(), Optional.<File>absent())
+				.getReaderInstance(Primitives.class).bind(reader.new Context(IErrorHandler.RAISE), invocation);
+
+		Assert.assertEquals("2.5 3 4 true 0", describe(Optional.of(compiled)));
+		Assert.assertEquals("2.5 3 4 true 0", describe(Optional.of(loaded)));
+	}
+}
@@ -0,0 +1,71 @@
+package com.larkery.jasb.io.testmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.bind.BindNamedArgument;
+
+/**
+ * (atoms strings:[a b] numbers:[1 2] colours:[red Green] dates:[01/02/2003] periods:[1 day])
+ */
+@Bind("atoms")
+public class Atoms {
+	public enum Colour {
+		Red, Green, Blue, DarkSlateGrey
+	}
+
+	private List<String> strings = new ArrayList<>();
+	private List<Double> numbers = new ArrayList<>();
+	private List<Colour> colours = new ArrayList<>();
+	private List<DateTime> dates = new ArrayList<>();
+	private List<Period> periods = new ArrayList<>();
+
+	@BindNamedArgument
+	public List<String> getStrings() {
+		return strings;
+	}
+
+	public void setStrings(final List<String> strings) {
+		this.strings = strings;
+	}
+
+	@BindNamedArgument
+	public List<Double> getNumbers() {
+		return numbers;
+	}
+
+	public void setNumbers(final List<Double> numbers) {
+		this.numbers = numbers;
+	}
+
+	@BindNamedArgument
+	public List<Colour> getColours() {
+		return colours;
+	}
+
+	public void setColours(final List<Colour> colours) {
+		this.colours = colours;
+	}
+
+	@BindNamedArgument
+	public List<DateTime> getDates() {
+		return dates;
+	}
+
+	public void setDates(final List<DateTime> dates) {
+		this.dates = dates;
+	}
+
+	@BindNamedArgument
+	public List<Period> getPeriods() {
+		return periods;
+	}
+
+	public void setPeriods(final List<Period> periods) {
+		this.periods = periods;
+	}
+}
@@ -0,0 +1,56 @@
+package com.larkery.jasb.io.testmodel;
+
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.bind.BindNamedArgument;
+
+/**
+ * Properties which are only bound if the java beans rules are followed exactly
+ */
+@Bind("beans")
+public class Beans {
+	private boolean flag;
+	private String chained;
+	private Boolean boxed;
+
+	/**
+	 * Not the getter, as {@link #isFlag()} is preferred to it
+	 */
+	@BindNamedArgument("other")
+	public boolean getFlag() {
+		return flag;
+	}
+
+	@BindNamedArgument
+	public boolean isFlag() {
+		return flag;
+	}
+
+	public void setFlag(final boolean flag) {
+		this.flag = flag;
+	}
+
+	/**
+	 * Not bound, as its setter returns something
+	 */
+	@BindNamedArgument
+	public String getChained() {
+		return chained;
+	}
+
+	public Beans setChained(final String chained) {
+		this.chained = chained;
+		return this;
+	}
+
+	/**
+	 * Not a getter, as only primitive booleans can be got with is
+	 */
+	@BindNamedArgument
+	public Boolean isBoxed() {
+		return boxed;
+	}
+
+	public void setBoxed(final Boolean boxed) {
+		this.boxed = boxed;
+	}
+}
@@ -0,0 +1,63 @@
+package com.larkery.jasb.io.testmodel;
+
+import com.larkery.jasb.bind.Bind;
+import com.larkery.jasb.bind.BindNamedArgument;
+import com.larkery.jasb.bind.BindPositionalArgument;
+
+/**
+ * (primitives 1.5 count:2 total:3 flag:true)
+ */
+@Bind("primitives")
+public class Primitives {
+	private double real;
+	private int count;
+	private long total;
+	private boolean flag;
+	private int positive;
+
+	@BindPositionalArgument(0)
+	public double getReal() {
+		return real;
+	}
+
+	public void setReal(final double real) {
+		this.real = real;
+	}
+
+	@BindNamedArgument
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(final int count) {
+		this.count = count;
+	}
+
+	@BindNamedArgument
+	public long getTotal() {
+		return total;
+	}
+
+	public void setTotal(final long total) {
+		this.total = total;
+	}
+
+	@BindNamedArgument
+	public boolean isFlag() {
+		return flag;
+	}
+
+	public void setFlag(final boolean flag) {
+		this.flag = flag;
+	}
+
+	@BindNamedArgument
+	public int getPositive() {
+		return positive;
+	}
+
+	public void setPositive(final int positive) {
+		if (positive < 0) throw new IllegalArgumentException("positive must not be negative");
+		this.positive = positive;
+	}
+}
@@ -2,15 +2,30 @@ package com.larkery.jasb.sexp.module;
 
 import java.io.StringReader;
 import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.larkery.jasb.sexp.ISExpression;
 import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
 import com.larkery.jasb.sexp.errors.JasbErrorException;
+import com.larkery.jasb.sexp.parse.IMacro;
+import com.larkery.jasb.sexp.parse.Includer;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.MacroExpander;
 import com.larkery.jasb.sexp.parse.Parser;
+import com.larkery.jasb.sexp.parse.StandardSource;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
 
 public class TestModule {
 	private ISExpression p(final String s) {
@@ -77,4 +92,114 @@ public class TestModule {
 		Assert.assertEquals(Node.copy(p("(template hello/x [] !hello/stuff)")),
 							result);
 	}
+
+	@Test
+	public void cachedModulesMatchUncachedModules() throws Exception {
+		final String source = "(~module hello (template x [] (~local thing) (/y)) (template y []) (template init []))";
+		final ModuleCache cache = new ModuleCache();
+		
+		final Node plain = Node.copy(Module.transform(p(source), IErrorHandler.RAISE));
+		
+		final Module first = new Module(Optional.of(cache));
+		final Node compiled = Node.copy(MacroExpander.expand(ImmutableList.<IMacro>of(first), p(source), IErrorHandler.RAISE));
+		Assert.assertEquals(1, cache.size());
+		
+		final Module second = new Module(Optional.of(cache));
+		final Node reused = Node.copy(MacroExpander.expand(ImmutableList.<IMacro>of(second), p(source), IErrorHandler.RAISE));
+		Assert.assertEquals(1, cache.size());
+		
+		Assert.assertEquals(plain, compiled);
+		Assert.assertEquals(plain, reused);
+		Assert.assertEquals(first.initTemplates, second.initTemplates);
+		Assert.assertEquals(ImmutableList.of("hello/init"), second.initTemplates);
+	}
+	
+	@Test
+	public void changedModulesAreRecompiled() throws Exception {
+		final ModuleCache cache = new ModuleCache();
+		Node.copy(MacroExpander.expand(ImmutableList.<IMacro>of(new Module(Optional.of(cache))), 
+				p("(~module hello (template x [] a))"), IErrorHandler.RAISE));
+		final Node changed = Node.copy(MacroExpander.expand(ImmutableList.<IMacro>of(new Module(Optional.of(cache))), 
+				p("(~module hello (template x [] b))"), IErrorHandler.RAISE));
+		
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(Node.copy(p("(template hello/x [] b)")), changed);
+	}
+
+	private IResolver resolver(final String source) {
+		return new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) {
+				return Includer.stringLocationReader(href, source);
+			}
+			
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Test
+	public void lazyModulesExpandLikeEagerModules() throws Exception {
+		final IResolver resolver = resolver(
+				"(~module hello (template x [@a] (thing (/y) a:@a)) (template y [] (~local name)) (template init [] (start)))" +
+				"(~init-modules)" +
+				"(hello/x a:1)");
+		final URI root = URI.create("test://root");
+		
+		final Expansion eager = StandardSource.builder(resolver).build().expand(root);
+		final Expansion lazy = StandardSource.builder(resolver).withLazyModules().build().expand(root);
+		
+		Assert.assertTrue(lazy.errors.toString(), lazy.errors.isEmpty());
+		Assert.assertEquals(eager.nodes, lazy.nodes);
+	}
+	
+	@Test
+	public void lazyModuleTemplatesAreOnlyCompiledWhenUsed() throws Exception {
+		final IResolver resolver = resolver(
+				"(~module hello (template x [] ok) (template broken [@a] @b))" +
+				"(hello/x)");
+		final URI root = URI.create("test://root");
+		
+		final Expansion eager = StandardSource.builder(resolver).build().expand(root);
+		final Expansion lazy = StandardSource.builder(resolver).withLazyModules().build().expand(root);
+		
+		Assert.assertFalse(eager.errors.isEmpty());
+		Assert.assertTrue(lazy.errors.toString(), lazy.errors.isEmpty());
+		Assert.assertEquals(eager.nodes, lazy.nodes);
+	}
+	
+	@Test
+	public void lazyModulesCanBeCached() throws Exception {
+		final ModuleCache cache = new ModuleCache();
+		final IResolver resolver = resolver("(~module hello (template x [] ok)) (hello/x)");
+		final URI root = URI.create("test://root");
+		
+		final Expansion first = StandardSource.builder(resolver).withLazyModules().withModuleCache(cache).build().expand(root);
+		final Expansion second = StandardSource.builder(resolver).withLazyModules().withModuleCache(cache).build().expand(root);
+		
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(first.nodes, second.nodes);
+		Assert.assertEquals(ImmutableList.of(Node.copy(p("ok"))), second.nodes);
+	}
+	
+	@Test
+	public void redefinedLazyTemplatesAreReportedWithoutCompilingThem() throws Exception {
+		final Module module = new Module(Optional.<ModuleCache>absent(), true);
+		Node.copyAll(MacroExpander.expand(ImmutableList.<IMacro>of(module),
+				p("(~module hello (template x [] ok) (template y [] fine))"), IErrorHandler.RAISE));
+		
+		final ErrorCollector errors = new ErrorCollector();
+		final Set<String> taken = new HashSet<>(ImmutableSet.of("hello/x"));
+		final List<IMacro> templates = module.getTemplates(taken, errors);
+		
+		Assert.assertEquals(1, templates.size());
+		Assert.assertEquals("hello/y", templates.get(0).getName());
+		Assert.assertEquals(1, errors.getErrors().size());
+		Assert.assertTrue(errors.getErrors().get(0).getMessage().contains("redefinition of template hello/x"));
+		for (final IMacro template : module.getTemplates()) {
+			Assert.assertFalse(template.getName(), ((LazyTemplate) template).isCompiled());
+		}
+	}
 }
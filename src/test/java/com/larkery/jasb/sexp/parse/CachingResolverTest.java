@@ -0,0 +1,176 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+
+public class CachingResolverTest {
+	private static final URI A = URI.create("test://a");
+	private static final URI B = URI.create("test://b");
+
+	private Map<URI, String> values;
+	private Map<URI, Integer> versions;
+	private AtomicInteger reads;
+	private AtomicInteger validations;
+	private IResolver resolver;
+	private final CachingResolver.IValidator validator = new CachingResolver.IValidator() {
+		@Override
+		public Object version(final URI href) {
+			validations.incrementAndGet();
+			return versions.get(href);
+		}
+	};
+
+	@Before
+	public void setup() {
+		values = new HashMap<>();
+		versions = new HashMap<>();
+		reads = new AtomicInteger();
+		validations = new AtomicInteger();
+		resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				reads.incrementAndGet();
+				try {
+					Thread.sleep(10);
+				} catch (final InterruptedException e) {
+					throw new ResolutionException(e.getMessage());
+				}
+				if (!values.containsKey(href)) {
+					throw new ResolutionException("nothing at " + href);
+				}
+				return Includer.stringLocationReader(href, values.get(href));
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static String read(final IResolver resolver, final URI href) throws ResolutionException, IOException {
+		return IOUtils.toString(resolver.resolve(href, IErrorHandler.NOP).getReader());
+	}
+
+	@Test
+	public void contentIsOnlyReadOnce() throws Exception {
+		values.put(A, "hello");
+		final CachingResolver caching = CachingResolver.builder(resolver).build();
+
+		Assert.assertEquals("hello", read(caching, A));
+		Assert.assertEquals("hello", read(caching, A));
+
+		Assert.assertEquals(1, reads.get());
+		Assert.assertEquals(1, caching.getStats().hitCount());
+		Assert.assertEquals(1, caching.getStats().missCount());
+	}
+
+	@Test
+	public void concurrentRequestsOnlyReadOnce() throws Exception {
+		values.put(A, "hello");
+		final CachingResolver caching = CachingResolver.builder(resolver).build();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final CountDownLatch start = new CountDownLatch(1);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						start.await();
+						return read(caching, A);
+					}
+				}));
+			}
+			start.countDown();
+			for (final Future<String> result : results) {
+				Assert.assertEquals("hello", result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(1, reads.get());
+	}
+
+	@Test
+	public void largeContentIsEvicted() throws Exception {
+		values.put(A, "0123456789");
+		values.put(B, "0123456789");
+		final CachingResolver caching = CachingResolver.builder(resolver).withMaximumCharacters(15).build();
+
+		read(caching, A);
+		read(caching, B);
+		read(caching, A);
+
+		Assert.assertEquals(3, reads.get());
+		Assert.assertTrue(caching.getStats().evictionCount() >= 1);
+		Assert.assertTrue(caching.getCachedCharacters() <= 15);
+	}
+
+	@Test
+	public void changedContentIsReadAgain() throws Exception {
+		values.put(A, "old");
+		versions.put(A, 1);
+		final CachingResolver caching = CachingResolver.builder(resolver).withValidator(validator).build();
+
+		Assert.assertEquals("old", read(caching, A));
+		values.put(A, "new");
+		Assert.assertEquals("old", read(caching, A));
+		versions.put(A, 2);
+		Assert.assertEquals("new", read(caching, A));
+		Assert.assertEquals("new", read(caching, A));
+
+		Assert.assertEquals(2, reads.get());
+		Assert.assertEquals(1, caching.getStaleCount());
+	}
+
+	@Test
+	public void contentIsValidatedOncePerResolve() throws Exception {
+		values.put(A, "old");
+		versions.put(A, 1);
+		final CachingResolver caching = CachingResolver.builder(resolver).withValidator(validator).build();
+
+		read(caching, A);
+		Assert.assertEquals(1, validations.get());
+		read(caching, A);
+		Assert.assertEquals(2, validations.get());
+		versions.put(A, 2);
+		read(caching, A);
+		Assert.assertEquals(3, validations.get());
+		Assert.assertEquals(1, caching.getStaleCount());
+	}
+
+	@Test
+	public void failuresAreNotCached() throws Exception {
+		final CachingResolver caching = CachingResolver.builder(resolver).build();
+		try {
+			read(caching, A);
+			Assert.fail("should not resolve");
+		} catch (final ResolutionException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("nothing at"));
+		}
+		values.put(A, "now here");
+		Assert.assertEquals("now here", read(caching, A));
+	}
+}
@@ -0,0 +1,186 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+public class ExpansionCacheTest {
+	private static final URI ROOT = URI.create("test://root");
+	private static final URI LIBRARY = URI.create("test://library");
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Map<URI, String> values;
+	private Map<URI, Integer> versions;
+	private Multiset<URI> reads;
+	private IResolver resolver;
+	private final CachingResolver.IValidator validator = new CachingResolver.IValidator() {
+		@Override
+		public Object version(final URI href) {
+			return versions.containsKey(href) ? versions.get(href) : 0;
+		}
+	};
+
+	@Before
+	public void setup() {
+		values = new HashMap<>();
+		versions = new HashMap<>();
+		reads = HashMultiset.create();
+		resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				reads.add(href);
+				if (!values.containsKey(href)) {
+					throw new ResolutionException("nothing at " + href);
+				}
+				return Includer.stringLocationReader(href, values.get(href));
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return URI.create("test://" + include.getTail().get(0).toString());
+			}
+		};
+		values.put(ROOT, "(include library) (greet who:world)");
+		values.put(LIBRARY, "(template greet [@who] (hello @who))");
+	}
+
+	@Test
+	public void unchangedDocumentsAreNotReadAgainWithAValidator() {
+		final ExpansionCache cache = new ExpansionCache(10, validator);
+		final StandardSource source = StandardSource.builder(resolver).withExpansionCache(cache).build();
+
+		final Expansion first = source.expand(ROOT);
+		Assert.assertEquals("(hello world)", first.nodes.get(0).toString());
+		Assert.assertSame(first, source.expand(ROOT));
+		Assert.assertSame(first, source.expand(ROOT));
+
+		Assert.assertEquals(1, reads.count(LIBRARY));
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void changedDocumentsAreSeen() {
+		final ExpansionCache cache = new ExpansionCache(10, validator);
+		final StandardSource source = StandardSource.builder(resolver).withExpansionCache(cache).build();
+
+		source.expand(ROOT);
+		values.put(LIBRARY, "(template greet [@who] (goodbye @who))");
+		versions.put(LIBRARY, 1);
+
+		Assert.assertEquals("(goodbye world)", source.expand(ROOT).nodes.get(0).toString());
+		Assert.assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void touchedButUnchangedDocumentsAreNotExpandedAgain() {
+		final ExpansionCache cache = new ExpansionCache(10, validator);
+		final StandardSource source = StandardSource.builder(resolver).withExpansionCache(cache).build();
+
+		final Expansion first = source.expand(ROOT);
+		versions.put(LIBRARY, 1);
+		Assert.assertSame(first, source.expand(ROOT));
+		Assert.assertEquals(1, cache.getUnchangedCount());
+		Assert.assertSame(first, source.expand(ROOT));
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void aValidatorIsRequired() {
+		new ExpansionCache(10, CachingResolver.NEVER);
+	}
+
+	@Test
+	public void fileDocumentsAreCheckedByModificationTimeByDefault() throws IOException {
+		final File root = folder.newFile("root");
+		final File library = folder.newFile("library");
+		Files.write(root.toPath(), "(include library) (greet who:world)".getBytes(StandardCharsets.UTF_8));
+		Files.write(library.toPath(), "(template greet [@who] (hello @who))".getBytes(StandardCharsets.UTF_8));
+		final IResolver files = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				reads.add(href);
+				try {
+					return Includer.stringLocationReader(href, new String(Files.readAllBytes(Paths.get(href)), StandardCharsets.UTF_8));
+				} catch (final IOException e) {
+					throw new ResolutionException(e.getMessage());
+				}
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return library.toURI();
+			}
+		};
+
+		final ExpansionCache cache = new ExpansionCache(10);
+		final StandardSource source = StandardSource.builder(files).withExpansionCache(cache).build();
+
+		final Expansion first = source.expand(root.toURI());
+		Assert.assertSame(first, source.expand(root.toURI()));
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1, reads.count(library.toURI()));
+	}
+
+	@Test
+	public void documentsWithoutVersionsAreAlwaysChecked() {
+		// the default validator only knows about file: documents
+		final ExpansionCache cache = new ExpansionCache(10);
+		final StandardSource source = StandardSource.builder(resolver).withExpansionCache(cache).build();
+
+		final Expansion first = source.expand(ROOT);
+		Assert.assertSame(first, source.expand(ROOT));
+		values.put(LIBRARY, "(template greet [@who] (goodbye @who))");
+		Assert.assertEquals("(goodbye world)", source.expand(ROOT).nodes.get(0).toString());
+		Assert.assertEquals(3, reads.count(LIBRARY));
+	}
+
+	@Test
+	public void differentMacrosAreDifferentEntries() {
+		final ExpansionCache cache = new ExpansionCache(10, validator);
+		final IMacro join = new JoinMacro();
+		final StandardSource plain = StandardSource.builder(resolver).withExpansionCache(cache).build();
+		final StandardSource joining = StandardSource.builder(resolver).withMacros(join).withExpansionCache(cache).build();
+		final StandardSource joiningAgain = StandardSource.builder(resolver).withMacros(join).withExpansionCache(cache).build();
+
+		final Expansion a = plain.expand(ROOT);
+		final Expansion b = joining.expand(ROOT);
+		Assert.assertNotSame(a, b);
+		Assert.assertSame(b, joiningAgain.expand(ROOT));
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void invalidatingADocumentForgetsItsDependants() {
+		final ExpansionCache cache = new ExpansionCache(10, validator);
+		final StandardSource source = StandardSource.builder(resolver).withExpansionCache(cache).build();
+
+		final Expansion first = source.expand(ROOT);
+		cache.invalidate(URI.create("test://unrelated"));
+		Assert.assertSame(first, source.expand(ROOT));
+		cache.invalidate(LIBRARY);
+		Assert.assertNotSame(first, source.expand(ROOT));
+	}
+}
@@ -0,0 +1,74 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+public class ExpansionLimitsTest {
+	private static final URI ROOT = URI.create("test://root");
+
+	private IResolver resolver(final String source) {
+		return new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) {
+				return Includer.stringLocationReader(href, source);
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static final String DOUBLING =
+			"(template twice [@rest] @rest @rest)" +
+			"(template many [] (twice (twice (twice (twice (twice (twice (twice (twice (twice (twice x)))))))))))";
+
+	@Test
+	public void invocationsWhichProduceTooMuchAreStopped() {
+		final Expansion expansion = StandardSource.builder(resolver(DOUBLING + "(top (many))"))
+				.withLimits(new ExpansionLimits(100, Long.MAX_VALUE))
+				.build()
+				.expand(ROOT);
+
+		Assert.assertTrue(expansion.nodes.isEmpty());
+		Assert.assertEquals(1, expansion.errors.size());
+		final String message = expansion.errors.get(0).getMessage();
+		Assert.assertTrue(message, message.contains("many"));
+		Assert.assertTrue(message, message.contains("twice"));
+	}
+
+	@Test
+	public void formsWhichProduceTooMuchAreStopped() {
+		final Expansion expansion = StandardSource.builder(resolver(DOUBLING + "(top (many))"))
+				.withLimits(new ExpansionLimits(Long.MAX_VALUE, 100))
+				.build()
+				.expand(ROOT);
+
+		Assert.assertTrue(expansion.nodes.isEmpty());
+		Assert.assertEquals(1, expansion.errors.size());
+		final String message = expansion.errors.get(0).getMessage();
+		Assert.assertTrue(message, message.contains("more than 100 terms"));
+	}
+
+	@Test
+	public void expansionsWithinTheLimitsAreUnchanged() {
+		final String source = DOUBLING + "(top (many)) (other (many))";
+		final Expansion limited = StandardSource.builder(resolver(source))
+				.withLimits(new ExpansionLimits(1025, 1026))
+				.build()
+				.expand(ROOT);
+		final Expansion plain = StandardSource.builder(resolver(source)).build().expand(ROOT);
+
+		Assert.assertTrue(limited.errors.toString(), limited.errors.isEmpty());
+		Assert.assertEquals(plain.nodes, limited.nodes);
+	}
+}
@@ -0,0 +1,96 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.ExpansionProfiler.Stats;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+public class ExpansionProfilerTest {
+	private IResolver resolver;
+	private Map<URI, String> values;
+
+	@Before
+	public void setup() {
+		values = new HashMap<>();
+		resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) {
+				return Includer.stringLocationReader(href, values.get(href));
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return URI.create("test://" + include.getTail().get(0).toString());
+			}
+		};
+	}
+
+	private Stats find(final ExpansionProfiler profiler, final String name) {
+		for (final Stats s : profiler.getStats()) {
+			if (s.getName().equals(name)) return s;
+		}
+		Assert.fail("No statistics for " + name);
+		return null;
+	}
+
+	@Test
+	public void profilerRecordsNestedTemplates() throws Exception {
+		final URI root = URI.create("test://root");
+		values.put(root,
+				"(template inner [@x] (value @x))" +
+				"(template outer [] (list (inner x:1) (inner x:2)))" +
+				"(outer)");
+
+		final ExpansionProfiler profiler = new ExpansionProfiler();
+		final Expansion profiled = StandardSource.builder(resolver).withInterceptor(profiler).build().expand(root);
+		final Expansion plain = StandardSource.builder(resolver).build().expand(root);
+
+		Assert.assertEquals("profiling should not change the output", plain.nodes, profiled.nodes);
+		Assert.assertTrue(profiled.errors.isEmpty());
+
+		final Stats outer = find(profiler, "outer");
+		final Stats inner = find(profiler, "inner");
+
+		Assert.assertEquals(1, outer.getInvocations());
+		Assert.assertEquals(2, inner.getInvocations());
+		Assert.assertEquals(1, outer.getMaximumDepth());
+		Assert.assertEquals(2, inner.getMaximumDepth());
+		// (list (value 1) (value 2)) is three lists and five atoms, and each (value n) is one list and two atoms
+		Assert.assertEquals(8, outer.getNodes());
+		Assert.assertEquals(6, inner.getNodes());
+		Assert.assertTrue(outer.getTotalNanos() >= outer.getSelfNanos());
+
+		final StringBuilder folded = new StringBuilder();
+		profiler.writeFoldedStacks(folded);
+		Assert.assertTrue(folded.toString(), folded.toString().contains("outer;inner "));
+
+		final StringBuilder report = new StringBuilder();
+		profiler.writeReport(report);
+		Assert.assertTrue(report.toString(), report.toString().contains("inner"));
+	}
+
+	@Test
+	public void nestedExpandersInheritProfiler() throws Exception {
+		final URI root = URI.create("test://root");
+		values.put(root,
+				"(~module m (template t [] (value 1)))" +
+				"(m/t)");
+
+		final ExpansionProfiler profiler = new ExpansionProfiler();
+		final Expansion expansion = StandardSource.builder(resolver).withInterceptor(profiler).build().expand(root);
+
+		Assert.assertTrue(expansion.errors.toString(), expansion.errors.isEmpty());
+		find(profiler, "~module");
+		find(profiler, "m/t");
+	}
+}
@@ -0,0 +1,184 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.larkery.jasb.sexp.Delim;
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.ISExpressionVisitor;
+import com.larkery.jasb.sexp.Location;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+public class IncludeGraphTest {
+	private static final URI ROOT = URI.create("test://root");
+	private Map<URI, String> values;
+	private Multiset<URI> resolutions;
+	private IResolver resolver;
+
+	@Before
+	public void setup() {
+		values = new HashMap<>();
+		resolutions = HashMultiset.create();
+		resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				resolutions.add(href);
+				if (!values.containsKey(href)) {
+					throw new ResolutionException("no such thing as " + href);
+				}
+				return Includer.stringLocationReader(href, values.get(href));
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return URI.create("test://" + include.getTail().get(0).toString());
+			}
+		};
+	}
+
+	/**
+	 * Records everything a visitor is told, including where it was told it
+	 */
+	private static List<String> events(final ISExpression expression) {
+		final List<String> result = new ArrayList<>();
+		expression.accept(new ISExpressionVisitor() {
+			@Override
+			public void locate(final Location loc) {
+				result.add(loc.toString());
+			}
+
+			@Override
+			public void open(final Delim delimeter) {
+				result.add("open " + delimeter);
+			}
+
+			@Override
+			public void atom(final String string) {
+				result.add(string);
+			}
+
+			@Override
+			public void comment(final String text) {
+				result.add("; " + text);
+			}
+
+			@Override
+			public void close(final Delim delimeter) {
+				result.add("close " + delimeter);
+			}
+		});
+		return result;
+	}
+
+	private void checkSameAsIncluder() {
+		final ErrorCollector sourceErrors = new ErrorCollector();
+		final List<String> fromSource = events(Includer.source(resolver, ROOT, sourceErrors));
+
+		final ErrorCollector graphErrors = new ErrorCollector();
+		final IncludeGraph graph = IncludeGraph.build(resolver, ROOT, graphErrors);
+		final List<String> fromGraph = events(graph.source(graphErrors));
+
+		Assert.assertEquals(fromSource, fromGraph);
+		Assert.assertEquals(sourceErrors.getErrors().isEmpty(), graphErrors.getErrors().isEmpty());
+
+		final HashMultimap<URI, URI> dependencies = HashMultimap.create();
+		Assert.assertEquals(Includer.collect(resolver, ROOT, new ErrorCollector(), dependencies), graph.getContents());
+		Assert.assertEquals(dependencies, graph.getDependencies());
+	}
+
+	@Test
+	public void sourceIsTheSameAsFromIncluder() {
+		values.put(ROOT, "(a (include x) (include y)) (no-include (include z)) ; comment\n(include-modules m)");
+		values.put(URI.create("test://x"), "(from x (include y))");
+		values.put(URI.create("test://y"), "(from y)");
+		values.put(URI.create("test://z"), "z");
+		values.put(URI.create("test://m"), "(~module m) (dropped) (no-include (include z))");
+		checkSameAsIncluder();
+	}
+
+	@Test
+	public void recursiveIncludesAreStillErrors() {
+		values.put(ROOT, "(include x)");
+		values.put(URI.create("test://x"), "(include y)");
+		values.put(URI.create("test://y"), "(include x)");
+		checkSameAsIncluder();
+	}
+
+	@Test
+	public void missingIncludesAreStillErrors() {
+		values.put(ROOT, "(include x) (include nothing)");
+		values.put(URI.create("test://x"), "x");
+		checkSameAsIncluder();
+	}
+
+	@Test
+	public void eachDocumentIsResolvedOnce() {
+		values.put(ROOT, "(include x) (include y) (include x)");
+		values.put(URI.create("test://x"), "(include y)");
+		values.put(URI.create("test://y"), "y");
+
+		final IncludeGraph graph = IncludeGraph.build(resolver, ROOT, new ErrorCollector());
+		for (int i = 0; i < 3; i++) {
+			events(graph.source(new ErrorCollector()));
+		}
+
+		Assert.assertEquals(3, resolutions.size());
+		Assert.assertEquals(3, resolutions.elementSet().size());
+	}
+
+	@Test
+	public void graphsCanBeExpanded() {
+		values.put(ROOT, "(include t) (use 1)");
+		values.put(URI.create("test://t"), "(template use [@1] (used @1))");
+
+		final StandardSource source = StandardSource.builder(resolver).build();
+		final Expansion fromGraph = source.expand(IncludeGraph.build(resolver, ROOT, new ErrorCollector()));
+		final Expansion fromResolver = source.expand(ROOT);
+
+		Assert.assertTrue(fromGraph.errors.toString(), fromGraph.errors.isEmpty());
+		Assert.assertEquals(fromResolver.nodes, fromGraph.nodes);
+	}
+
+	@Test
+	public void hashDependsOnContent() {
+		values.put(ROOT, "(include x)");
+		values.put(URI.create("test://x"), "x");
+		final IncludeGraph first = IncludeGraph.build(resolver, ROOT, new ErrorCollector());
+		final IncludeGraph same = IncludeGraph.build(resolver, ROOT, new ErrorCollector());
+		values.put(URI.create("test://x"), "y");
+		final IncludeGraph different = IncludeGraph.build(resolver, ROOT, new ErrorCollector());
+
+		Assert.assertEquals(first.getHash(), same.getHash());
+		Assert.assertNotEquals(first.getHash(), different.getHash());
+	}
+
+	@Test
+	public void asynchronousSourcesExpandTheSame() {
+		values.put(ROOT, "(include t) (include u) (use 1)");
+		values.put(URI.create("test://t"), "(template use [@1] (used @1))");
+		values.put(URI.create("test://u"), "(include t) (other)");
+
+		final Expansion plain = StandardSource.builder(resolver).build().expand(ROOT);
+		final Expansion async = StandardSource.builder(Includer.asynchronous(resolver, MoreExecutors.sameThreadExecutor())).build().expand(ROOT);
+
+		Assert.assertEquals(plain.nodes, async.nodes);
+		Assert.assertEquals(plain.errors.size(), async.errors.size());
+	}
+}
@@ -0,0 +1,87 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.HashMultimap;
+import com.larkery.jasb.sexp.Atom;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+
+/**
+ * Compares sequential and concurrent include collection against a resolver which takes a fixed time to answer each
+ * request, standing in for a remote scenario repository. Not run as part of the tests; run main() by hand.
+ */
+public class IncluderBenchmark {
+	private static final int DOCUMENTS = 200;
+	private static final int FAN_OUT = 4;
+	private static final long LATENCY_MILLIS = 20;
+
+	public static void main(final String[] args) throws Exception {
+		final Map<URI, String> documents = new HashMap<>();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			final StringBuilder sb = new StringBuilder();
+			for (int j = 1; j <= FAN_OUT; j++) {
+				final int child = i * FAN_OUT + j;
+				if (child < DOCUMENTS) {
+					sb.append("(include d").append(child).append(") ");
+				}
+			}
+			sb.append("(value ").append(i).append(")");
+			documents.put(URI.create("test://d" + i), sb.toString());
+		}
+
+		final IResolver resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				try {
+					Thread.sleep(LATENCY_MILLIS);
+				} catch (final InterruptedException e) {
+					throw new ResolutionException(e.getMessage());
+				}
+				return Includer.stringLocationReader(href, documents.get(href));
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+				final Node name = include.get(1);
+				if (name instanceof Atom) {
+					return URI.create("test://" + ((Atom) name).getValue());
+				}
+				throw new ResolutionException("bad include " + include);
+			}
+		};
+
+		final URI root = URI.create("test://d0");
+
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			final Map<URI, String> sequential = Includer.collect(resolver, root, IErrorHandler.SLF4J, HashMultimap.<URI, URI>create());
+			final long sequentialMillis = (System.nanoTime() - start) / 1000000;
+
+			for (final int threads : new int[] {4, 16, 64}) {
+				final ExecutorService executor = Executors.newFixedThreadPool(threads);
+				try {
+					start = System.nanoTime();
+					final Map<URI, String> concurrent = Includer.collect(resolver, root, IErrorHandler.SLF4J,
+							HashMultimap.<URI, URI>create(), executor, threads);
+					final long concurrentMillis = (System.nanoTime() - start) / 1000000;
+					if (!concurrent.equals(sequential)) {
+						throw new AssertionError("concurrent collect produced different documents");
+					}
+					System.out.printf("%d documents, %dms latency: sequential %dms, %d threads %dms%n",
+							sequential.size(), LATENCY_MILLIS, sequentialMillis, threads, concurrentMillis);
+				} finally {
+					executor.shutdown();
+				}
+			}
+		}
+	}
+}
@@ -4,17 +4,27 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.larkery.jasb.sexp.Atom;
 import com.larkery.jasb.sexp.ISExpression;
 import com.larkery.jasb.sexp.Node;
 import com.larkery.jasb.sexp.Seq;
 import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
 import com.larkery.jasb.sexp.errors.UnfinishedExpressionException;
+import com.larkery.jasb.sexp.parse.Includer.IAsyncResolver;
 import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
 import com.larkery.jasb.sexp.parse.Includer.IResolver;
 
@@ -140,4 +150,127 @@ public class IncluderTest extends VisitingTest {
 							"(test (~module module2 x y z) (~module module1 x y z))",
 							n.toString());
 	}
+
+	@Test
+	public void concurrentCollectMatchesSequentialCollect() throws Exception {
+		values.put(URI.create("test://root"), "(include a) (include b) (no-include (include n))");
+		values.put(URI.create("test://a"), "(include c) (include d) (include-modules c)");
+		values.put(URI.create("test://b"), "(x (include c))");
+		values.put(URI.create("test://c"), "(include e)");
+		values.put(URI.create("test://d"), "d (no-include (include n))");
+		values.put(URI.create("test://e"), "e");
+		values.put(URI.create("test://n"), "n");
+		
+		final IResolver slow = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				try {
+					Thread.sleep(5);
+				} catch (final InterruptedException e) {
+					throw new ResolutionException(e.getMessage());
+				}
+				return resolver.resolve(href, errors);
+			}
+			
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+				return resolver.convert(include, errors);
+			}
+		};
+		
+		final HashMultimap<URI, URI> sequentialGraph = HashMultimap.create();
+		final Map<URI, String> sequential = Includer.collect(slow, URI.create("test://root"), record, sequentialGraph);
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final HashMultimap<URI, URI> concurrentGraph = HashMultimap.create();
+			final Map<URI, String> concurrent = Includer.collect(slow, URI.create("test://root"), record, concurrentGraph, executor, 4);
+			
+			Assert.assertEquals(sequential, concurrent);
+			Assert.assertEquals(sequentialGraph, concurrentGraph);
+			Assert.assertEquals(7, concurrent.size());
+			Assert.assertTrue(record.getErrors().toString(), record.getErrors().isEmpty());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void asyncCollectMatchesSequentialCollect() {
+		values.put(URI.create("test://root"), "(include a) (include b) (no-include (include n))");
+		values.put(URI.create("test://a"), "(include c) (include-modules c)");
+		values.put(URI.create("test://b"), "(x (include c))");
+		values.put(URI.create("test://c"), "c");
+		values.put(URI.create("test://n"), "n");
+		
+		final HashMultimap<URI, URI> sequentialGraph = HashMultimap.create();
+		final Map<URI, String> sequential = Includer.collect(resolver, URI.create("test://root"), record, sequentialGraph);
+		
+		final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+		try {
+			final HashMultimap<URI, URI> asyncGraph = HashMultimap.create();
+			final Map<URI, String> async = Includer.collect(Includer.asynchronous(resolver, executor), URI.create("test://root"), record, asyncGraph);
+			
+			Assert.assertEquals(sequential, async);
+			Assert.assertEquals(sequentialGraph, asyncGraph);
+			Assert.assertTrue(record.getErrors().toString(), record.getErrors().isEmpty());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void slowIncludesDoNotHoldUpOthers() {
+		values.put(URI.create("test://root"), "(include slow) (include fast)");
+		values.put(URI.create("test://slow"), "slow");
+		values.put(URI.create("test://fast"), "(include faster)");
+		values.put(URI.create("test://faster"), "faster");
+		
+		final SettableFuture<ILocationReader> slow = SettableFuture.create();
+		final IAsyncResolver async = new IAsyncResolver() {
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+				return resolver.convert(include, errors);
+			}
+			
+			@Override
+			public ListenableFuture<ILocationReader> resolveAsync(final URI href, final IErrorHandler errors) {
+				if (href.equals(URI.create("test://slow"))) {
+					return slow;
+				}
+				if (href.equals(URI.create("test://faster"))) {
+					// fast has been parsed whilst slow was still outstanding
+					slow.set(Includer.stringLocationReader(URI.create("test://slow"), "slow"));
+				}
+				return Futures.immediateFuture(Includer.stringLocationReader(href, values.get(href)));
+			}
+		};
+		
+		final Map<URI, String> collected = Includer.collect(async, URI.create("test://root"), record, null);
+		Assert.assertEquals(4, collected.size());
+	}
+	
+	@Test
+	public void asyncFailuresAreErrors() {
+		values.put(URI.create("test://root"), "(include missing)");
+		final IAsyncResolver async = new IAsyncResolver() {
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) throws ResolutionException {
+				return resolver.convert(include, errors);
+			}
+			
+			@Override
+			public ListenableFuture<ILocationReader> resolveAsync(final URI href, final IErrorHandler errors) {
+				if (values.containsKey(href)) {
+					return Futures.immediateFuture(Includer.stringLocationReader(href, values.get(href)));
+				} else {
+					return Futures.immediateFailedFuture(new ResolutionException("no " + href));
+				}
+			}
+		};
+		
+		final Map<URI, String> collected = Includer.collect(async, URI.create("test://root"), record, null);
+		Assert.assertEquals(1, collected.size());
+		Assert.assertEquals(1, record.getErrors().size());
+	}
 }
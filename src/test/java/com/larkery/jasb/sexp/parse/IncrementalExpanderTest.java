@@ -0,0 +1,166 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+public class IncrementalExpanderTest {
+	private Path directory;
+	private Multiset<URI> reads;
+	private IncrementalExpander expander;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("jasb");
+		reads = HashMultiset.create();
+		final IResolver resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				synchronized (reads) {
+					reads.add(href);
+				}
+				if (!new File(href).exists()) {
+					throw new ResolutionException("no file " + href);
+				}
+				return Includer.fileLocationReader(href);
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return uri(include.getTail().get(0).toString());
+			}
+		};
+		expander = new IncrementalExpander(resolver, StandardSource.builder(resolver).build());
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	private URI uri(final String name) {
+		return directory.resolve(name).toUri();
+	}
+
+	private void write(final String name, final String content) throws IOException {
+		Files.write(directory.resolve(name), content.getBytes(Charsets.UTF_8));
+	}
+
+	@Test
+	public void onlyDependantsAreRebuilt() throws IOException {
+		write("library", "(template greet [@who] (hello @who))");
+		write("one", "(include library) (greet who:one)");
+		write("two", "(include library) (include other) (greet who:two)");
+		write("other", "(thing)");
+		write("three", "(standalone)");
+
+		expander.get(uri("one"));
+		expander.get(uri("two"));
+		expander.get(uri("three"));
+		Assert.assertEquals(1, reads.count(uri("library")));
+
+		write("library", "(template greet [@who] (goodbye @who))");
+		Assert.assertEquals(ImmutableSet.of(uri("one"), uri("two")), expander.changed(Collections.singleton(uri("library"))));
+
+		final Expansion one = expander.get(uri("one"));
+		Assert.assertTrue(one.errors.toString(), one.errors.isEmpty());
+		Assert.assertEquals("(goodbye one)", one.nodes.get(0).toString());
+
+		Assert.assertEquals(2, reads.count(uri("library")));
+		Assert.assertEquals(1, reads.count(uri("other")));
+		Assert.assertEquals(1, reads.count(uri("three")));
+
+		Assert.assertEquals(ImmutableSet.of(uri("two")), expander.changed(Collections.singleton(uri("other"))));
+		Assert.assertEquals(Collections.emptySet(), expander.changed(Collections.singleton(uri("unrelated"))));
+	}
+
+	@Test
+	public void missingIncludesAreRebuiltWhenTheyAppear() throws IOException {
+		write("root", "(include later)");
+		Assert.assertFalse(expander.get(uri("root")).errors.isEmpty());
+
+		write("later", "(here)");
+		Assert.assertEquals(ImmutableSet.of(uri("root")), expander.changed(Arrays.asList(uri("later"))));
+		final Expansion root = expander.get(uri("root"));
+		Assert.assertTrue(root.errors.toString(), root.errors.isEmpty());
+		Assert.assertEquals("(here)", root.nodes.get(0).toString());
+	}
+
+	@Test
+	public void removedIncludesAreNoLongerDependencies() throws IOException {
+		write("root", "(include library)");
+		write("library", "(a)");
+		expander.get(uri("root"));
+		Assert.assertEquals(ImmutableSet.of(uri("root")), expander.getDependants(uri("library")));
+
+		write("root", "(b)");
+		expander.changed(Collections.singleton(uri("root")));
+		Assert.assertEquals(Collections.emptySet(), expander.getDependants(uri("library")));
+	}
+
+	@Test
+	public void changesToAddressesWrittenDifferentlyAreSeen() throws IOException {
+		write("root", "(include library)");
+		write("library", "(a)");
+		expander.get(uri("root"));
+
+		final String path = uri("library").getPath();
+		write("library", "(b)");
+		Assert.assertEquals(ImmutableSet.of(uri("root")), expander.changed(Collections.singleton(URI.create("file:" + path))));
+		Assert.assertEquals("(b)", expander.get(uri("root")).nodes.get(0).toString());
+
+		write("library", "(c)");
+		Assert.assertEquals(ImmutableSet.of(uri("root")), expander.changed(Collections.singleton(URI.create("file://" + path + "/"))));
+		Assert.assertEquals("(c)", expander.get(uri("root")).nodes.get(0).toString());
+		Assert.assertEquals(ImmutableSet.of(uri("root")), expander.getDependants(URI.create("file:" + path)));
+	}
+
+	@Test
+	public void watchedChangesAreRebuilt() throws Exception {
+		write("root", "(include library)");
+		write("library", "(a)");
+		expander.get(uri("root"));
+
+		final CountDownLatch rebuilt = new CountDownLatch(1);
+		expander.addListener(new IncrementalExpander.IListener() {
+			@Override
+			public void rebuilt(final URI root, final Expansion expansion) {
+				if (expansion.nodes.size() == 1 && expansion.nodes.get(0).toString().equals("(b)")) {
+					rebuilt.countDown();
+				}
+			}
+		});
+
+		final Closeable watch = expander.watch(directory);
+		try {
+			write("library", "(b)");
+			Assert.assertTrue("change to library should have been seen", rebuilt.await(30, TimeUnit.SECONDS));
+		} finally {
+			watch.close();
+		}
+	}
+}
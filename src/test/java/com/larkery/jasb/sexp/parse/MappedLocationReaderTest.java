@@ -0,0 +1,114 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultimap;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+
+public class MappedLocationReaderTest {
+	private Path directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("jasb");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	private URI write(final String name, final String content) throws IOException {
+		final Path path = directory.resolve(name);
+		Files.write(path, content.getBytes(Charsets.UTF_8));
+		return path.toUri();
+	}
+
+	@Test
+	public void contentIsDecodedAcrossBufferBoundaries() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append("(café €").append(i).append(" 😀)\n");
+		}
+		final String content = sb.toString();
+		final MappedLocationReader reader = new MappedLocationReader(write("big", content), Charsets.UTF_8);
+
+		Assert.assertEquals(content, IOUtils.toString(reader.getReader()));
+		// and again, as the mapping is shared
+		Assert.assertEquals(content, IOUtils.toString(reader.getReader()));
+	}
+
+	@Test
+	public void singleCharacterReadsWork() throws IOException {
+		final String content = "😀 x é";
+		final Reader reader = new MappedLocationReader(write("small", content), Charsets.UTF_8).getReader();
+		final StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = reader.read()) != -1) {
+			sb.append((char) c);
+		}
+		Assert.assertEquals(content, sb.toString());
+	}
+
+	@Test
+	public void emptyFilesAreEmpty() throws IOException {
+		Assert.assertEquals("", IOUtils.toString(new MappedLocationReader(write("empty", ""), Charsets.UTF_8).getReader()));
+	}
+
+	@Test
+	public void collectedReadersParseTheSameAsStrings() throws Exception {
+		final URI root = write("root", "(include other) (x y z)");
+		final URI other = write("other", "(a b c)");
+		final IResolver resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) {
+				return Includer.mappedLocationReader(href);
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return directory.resolve(include.getTail().get(0).toString()).toUri();
+			}
+		};
+
+		final HashMultimap<URI, URI> fromStrings = HashMultimap.create();
+		final Map<URI, String> strings = Includer.collect(resolver, root, new ErrorCollector(), fromStrings);
+		final HashMultimap<URI, URI> fromReaders = HashMultimap.create();
+		final Map<URI, ILocationReader> readers = Includer.collectReaders(resolver, root, new ErrorCollector(), fromReaders);
+
+		Assert.assertEquals(strings.keySet(), readers.keySet());
+		Assert.assertEquals(fromStrings, fromReaders);
+		Assert.assertTrue(readers.get(other) instanceof MappedLocationReader);
+		for (final URI uri : strings.keySet()) {
+			Assert.assertEquals(strings.get(uri), IOUtils.toString(readers.get(uri).getReader()));
+		}
+
+		final ErrorCollector errors = new ErrorCollector();
+		final Node parsed = Node.copy(Parser.source(other, readers.get(other).getReader(), errors));
+		Assert.assertEquals("(a b c)", parsed.toString());
+	}
+
+	@Test
+	public void otherAddressesAreNotMapped() {
+		Assert.assertFalse(Includer.mappedLocationReader(URI.create("http://example.com/x")) instanceof MappedLocationReader);
+		Assert.assertFalse(MappedLocationReader.canMap(directory.toUri()));
+	}
+}
@@ -0,0 +1,179 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.larkery.jasb.io.IAtomIO;
+import com.larkery.jasb.io.atom.NumberAtomIO;
+import com.larkery.jasb.io.atom.StringAtomIO;
+import com.larkery.jasb.io.impl.JASB;
+import com.larkery.jasb.io.testmodel.Plus;
+import com.larkery.jasb.io.testmodel.Value;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.errors.ResolutionException;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Measure;
+import com.larkery.jasb.sexp.parse.IPipelineListener.Stage;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.Pipeline.Scope;
+import com.larkery.jasb.sexp.parse.PipelineStatistics.Stats;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+public class PipelineStatisticsTest {
+	private static final URI ROOT = URI.create("test://root");
+	private Map<URI, String> values;
+	private IResolver resolver;
+
+	@Before
+	public void setup() {
+		values = new HashMap<>();
+		resolver = new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) throws ResolutionException {
+				if (!values.containsKey(href)) {
+					throw new ResolutionException("no such thing as " + href);
+				}
+				return Includer.stringLocationReader(href, values.get(href));
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				return URI.create("test://" + include.getTail().get(0).toString());
+			}
+		};
+
+		values.put(ROOT, "(include t) (include m) (use 1) (use 2) ; comment\n(m.thing)");
+		values.put(URI.create("test://t"), "(template use [@1] (used @1)) (template other [] x)");
+		values.put(URI.create("test://m"), "(~module m (template thing [] (a thing)))");
+	}
+
+	private int characters() {
+		int result = 0;
+		for (final String s : values.values()) {
+			result += s.length();
+		}
+		return result;
+	}
+
+	@Test
+	public void stagesAreCounted() {
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final Expansion expansion;
+		final Scope scope = Pipeline.install(statistics);
+		try {
+			expansion = StandardSource.builder(resolver).build().expand(ROOT);
+		} finally {
+			scope.close();
+		}
+		Assert.assertTrue(expansion.errors.toString(), expansion.errors.isEmpty());
+
+		final Stats parse = statistics.getStats(Stage.PARSE);
+		Assert.assertEquals(3, parse.getRuns());
+		Assert.assertEquals(characters(), parse.getCount(Measure.CHARACTERS));
+
+		Assert.assertEquals(1, statistics.getStats(Stage.INCLUDE).getRuns());
+		Assert.assertEquals(1, statistics.getStats(Stage.MODULE).getRuns());
+		Assert.assertEquals(1, statistics.getStats(Stage.TEMPLATES).getRuns());
+		Assert.assertEquals(3, statistics.getStats(Stage.TEMPLATES).getCount(Measure.TEMPLATES));
+		Assert.assertTrue(statistics.getStats(Stage.EXPAND).getCount(Measure.NODES) > 0);
+
+		for (final Stats s : statistics.getStats()) {
+			Assert.assertTrue(s.getStage().toString(), s.getSelfNanos() <= s.getTotalNanos());
+		}
+	}
+
+	@Test
+	public void parsedNodesAndLexemesAreCounted() throws Exception {
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final Scope scope = Pipeline.install(statistics);
+		try {
+			Node.copyAll(Parser.source(ROOT, new StringReader("(a (b c) ; comment\n d)"), new ErrorCollector()));
+		} finally {
+			scope.close();
+		}
+		final Stats parse = statistics.getStats(Stage.PARSE);
+		Assert.assertEquals(1, parse.getRuns());
+		Assert.assertEquals(6, parse.getCount(Measure.NODES));
+		Assert.assertEquals(8, parse.getCount(Measure.LEXEMES));
+	}
+
+	@Test
+	public void boundObjectsAreCounted() {
+		final JASB jasb = JASB.of(ImmutableSet.<Class<?>>of(Plus.class, Value.class), ImmutableSet.<IAtomIO>of(new NumberAtomIO(), new StringAtomIO()));
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final Scope scope = Pipeline.install(statistics);
+		try {
+			jasb.getReader().read(Plus.class, Parser.source(ROOT, new StringReader("(+ (value) (+ (value)))"), new ErrorCollector()), new ErrorCollector());
+		} finally {
+			scope.close();
+		}
+		final Stats bind = statistics.getStats(Stage.BIND);
+		Assert.assertEquals(1, bind.getRuns());
+		Assert.assertEquals(4, bind.getCount(Measure.OBJECTS));
+	}
+
+	@Test
+	public void nothingIsReportedOnceClosed() {
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final Scope scope = Pipeline.install(statistics);
+		try {
+			StandardSource.builder(resolver).build().expand(ROOT);
+		} finally {
+			scope.close();
+		}
+		final long runs = statistics.getStats(Stage.PARSE).getRuns();
+		StandardSource.builder(resolver).build().expand(ROOT);
+
+		Assert.assertEquals(runs, statistics.getStats(Stage.PARSE).getRuns());
+		Assert.assertSame(IPipelineListener.NONE, Pipeline.listener());
+	}
+
+	@Test
+	public void otherThreadsReportToTheSameListener() {
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final Scope scope = Pipeline.install(statistics);
+		try {
+			IncludeGraph.build(resolver, ROOT, new ErrorCollector(), executor, 4);
+		} finally {
+			scope.close();
+			executor.shutdown();
+		}
+		Assert.assertEquals(3, statistics.getStats(Stage.PARSE).getRuns());
+		Assert.assertEquals(characters(), statistics.getStats(Stage.PARSE).getCount(Measure.CHARACTERS));
+	}
+
+	@Test
+	public void reportHasARowForEachStage() throws Exception {
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final Scope scope = Pipeline.install(statistics);
+		try {
+			StandardSource.builder(resolver).build().expand(ROOT);
+		} finally {
+			scope.close();
+		}
+		final StringBuilder report = new StringBuilder();
+		statistics.writeReport(report);
+		final List<String> lines = new ArrayList<>();
+		for (final String line : report.toString().split("\n")) {
+			lines.add(line.split(" ")[0]);
+		}
+		Assert.assertEquals("stage", lines.get(0));
+		Assert.assertTrue(lines.toString(), lines.containsAll(Arrays.asList("parse", "include", "module", "templates", "expand")));
+	}
+}
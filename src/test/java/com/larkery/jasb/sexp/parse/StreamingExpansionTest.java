@@ -0,0 +1,102 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.larkery.jasb.sexp.ISExpression;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+import com.larkery.jasb.sexp.parse.StandardSource.IFormConsumer;
+
+public class StreamingExpansionTest {
+	private static final URI ROOT = URI.create("test://root");
+
+	private IResolver resolver(final String source) {
+		return new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) {
+				return Includer.stringLocationReader(href, source);
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static class Counter implements IMacroInterceptor {
+		int invocations = 0;
+
+		@Override
+		public ISExpression transform(final IMacro macro, final Seq invocation, final IMacroExpander expander, final IErrorHandler errors) {
+			invocations++;
+			return macro.transform(invocation, expander, errors);
+		}
+	}
+
+	@Test
+	public void streamedFormsAreTheSameAsExpandedForms() {
+		final String source = "(use 1) ; a comment\n(use 2) atom (template use [@1] (used @1 (nested [x])))";
+		final List<Node> streamed = new ArrayList<>();
+		final Expansion result = StandardSource.builder(resolver(source)).build().stream(ROOT, new IFormConsumer() {
+			@Override
+			public void form(final Node form) {
+				streamed.add(form);
+			}
+		});
+		final Expansion expanded = StandardSource.builder(resolver(source)).build().expand(ROOT);
+
+		Assert.assertTrue(result.nodes.isEmpty());
+		Assert.assertEquals(expanded.nodes, streamed);
+		Assert.assertEquals(expanded.errors.size(), result.errors.size());
+		Assert.assertEquals(expanded.extraMacros.size(), result.extraMacros.size());
+	}
+
+	@Test
+	public void formsArriveBeforeLaterFormsAreExpanded() {
+		final Counter counter = new Counter();
+		final List<Integer> seen = new ArrayList<>();
+		StandardSource.builder(resolver("(template t [@1] (value @1)) (t 1) (t 2) (t 3)"))
+				.withInterceptor(counter)
+				.build()
+				.stream(ROOT, new IFormConsumer() {
+					@Override
+					public void form(final Node form) {
+						seen.add(counter.invocations);
+					}
+				});
+
+		// the module initialiser is invoked once first, then one template per form
+		Assert.assertEquals(3, seen.size());
+		Assert.assertTrue(seen.toString(), seen.get(0) < seen.get(1) && seen.get(1) < seen.get(2));
+	}
+
+	@Test
+	public void formsBeforeAnExpansionLimitAreStillStreamed() {
+		final String source = "(first) (template twice [@rest] @rest @rest)" +
+				"(template many [] (twice (twice (twice (twice (twice (twice (twice (twice x)))))))))" +
+				"(top (many)) (last)";
+		final List<Node> streamed = new ArrayList<>();
+		final Expansion result = StandardSource.builder(resolver(source))
+				.withLimits(new ExpansionLimits(Long.MAX_VALUE, 100))
+				.build()
+				.stream(ROOT, new IFormConsumer() {
+					@Override
+					public void form(final Node form) {
+						streamed.add(form);
+					}
+				});
+
+		Assert.assertEquals(1, result.errors.size());
+		Assert.assertEquals("(first)", streamed.get(0).toString());
+	}
+}
@@ -0,0 +1,119 @@
+package com.larkery.jasb.sexp.parse;
+
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.IErrorHandler;
+import com.larkery.jasb.sexp.parse.ExpansionProfiler.Stats;
+import com.larkery.jasb.sexp.parse.Includer.ILocationReader;
+import com.larkery.jasb.sexp.parse.Includer.IResolver;
+import com.larkery.jasb.sexp.parse.StandardSource.Expansion;
+
+/**
+ * Checks that partially evaluating templates when they are defined makes no difference to what they expand into.
+ */
+public class TemplateInliningTest {
+	private static final URI ROOT = URI.create("test://root");
+
+	private IResolver resolver(final String source) {
+		return new IResolver() {
+			@Override
+			public ILocationReader resolve(final URI href, final IErrorHandler errors) {
+				return Includer.stringLocationReader(href, source);
+			}
+
+			@Override
+			public URI convert(final Seq include, final IErrorHandler errors) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private Expansion checkEquivalent(final String source, final IMacro... macros) {
+		final Expansion plain = StandardSource.builder(resolver(source)).withMacros(macros).build().expand(ROOT);
+		final Expansion inlined = StandardSource.builder(resolver(source)).withMacros(macros).withInlinedTemplates().build().expand(ROOT);
+
+		Assert.assertEquals("inlining should not change the output of " + source, plain.nodes, inlined.nodes);
+		Assert.assertEquals("inlining should not change the number of errors from " + source, plain.errors.size(), inlined.errors.size());
+		return inlined;
+	}
+
+	@Test
+	public void constants() {
+		checkEquivalent("(template pi [] 3.14) (template tau [] (* 2 (pi))) (area (tau) (pi))");
+	}
+
+	@Test
+	public void wrapperChains() {
+		checkEquivalent(
+				"(template a [] (value 1))" +
+				"(template b [] (wrap (a)))" +
+				"(template c [@x] (list (b) @x (b)))" +
+				"(c x:(a)) (c x:2)");
+	}
+
+	@Test
+	public void invocationsWhichUseArgumentsAreLeftAlone() {
+		checkEquivalent(
+				"(template inner [@v [@w 1]] (pair @v @w))" +
+				"(template outer [@x] (inner v:@x) (inner v:3) (inner v:4 w:@x))" +
+				"(outer x:5)");
+	}
+
+	@Test
+	public void defaultsWhichMentionArgumentsAreLeftAlone() {
+		checkEquivalent(
+				"(template inner [[@v @x]] (got @v))" +
+				"(template outer [@x] (inner))" +
+				"(outer x:5)");
+	}
+
+	@Test
+	public void numberedAndRestArguments() {
+		checkEquivalent(
+				"(template first [@1 @rest] (head @1 tail @rest))" +
+				"(template use [] (first a b c))" +
+				"(use) (use)");
+	}
+
+	@Test
+	public void otherMacrosAreNotInlined() {
+		checkEquivalent(
+				"(template n [] thing)" +
+				"(template joined [@x] (~join (n) @x))" +
+				"(template fixed [] (~join (n) -fixed))" +
+				"(joined x:-y) (fixed)",
+				new JoinMacro());
+	}
+
+	@Test
+	public void errorsAreUnchanged() {
+		checkEquivalent(
+				"(template needs [@a] (got @a))" +
+				"(template broken [] (needs))" +
+				"(template loop [] (loop))" +
+				"(broken)");
+	}
+
+	@Test
+	public void inlinedTemplatesAreNotExpandedAtEachUse() {
+		final ExpansionProfiler profiler = new ExpansionProfiler();
+		StandardSource.builder(resolver(
+				"(template a [] (value 1))" +
+				"(template b [] (wrap (a)))" +
+				"(b) (b) (b)"))
+				.withInlinedTemplates()
+				.withInterceptor(profiler)
+				.build()
+				.expand(ROOT);
+
+		for (final Stats s : profiler.getStats()) {
+			if (s.getName().equals("a")) {
+				Assert.fail("a should have been inlined into b, but was invoked " + s.getInvocations() + " times");
+			}
+		}
+	}
+}
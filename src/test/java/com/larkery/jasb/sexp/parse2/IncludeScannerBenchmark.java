@@ -0,0 +1,40 @@
+package com.larkery.jasb.sexp.parse2;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.List;
+
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.parse.Parser;
+
+/**
+ * Compares finding includes by scanning lexemes with parsing a whole document into nodes. Not run as part of the
+ * tests; run main() by hand.
+ */
+public class IncludeScannerBenchmark {
+	public static void main(final String[] args) throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			sb.append("(measure name: m").append(i).append(" (apply (when (> x ").append(i).append(") (set y [1 2 3]))))\n");
+			if (i % 1000 == 0) {
+				sb.append("(include library-").append(i).append(")\n");
+			}
+		}
+		final String source = sb.toString();
+		final URI uri = URI.create("test://big");
+
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			final List<Node> nodes = Node.copyAll(Parser.source(uri, new StringReader(source), new ErrorCollector()));
+			final long parseMillis = (System.nanoTime() - start) / 1000000;
+
+			start = System.nanoTime();
+			final int includes = IncludeScanner.scan(null, uri, new StringReader(source), true, new ErrorCollector()).size();
+			final long scanMillis = (System.nanoTime() - start) / 1000000;
+
+			System.out.printf("%d chars, %d forms, %d includes: parse %dms, scan %dms%n",
+					source.length(), nodes.size(), includes, parseMillis, scanMillis);
+		}
+	}
+}
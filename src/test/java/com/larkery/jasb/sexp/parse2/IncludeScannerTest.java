@@ -0,0 +1,98 @@
+package com.larkery.jasb.sexp.parse2;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.larkery.jasb.sexp.Atom;
+import com.larkery.jasb.sexp.Comment;
+import com.larkery.jasb.sexp.INodeVisitor;
+import com.larkery.jasb.sexp.Node;
+import com.larkery.jasb.sexp.Seq;
+import com.larkery.jasb.sexp.errors.ErrorCollector;
+import com.larkery.jasb.sexp.parse.Parser;
+
+public class IncludeScannerTest {
+	private static final URI URI = java.net.URI.create("test://scanned");
+
+	/**
+	 * Find includes the slow way, by parsing everything and walking the tree
+	 */
+	private static List<String> parsed(final String source, final boolean lookWithinNoInclude) throws Exception {
+		final List<String> result = new ArrayList<>();
+		for (final Node node : Node.copyAll(Parser.source(URI, new StringReader(source), new ErrorCollector()))) {
+			node.accept(new INodeVisitor() {
+				@Override
+				public boolean seq(final Seq seq) {
+					if (seq.size() >= 1 && seq.getHead() instanceof Atom) {
+						final String head = ((Atom) seq.getHead()).getValue();
+						if (head.equals("include") || head.equals("include-modules")) {
+							result.add(seq.getLocation() + " " + seq);
+							return false;
+						} else if (head.equals("no-include")) {
+							return lookWithinNoInclude;
+						}
+					}
+					return true;
+				}
+
+				@Override
+				public void comment(final Comment comment) {}
+
+				@Override
+				public void atom(final Atom atom) {}
+			});
+		}
+		return result;
+	}
+
+	private static List<String> scanned(final String source, final boolean lookWithinNoInclude) {
+		final List<String> result = new ArrayList<>();
+		for (final Seq seq : IncludeScanner.scan(null, URI, new StringReader(source), lookWithinNoInclude, new ErrorCollector())) {
+			result.add(seq.getLocation() + " " + seq);
+		}
+		return result;
+	}
+
+	private static void check(final String source) throws Exception {
+		Assert.assertEquals(parsed(source, true), scanned(source, true));
+		Assert.assertEquals(parsed(source, false), scanned(source, false));
+	}
+
+	@Test
+	public void topLevelIncludes() throws Exception {
+		check("(include a) (include-modules b) (other (include c))");
+	}
+
+	@Test
+	public void nestedAndBracketedIncludes() throws Exception {
+		check("(a (b [c (include x name: y)]) [include z])\n(include \"quoted name\" version: 1)");
+	}
+
+	@Test
+	public void noIncludes() throws Exception {
+		check("(no-include (include a) (x (include b))) (include c) (y (no-include [include d]) (include e))");
+	}
+
+	@Test
+	public void commentsAndCommas() throws Exception {
+		check("; (include not-this)\n(include a ; trailing\n b) (x, (include c)) (; comment first\n include d) (, include e)");
+	}
+
+	@Test
+	public void includeIsOnlyTheHead() throws Exception {
+		check("(x include y) (include) ((include a) b) (\"include\" q)");
+	}
+
+	@Test
+	public void unclosedIncludesAreErrors() {
+		final ErrorCollector errors = new ErrorCollector();
+		final List<Seq> result = IncludeScanner.scan(null, URI, new StringReader("(include a) (include b"), true, errors);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(1, errors.getErrors().size());
+	}
+}